@@ -1,11 +1,30 @@
+import domain.metrics.LatencyHistogram;
+import domain.metrics.MetricsServer;
+import domain.roundabout.AdmissionController;
 import domain.roundabout.Factory;
+import domain.roundabout.GridlockDetector;
+import domain.roundabout.GridlockPolicy;
+import domain.roundabout.MeteringMode;
 import domain.roundabout.Roundabout;
+import domain.scheduling.VehicleScheduler;
+import domain.workload.ScenarioReader;
+import domain.workload.ScenarioRunner;
 import ui.GUI;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.InvalidParameterException;
 
 /**
  * Main class.
+ * <p>
+ * Usage: Main [--headless] [--http port] [scenario-file]
+ * Without a scenario the GUI starts on the default roundabout. With one the scenario
+ * roundabout is built and its spawn schedule played, in the GUI or headless. With a port
+ * the current roundabout state and metrics are served on localhost, see {@link MetricsServer}.
  */
 public class Main {
 
@@ -16,8 +35,194 @@ public class Main {
      */
     public static void main(String[] args) {
 
+        boolean headless = false;
+        int httpPort = -1;
+        String scenarioFile = null;
+        boolean usage = false;
+
+        for (int i = 0; i < args.length; i++) {
+
+            if (args[i].equals("--headless")) {
+                headless = true;
+            } else if (args[i].equals("--http") && i + 1 < args.length && args[i + 1].matches("\\d{1,5}")) {
+                httpPort = Integer.parseInt(args[++i]);
+            } else if (!args[i].startsWith("--") && scenarioFile == null) {
+                scenarioFile = args[i];
+            } else {
+                usage = true;
+            }
+        }
+
+        if (usage || headless && scenarioFile == null) {
+
+            System.out.println("Usage: Main [--headless] [--http port] [scenario-file]");
+            System.exit(2);
+        }
+
+        // Serve whichever roundabout is currently built
+        if (httpPort >= 0) {
+
+            try {
+                MetricsServer server = new MetricsServer(Factory.getInstance()::getRoundabout,
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort));
+                server.start();
+                System.out.println("Serving metrics on http://localhost:" + server.getPort() + "/metrics");
+
+            } catch (IOException e) {
+                System.out.println("Could not start the metrics server: " + e.getMessage());
+            }
+        }
+
+        // Open the scenario before any roundabout is shown
+        ScenarioReader scenario = null;
+        if (scenarioFile != null) {
+
+            try {
+                scenario = new ScenarioReader(Paths.get(scenarioFile));
+
+            } catch (IOException e) {
+
+                System.out.println("Could not read scenario: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (headless) {
+            runHeadless(Paths.get(scenarioFile), scenario);
+            return;
+        }
+
+        // Show the scenario roundabout, the GUI panels are sized from it
+        Roundabout roundabout = null;
+        if (scenario != null) {
+
+            try {
+                roundabout = scenario.buildRoundabout();
+                Factory.getInstance().setRoundabout(roundabout);
+
+            } catch (InvalidParameterException e) {
+                System.out.println("Invalid scenario roundabout: " + e.getMessage());
+            }
+        }
+
         // Create GUI and start it
         GUI gui = new GUI("Nimbus");
         new Thread(gui).start();
+
+        // Report gridlocks on whichever roundabout is currently built
+        Thread detector = new Thread(new GridlockDetector(
+                Factory.getInstance()::getRoundabout, 2000, GridlockPolicy.REPORT, System.out::println));
+        detector.setDaemon(true);
+        detector.start();
+
+        // Play the scenario schedule
+        if (roundabout != null) {
+
+            Thread runner = new Thread(new ScenarioRunner(scenario, roundabout, roundabout.getAdmission()), "scenario-runner");
+            runner.setDaemon(true);
+            runner.start();
+        }
+    }
+
+    /**
+     * Plays a scenario without the GUI and prints the counters. A metered scenario is
+     * played a second time without metering to show the throughput metering gained.
+     *
+     * @param file     The scenario file.
+     * @param scenario The scenario, read from the file.
+     */
+    private static void runHeadless(Path file, ScenarioReader scenario) {
+
+        MeteringMode metering = scenario.getMetering();
+        double throughput = play(scenario, metering);
+
+        // Same workload without metering
+        if (metering != MeteringMode.OFF && !Double.isNaN(throughput)) {
+
+            System.out.println();
+            System.out.println("Replaying without metering");
+
+            try {
+                double unmetered = play(new ScenarioReader(file), MeteringMode.OFF);
+                System.out.printf("Throughput: %.1f vehicles/min metered, %.1f unmetered (%+.1f%%)%n",
+                        throughput, unmetered, 100 * (throughput - unmetered) / unmetered);
+
+            } catch (IOException e) {
+                System.out.println("Could not read scenario: " + e.getMessage());
+            }
+        }
+
+        System.exit(Double.isNaN(throughput) ? 1 : 0);
+    }
+
+    /**
+     * Plays a scenario on a vehicle scheduler and prints the counters.
+     *
+     * @param scenario The scenario.
+     * @param metering How the entries are metered.
+     * @return double The vehicles which left per simulated minute, NaN if the scenario could not be read.
+     */
+    private static double play(ScenarioReader scenario, MeteringMode metering) {
+
+        Roundabout roundabout = scenario.buildRoundabout();
+        roundabout.setMetering(metering);
+        Factory.getInstance().setRoundabout(roundabout);
+
+        // Vehicles run on a scheduler, stuck ones are evicted
+        VehicleScheduler scheduler = new VehicleScheduler(roundabout, Runtime.getRuntime().availableProcessors());
+        AdmissionController admission = roundabout.getAdmission();
+        admission.setLauncher(scheduler::submit);
+
+        GridlockDetector gridlocks = new GridlockDetector(() -> roundabout, 2000, GridlockPolicy.EVICT_ONE, System.out::println);
+        Thread detector = new Thread(gridlocks);
+        detector.setDaemon(true);
+        detector.start();
+
+        // Play the schedule
+        ScenarioRunner runner = new ScenarioRunner(scenario, roundabout, admission);
+        long start = System.nanoTime();
+        runner.run();
+
+        try {
+
+            // Without a duration the run ends once every vehicle left
+            if (scenario.getDuration() == 0) {
+
+                while (admission.getInFlight() > 0 || admission.getWaitingOutside() > 0) {
+                    Thread.sleep(100);
+                }
+            }
+
+            scheduler.shutdown(1000);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        gridlocks.stop();
+
+        if (runner.getFailure() != null) {
+            System.out.println("Scenario stopped: " + runner.getFailure().getMessage());
+        }
+
+        // Held queue heads over every entry
+        long held = 0;
+        for (int entry = 1; entry <= roundabout.getEntriesNumber(); entry++) {
+            held += roundabout.getEntryMeter(entry).getHeld();
+        }
+
+        double minutes = roundabout.getClock().millis() / 60000.0;
+        System.out.printf("Simulated %.1f s in %.1f s%n", minutes * 60, (System.nanoTime() - start) / 1e9);
+        System.out.println("Spawned: " + runner.getSpawned() + "   Rejected: " + admission.getRejected());
+        System.out.println("Entered: " + roundabout.getMetrics().getEntered() + "   Exited: " + roundabout.getMetrics().getExited());
+        System.out.println("Claim attempts: " + roundabout.getMetrics().getClaimAttempts()
+                + "   Claim failures: " + roundabout.getMetrics().getClaimFailures()
+                + "   Gap rejections: " + roundabout.getMetrics().getGapRejections());
+        LatencyHistogram priority = roundabout.getMetrics().getPriorityLatency();
+        System.out.printf("Priority trips: %d   Mean: %.1f s   Max: %.1f s   Yields: %d%n", priority.getCount(),
+                priority.getMean() / 1e9, priority.getMax() / 1e9, roundabout.getMetrics().getPriorityYields());
+        System.out.println("Metering: " + metering + "   Held entries: " + held
+                + "   Gridlocks: " + gridlocks.getDetectedCount());
+
+        return runner.getFailure() != null ? Double.NaN : roundabout.getMetrics().getExited() / minutes;
     }
 }
@@ -0,0 +1,131 @@
+package benchmark;
+
+import domain.roundabout.Factory;
+import domain.roundabout.Roundabout;
+import domain.vehicles.Vehicle;
+
+import java.awt.*;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that a vehicle moving through the roundabout allocates nothing once its route is known.
+ * <p>
+ * A fast vehicle is sent along the longest route of a large roundabout and its thread
+ * allocated bytes are sampled twice while it is in the middle of the route. The check
+ * exits with a non-zero status when anything was allocated in between.
+ */
+public class AllocationCheck {
+
+    /**
+     * Milliseconds a vehicle takes to move between two nodes.
+     */
+    private static final long TRAVEL = 5;
+
+    /**
+     * Vehicle which moves at a fixed fast pace.
+     */
+    private static class FastVehicle extends Vehicle {
+
+        FastVehicle(int source, int destination, Roundabout roundabout) {
+            super(Color.BLACK, source, destination, 10, 60, roundabout);
+        }
+
+        @Override
+        protected int[] getVehicleRoute(int entry, int exit) {
+            return this.roundabout.getVehicleRoute(entry, exit, false);
+        }
+
+        @Override
+        protected float accelerate(float currentSpeed) {
+            return currentSpeed + this.acceleration;
+        }
+
+        @Override
+        protected float decelerate(float currentSpeed) {
+            return currentSpeed - this.acceleration;
+        }
+
+        @Override
+        protected long waitOnQueue() {
+            return 1;
+        }
+
+        @Override
+        protected long waitToTravel() {
+            return 1;
+        }
+
+        @Override
+        protected long travel() {
+            return TRAVEL;
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments.
+     * @throws InterruptedException If interrupted while waiting for a vehicle.
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Roundabout roundabout = Factory.getInstance().buildRoundabout(100, 2, 2, 2);
+
+        // Find the longest route
+        int entry = 1;
+        int exit = 1;
+        for (int i = 1; i <= roundabout.getEntriesNumber(); i++) {
+
+            for (int j = 1; j <= roundabout.getExitsNumber(); j++) {
+
+                if (roundabout.getVehicleRoute(i, j, false).length > roundabout.getVehicleRoute(entry, exit, false).length) {
+                    entry = i;
+                    exit = j;
+                }
+            }
+        }
+        int length = roundabout.getVehicleRoute(entry, exit, false).length;
+
+        // Warm up
+        for (int i = 0; i < 3; i++) {
+
+            Vehicle warmUp = new FastVehicle(entry, exit, roundabout);
+            warmUp.start();
+            warmUp.join();
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        // Sample the vehicle thread between a quarter and three quarters of its route
+        Vehicle vehicle = new FastVehicle(entry, exit, roundabout);
+        long claims = roundabout.getMetrics().getClaimAttempts();
+        vehicle.start();
+
+        Thread.sleep(length * TRAVEL / 4);
+        long before = threads.getThreadAllocatedBytes(vehicle.getId());
+        long claimsBefore = roundabout.getMetrics().getClaimAttempts();
+
+        Thread.sleep(length * TRAVEL / 2);
+        long after = threads.getThreadAllocatedBytes(vehicle.getId());
+        long claimsAfter = roundabout.getMetrics().getClaimAttempts();
+
+        vehicle.join();
+
+        if (before < 0 || after < 0 || claimsBefore == claims) {
+
+            out.println("Vehicle was not sampled mid-route, increase the route length.");
+            System.exit(2);
+        }
+
+        long allocated = after - before;
+        out.printf("route=%d nodes, moves sampled=%d, allocated=%d bytes%n",
+                length, claimsAfter - claimsBefore, allocated);
+
+        System.exit(allocated == 0 ? 0 : 1);
+    }
+}
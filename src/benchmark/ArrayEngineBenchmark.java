@@ -0,0 +1,74 @@
+package benchmark;
+
+import domain.engine.ArrayEngine;
+import domain.engine.VehicleStore;
+import domain.vehicles.VehicleType;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the struct-of-arrays engine step cost and memory with a very large vehicle population.
+ * <p>
+ * A single ring route twice as long as the number of vehicles is filled with one
+ * vehicle every other node, then the engine is stepped and the allocated bytes of
+ * the stepping thread are reported.
+ * <p>
+ * Usage: ArrayEngineBenchmark [vehicles] [steps]
+ */
+public class ArrayEngineBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+
+        int vehicles = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        // Single long route through every vertex
+        int vertices = 2 * vehicles + 1;
+        int[] ring = new int[vertices];
+        for (int i = 0; i < vertices; i++) {
+            ring[i] = i;
+        }
+
+        ArrayEngine engine = new ArrayEngine(vertices, 1, vehicles, 1024, 4);
+        int route = engine.registerRoute(1, ring);
+
+        // Mix of the regular vehicle classes, one every other node
+        VehicleType[] types = {VehicleType.HEAVY_DEFAULT, VehicleType.LIGHT_DEFAULT, VehicleType.LIGHT_AGGRESSIVE};
+        for (int i = 0; i < vehicles; i++) {
+            engine.place(route, 2 * i, types[i % types.length]);
+        }
+
+        // Warm up
+        for (int i = 0; i < 20; i++) {
+            engine.step(0.1f);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+
+        // Measure
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            engine.step(0.1f);
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+
+        long vehicleSteps = (long) steps * engine.getStore().size();
+        System.out.printf("vehicles=%d steps=%d ns/vehicle-step=%.2f steps/s=%.1f%n",
+                engine.getStore().size(), steps, (double) elapsed / vehicleSteps, steps * 1e9 / elapsed);
+        System.out.printf("store=%d MB heap=%d MB allocated during steps=%d bytes moves=%d blocked=%d%n",
+                (long) VehicleStore.bytesPerVehicle() * vehicles >> 20, heap >> 20, allocated,
+                engine.getMoves(), engine.getBlocked());
+    }
+}
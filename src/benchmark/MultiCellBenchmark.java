@@ -0,0 +1,182 @@
+package benchmark;
+
+import domain.metrics.SimulationMetrics;
+import domain.roundabout.Factory;
+import domain.roundabout.GridlockDetector;
+import domain.roundabout.GridlockPolicy;
+import domain.roundabout.Roundabout;
+import domain.scheduling.VehicleScheduler;
+import domain.vehicles.Vehicle;
+
+import java.awt.*;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+
+/**
+ * Compares multi-cell heavy vehicles with single node heavy vehicles on the same seeded workload.
+ * <p>
+ * A third of the vehicles are heavy. In the single run they hold one node like a car and
+ * claim it with a single compare-and-set, in the multi-cell run they hold as many nodes as
+ * their length and enter with an all-or-nothing run claim. Both runs drain the same number
+ * of fast vehicles on a scheduler and report claim contention and throughput.
+ * <p>
+ * Usage: MultiCellBenchmark [vehicles per run] [heavy length]
+ */
+public class MultiCellBenchmark {
+
+    /**
+     * The workload seed, shared by both runs.
+     */
+    private static final long SEED = 2024;
+
+    /**
+     * Seconds without any vehicle leaving after which a run is stopped.
+     */
+    private static final long STALL_SECONDS = 15;
+
+    /**
+     * Vehicle which moves at a fast fixed pace.
+     */
+    private static class BenchVehicle extends Vehicle {
+
+        /**
+         * Whether the vehicle is bound to the outer lane.
+         */
+        private final boolean heavy;
+
+        /**
+         * The vehicle length in nodes.
+         */
+        private final int length;
+
+        BenchVehicle(int source, int destination, boolean heavy, int length, Roundabout roundabout) {
+
+            super(Color.BLACK, source, destination, 10, 60, roundabout);
+            this.heavy = heavy;
+            this.length = length;
+        }
+
+        @Override
+        protected int[] getVehicleRoute(int entry, int exit) {
+            return this.roundabout.getVehicleRoute(entry, exit, this.heavy);
+        }
+
+        @Override
+        protected boolean isReroutable() {
+            return !this.heavy;
+        }
+
+        @Override
+        protected int length() {
+            return this.length;
+        }
+
+        @Override
+        protected float accelerate(float currentSpeed) {
+            return currentSpeed + this.acceleration;
+        }
+
+        @Override
+        protected float decelerate(float currentSpeed) {
+            return currentSpeed - this.acceleration;
+        }
+
+        @Override
+        protected long waitOnQueue() {
+            return 1;
+        }
+
+        @Override
+        protected long waitToTravel() {
+            return 2;
+        }
+
+        @Override
+        protected long travel() {
+            return 2;
+        }
+    }
+
+    /**
+     * Drains the workload on a fresh roundabout and prints the run counters.
+     *
+     * @param out      The output stream.
+     * @param vehicles The number of vehicles.
+     * @param length   The heavy vehicle length in nodes.
+     * @throws InterruptedException If interrupted while waiting for the run to finish.
+     */
+    private static void run(PrintStream out, int vehicles, int length) throws InterruptedException {
+
+        Roundabout roundabout = Factory.getInstance().buildRoundabout(15, 2, 4, 4);
+        VehicleScheduler scheduler = new VehicleScheduler(roundabout, Runtime.getRuntime().availableProcessors());
+
+        // Long vehicles can close cycles on the ring like any other
+        GridlockDetector gridlocks = new GridlockDetector(() -> roundabout, 500, GridlockPolicy.EVICT_ONE, gridlock -> {
+        });
+        Thread detector = new Thread(gridlocks);
+        detector.setDaemon(true);
+        detector.start();
+
+        // Same seeded workload on every run
+        SplittableRandom random = new SplittableRandom(SEED);
+        long start = System.nanoTime();
+        for (int i = 0; i < vehicles; i++) {
+
+            boolean heavy = random.nextInt(3) == 0;
+            scheduler.submit(new BenchVehicle(1 + random.nextInt(4), 1 + random.nextInt(4), heavy,
+                    heavy ? length : 1, roundabout));
+        }
+
+        // Wait until drained or stuck
+        long lastCompleted = -1;
+        long lastProgress = System.nanoTime();
+        while (scheduler.getCompleted() < vehicles
+                && System.nanoTime() - lastProgress < STALL_SECONDS * 1_000_000_000L) {
+
+            Thread.sleep(50);
+            if (scheduler.getCompleted() != lastCompleted) {
+
+                lastCompleted = scheduler.getCompleted();
+                lastProgress = System.nanoTime();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        gridlocks.stop();
+        scheduler.shutdown(1000);
+
+        SimulationMetrics metrics = roundabout.getMetrics();
+        long claims = metrics.getClaimAttempts() - metrics.getClaimFailures();
+
+        out.printf("heavy-length=%d completed=%d/%d claims=%d failed=%d failed/claim=%.3f gridlocks=%d "
+                        + "time=%.2fs throughput=%.1f veh/s%n",
+                length, scheduler.getCompleted(), vehicles, claims, metrics.getClaimFailures(),
+                claims == 0 ? 0 : (double) metrics.getClaimFailures() / claims, gridlocks.getDetectedCount(),
+                seconds, scheduler.getCompleted() / seconds);
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments.
+     * @throws InterruptedException If interrupted while waiting for a run to finish.
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        int vehicles = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        // Silence vehicle logging while measuring
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        // Warm up both paths before measuring
+        run(new PrintStream(OutputStream.nullOutputStream()), vehicles / 4, length);
+
+        run(out, vehicles, 1);
+        run(out, vehicles, length);
+
+        System.exit(0);
+    }
+}
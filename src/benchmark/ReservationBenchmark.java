@@ -0,0 +1,104 @@
+package benchmark;
+
+import domain.metrics.SimulationMetrics;
+import domain.roundabout.Factory;
+import domain.roundabout.Roundabout;
+import domain.scheduling.VehicleScheduler;
+import domain.workload.ODMatrix;
+import domain.workload.PoissonArrivals;
+import domain.workload.TrafficGenerator;
+import domain.workload.VehicleMix;
+
+import java.io.PrintStream;
+
+/**
+ * Compares failed node claims and throughput with and without look-ahead reservations
+ * on the same seeded high density workload.
+ * <p>
+ * Each run moves its vehicles on its own vehicle scheduler, which is shut down before
+ * the next run starts, so vehicles left over from one run never compete with the other.
+ * <p>
+ * Usage: ReservationBenchmark [seconds per run] [look-ahead] [arrivals per second per entry]
+ */
+public class ReservationBenchmark {
+
+    /**
+     * The workload seed, shared by both runs.
+     */
+    private static final long SEED = 2024;
+
+    /**
+     * Runs the workload on a fresh roundabout and stops every vehicle of the run.
+     *
+     * @param seconds   The run duration in seconds.
+     * @param lookAhead The roundabout look-ahead.
+     * @param rate      The arrivals per second per entry.
+     * @return SimulationMetrics The run counters.
+     * @throws InterruptedException If interrupted while waiting for the run to finish.
+     */
+    private static SimulationMetrics run(int seconds, int lookAhead, double rate) throws InterruptedException {
+
+        Roundabout roundabout = Factory.getInstance().buildRoundabout(15, 2, 4, 4);
+        roundabout.setLookAhead(lookAhead);
+
+        // Same seeded workload on every run
+        VehicleScheduler scheduler = new VehicleScheduler(roundabout, Runtime.getRuntime().availableProcessors());
+        TrafficGenerator generator = new TrafficGenerator(roundabout,
+                TrafficGenerator.sameOnEveryEntry(new PoissonArrivals(rate), 4),
+                ODMatrix.uniform(4, 4), new VehicleMix(1, 4, 2), scheduler::submit, SEED);
+
+        Thread thread = new Thread(generator);
+        thread.setDaemon(true);
+        thread.start();
+
+        Thread.sleep(seconds * 1000L);
+        generator.stop();
+        thread.join();
+
+        // Vehicles still on the roundabout stop moving before the next run
+        scheduler.shutdown(1000);
+
+        return roundabout.getMetrics();
+    }
+
+    /**
+     * Prints the run counters.
+     *
+     * @param out     The output stream.
+     * @param name    The run name.
+     * @param metrics The run counters.
+     * @param seconds The run duration in seconds.
+     */
+    private static void report(PrintStream out, String name, SimulationMetrics metrics, int seconds) {
+
+        long claims = metrics.getClaimAttempts() - metrics.getClaimFailures();
+
+        out.printf("%-14s claims=%d failed=%d failed/claim=%.3f reserved=%d exited=%d throughput=%.2f veh/min%n",
+                name, claims, metrics.getClaimFailures(),
+                claims == 0 ? 0 : (double) metrics.getClaimFailures() / claims,
+                metrics.getReservations(), metrics.getExited(), metrics.getExited() * 60.0 / seconds);
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments.
+     * @throws InterruptedException If interrupted while waiting for a run to finish.
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int lookAhead = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+
+        PrintStream out = System.out;
+
+        SimulationMetrics single = run(seconds, 0, rate);
+        report(out, "single-claim", single, seconds);
+
+        SimulationMetrics reserved = run(seconds, lookAhead, rate);
+        report(out, "look-ahead=" + lookAhead, reserved, seconds);
+
+        System.exit(0);
+    }
+}
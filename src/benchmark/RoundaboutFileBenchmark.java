@@ -0,0 +1,85 @@
+package benchmark;
+
+import domain.roundabout.Factory;
+import domain.roundabout.Roundabout;
+import domain.roundabout.RoundaboutFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Compares building a very large roundabout with loading it back from a roundabout file.
+ * <p>
+ * The roundabout is built once and saved, then loaded several times. The build, save and
+ * best and median load times are reported. The file is kept when a path is given, so it
+ * can be used as the graph of a scenario, otherwise a temporary file is used and deleted.
+ * <p>
+ * Usage: RoundaboutFileBenchmark [radius] [lanes] [loads] [file]
+ */
+public class RoundaboutFileBenchmark {
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments.
+     * @throws IOException If the file cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+
+        double radius = args.length > 0 ? Double.parseDouble(args[0]) : 80_000;
+        int lanes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int loads = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        Path file = args.length > 3 ? Paths.get(args[3]) : Files.createTempFile("roundabout", ".rbg");
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        try {
+
+            // Build
+            long start = System.nanoTime();
+            Roundabout built = Factory.getInstance().buildRoundabout(radius, lanes, 4, 4);
+            long build = System.nanoTime() - start;
+            int vertices = built.getVertexCount();
+
+            // Save
+            start = System.nanoTime();
+            RoundaboutFile.save(built, file);
+            long save = System.nanoTime() - start;
+            built = null;
+
+            // Load, keeping only the last roundabout alive
+            long[] times = new long[loads];
+            Roundabout loaded = null;
+            for (int i = 0; i < loads; i++) {
+
+                loaded = null;
+                start = System.nanoTime();
+                loaded = RoundaboutFile.load(file);
+                times[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(times);
+
+            out.printf("vertices=%d lanes=%d file=%d MB%n", vertices, lanes, Files.size(file) >> 20);
+            out.printf("build=%.1f ms save=%.1f ms load best=%.1f ms median=%.1f ms (%d loads)%n",
+                    build / 1e6, save / 1e6, times[0] / 1e6, times[loads / 2] / 1e6, loads);
+
+            if (loaded == null || loaded.getVertexCount() != vertices) {
+
+                out.println("Loaded roundabout does not match the built one.");
+                System.exit(1);
+            }
+
+        } finally {
+
+            if (args.length <= 3) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package benchmark;
+
+import domain.roundabout.AdmissionController;
+import domain.roundabout.AdmissionPolicy;
+import domain.roundabout.Factory;
+import domain.roundabout.GridlockDetector;
+import domain.roundabout.GridlockPolicy;
+import domain.roundabout.OccupancyListener;
+import domain.roundabout.Roundabout;
+import domain.roundabout.RoutingMode;
+import domain.scheduling.VehicleScheduler;
+import domain.vehicles.Vehicle;
+import graphv2.Vertex;
+
+import java.awt.*;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stresses node occupancy with thousands of fast vehicles and checks the concurrency invariants.
+ * <p>
+ * Every roundabout configuration is flooded with vehicles on a work-stealing scheduler
+ * while a listener asserts that:
+ * 1. A vehicle which claimed a vertex is the only one holding it.
+ * 2. A vehicle which left the roundabout holds no vertex.
+ * 3. A vehicle enters the roundabout only from the head of its entry queue.
+ * 4. Once drained, no vertex is held, every entry queue is empty and no slot is in flight.
+ * <p>
+ * The harness reports the throughput of each run and exits with status 1 on any
+ * violation or when vehicles stop making progress.
+ * <p>
+ * Gridlocks are untangled by evicting one vehicle of the cycle by default, so the run
+ * keeps draining, or only reported with {@code --gridlock report}, in which case a
+ * gridlocked run stalls and fails. Evictions are counted per run and a run evicting
+ * more than {@code --max-evicted} percent of its vehicles, 1 by default, is flagged with
+ * a warning, so gridlocks are never hidden behind an OK.
+ * <p>
+ * The quick profile runs every configuration with few vehicles in seconds and is
+ * meant to run on every change, smoke runs them once at full size and soak cycles them.
+ * <p>
+ * Usage: StressHarness [quick|smoke|soak] [vehicles per run] [soak seconds]
+ * [--gridlock evict-one|report] [--max-evicted percent]
+ */
+public class StressHarness {
+
+    /**
+     * Seconds without any vehicle leaving after which a run is considered stuck.
+     */
+    private static final long STALL_SECONDS = 15;
+
+    /**
+     * Maximum number of violations printed per run.
+     */
+    private static final int MAX_PRINTED = 10;
+
+    /**
+     * Vehicles per run of the quick profile.
+     */
+    private static final int QUICK_VEHICLES = 200;
+
+    /**
+     * The number of runs which evicted more vehicles than the threshold.
+     */
+    private static int overEvicted;
+
+    /**
+     * Roundabout configurations as {radius, lanes, entries, exits, look-ahead, congestion aware}.
+     */
+    private static final int[][] CONFIGURATIONS = {
+            {8, 1, 2, 2, 0, 0},
+            {15, 2, 4, 4, 0, 0},
+            {15, 2, 4, 4, 3, 0},
+            {20, 2, 4, 4, 2, 1},
+            {25, 3, 6, 6, 2, 0},
+    };
+
+    /**
+     * Vehicle which moves at a fast randomized pace.
+     */
+    private static class StressVehicle extends Vehicle {
+
+        /**
+         * Whether the vehicle is bound to the outer lane.
+         */
+        private final boolean heavy;
+
+        /**
+         * Milliseconds the vehicle takes to move between two nodes.
+         */
+        private final long pace;
+
+        StressVehicle(int source, int destination, boolean heavy, long pace, Roundabout roundabout) {
+
+            super(Color.BLACK, source, destination, 10, 60, roundabout);
+            this.heavy = heavy;
+            this.pace = pace;
+        }
+
+        @Override
+        protected int[] getVehicleRoute(int entry, int exit) {
+            return this.roundabout.getVehicleRoute(entry, exit, this.heavy);
+        }
+
+        @Override
+        protected boolean isReroutable() {
+            return !this.heavy;
+        }
+
+        @Override
+        protected float accelerate(float currentSpeed) {
+            return currentSpeed + this.acceleration;
+        }
+
+        @Override
+        protected float decelerate(float currentSpeed) {
+            return currentSpeed - this.acceleration;
+        }
+
+        @Override
+        protected long waitOnQueue() {
+            return 1;
+        }
+
+        @Override
+        protected long waitToTravel() {
+            return 2;
+        }
+
+        @Override
+        protected long travel() {
+            return this.pace;
+        }
+    }
+
+    /**
+     * Checks the invariants on every occupancy change.
+     */
+    private static class InvariantChecker implements OccupancyListener {
+
+        /**
+         * The roundabout under test.
+         */
+        private final Roundabout roundabout;
+
+        /**
+         * The violations found.
+         */
+        private final ConcurrentLinkedQueue<String> violations;
+
+        /**
+         * The number of violations found.
+         */
+        private final AtomicLong count;
+
+        /**
+         * The number of vehicles evicted to untangle gridlocks.
+         */
+        private final AtomicLong evicted;
+
+        /**
+         * InvariantChecker constructor.
+         *
+         * @param roundabout The roundabout under test.
+         */
+        InvariantChecker(Roundabout roundabout) {
+
+            this.roundabout = roundabout;
+            this.violations = new ConcurrentLinkedQueue<>();
+            this.count = new AtomicLong();
+            this.evicted = new AtomicLong();
+        }
+
+        /**
+         * Records a violation.
+         *
+         * @param message The violation description.
+         */
+        void violation(String message) {
+
+            if (this.count.incrementAndGet() <= MAX_PRINTED) {
+                this.violations.add(message);
+            }
+        }
+
+        /**
+         * Only the claiming vehicle can clear the vertex, so it must still hold it.
+         */
+        @Override
+        public void onClaim(Vehicle vehicle, int key) {
+
+            Object holder = this.roundabout.getVertex(key).getValue().get();
+            if (holder != vehicle) {
+                this.violation("vertex " + key + " claimed by " + vehicle.getLabel() + " is held by " + holder);
+            }
+        }
+
+        /**
+         * The entering vehicle must be the head of its entry queue.
+         */
+        @Override
+        public void onEnter(Vehicle vehicle) {
+
+            Vehicle head = this.roundabout.getEntryQueue(vehicle.getSource()).peek();
+            if (head != vehicle) {
+                this.violation(vehicle.getLabel() + " entered from entry " + vehicle.getSource()
+                        + " ahead of " + (head == null ? "an empty queue" : head.getLabel()));
+            }
+        }
+
+        /**
+         * An exited vehicle never claims again, so it must not hold any vertex.
+         */
+        @Override
+        public void onExit(Vehicle vehicle) {
+
+            if (vehicle.isEvicted()) {
+                this.evicted.incrementAndGet();
+            }
+
+            for (int key = 0; key < this.roundabout.getVertexCount(); key++) {
+
+                if (this.roundabout.getVertex(key).getValue().get() == vehicle) {
+                    this.violation(vehicle.getLabel() + " left the roundabout still holding vertex " + key);
+                }
+            }
+        }
+
+        /**
+         * Checks the drained roundabout.
+         *
+         * @param admission The roundabout admission controller.
+         */
+        void checkDrained(AdmissionController admission) {
+
+            for (int key = 0; key < this.roundabout.getVertexCount(); key++) {
+
+                Vertex<AtomicReference> vertex = this.roundabout.getVertex(key);
+                Object value = vertex.getValue().get();
+
+                if (this.roundabout.isEntry(vertex)) {
+
+                    if (!((ConcurrentLinkedQueue<?>) value).isEmpty()) {
+                        this.violation("entry vertex " + key + " queue not empty after drain");
+                    }
+
+                } else if (value != null) {
+                    this.violation("vertex " + key + " still held by " + value + " after drain");
+                }
+            }
+
+            if (admission.getInFlight() != 0 || admission.getWaitingOutside() != 0) {
+                this.violation(admission.getInFlight() + " vehicles still in flight after drain");
+            }
+        }
+    }
+
+    /**
+     * Runs one roundabout configuration until every vehicle left or the run got stuck.
+     *
+     * @param out         The output stream.
+     * @param config      The roundabout configuration.
+     * @param vehicles    The number of vehicles to spawn.
+     * @param seed        The workload seed.
+     * @param policy      What the gridlock detector does once a gridlock is found.
+     * @param maxEvicted  The percentage of evicted vehicles above which the run is flagged.
+     * @return long The number of violations.
+     * @throws InterruptedException If interrupted while waiting for the run to finish.
+     */
+    private static long run(PrintStream out, int[] config, int vehicles, long seed, GridlockPolicy policy,
+                            double maxEvicted) throws InterruptedException {
+
+        Roundabout roundabout = Factory.getInstance().buildRoundabout(config[0], config[1], config[2], config[3]);
+        roundabout.setLookAhead(config[4]);
+        roundabout.setRoutingMode(config[5] == 1 ? RoutingMode.CONGESTION_AWARE : RoutingMode.STATIC);
+
+        InvariantChecker checker = new InvariantChecker(roundabout);
+        roundabout.addOccupancyListener(checker);
+
+        // Many more vehicles than workers, bounded below ring capacity
+        VehicleScheduler scheduler = new VehicleScheduler(roundabout, 2 * Runtime.getRuntime().availableProcessors());
+        AdmissionController admission = roundabout.getAdmission();
+        admission.setLauncher(scheduler::submit);
+        admission.setPolicy(AdmissionPolicy.QUEUE_OUTSIDE);
+        admission.setGlobalLimit(Math.max(config[2], (roundabout.getVertexCount() - config[2] - config[3]) / 2));
+
+        // Evicting untangles gridlocks so the run keeps draining, evictions are counted and checked
+        GridlockDetector detector = new GridlockDetector(roundabout, 200, policy);
+        Thread detectorThread = new Thread(detector, "stress-gridlock-detector");
+        detectorThread.setDaemon(true);
+        detectorThread.start();
+
+        // Spawn every vehicle, they wait outside until admitted
+        SplittableRandom random = new SplittableRandom(seed);
+        long start = System.nanoTime();
+        for (int i = 0; i < vehicles; i++) {
+
+            admission.submit(new StressVehicle(1 + random.nextInt(config[2]), 1 + random.nextInt(config[3]),
+                    random.nextInt(4) == 0, 1 + random.nextInt(3), roundabout));
+        }
+
+        // Wait for the drain, watching for progress
+        long completed = 0;
+        long lastProgress = System.nanoTime();
+        while (scheduler.getCompleted() < vehicles) {
+
+            Thread.sleep(100);
+
+            if (scheduler.getCompleted() != completed) {
+
+                completed = scheduler.getCompleted();
+                lastProgress = System.nanoTime();
+
+            } else if (System.nanoTime() - lastProgress > STALL_SECONDS * 1_000_000_000L) {
+
+                checker.violation("no vehicle left for " + STALL_SECONDS + "s, " + scheduler.getActive()
+                        + " active and " + admission.getWaitingOutside() + " waiting outside");
+                break;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        detector.stop();
+        scheduler.shutdown(1000);
+
+        if (scheduler.getCompleted() == vehicles) {
+            checker.checkDrained(admission);
+        }
+
+        long claims = roundabout.getMetrics().getClaimAttempts() - roundabout.getMetrics().getClaimFailures();
+        long evicted = checker.evicted.get();
+        out.printf("radius=%d lanes=%d entries=%d exits=%d look-ahead=%d routing=%s | vehicles=%d %.1fs "
+                        + "throughput=%.0f veh/s claims=%.0f/s failed-claims=%d gridlocks=%d evicted=%d violations=%d%n",
+                config[0], config[1], config[2], config[3], config[4], roundabout.getRoutingMode(),
+                scheduler.getCompleted(), seconds, scheduler.getCompleted() / seconds, claims / seconds,
+                roundabout.getMetrics().getClaimFailures(), detector.getDetectedCount(), evicted, checker.count.get());
+
+        for (String violation : checker.violations) {
+            out.println("  VIOLATION " + violation);
+        }
+
+        if (100.0 * evicted > maxEvicted * vehicles) {
+
+            overEvicted++;
+            out.printf("  WARNING evicted %d of %d vehicles (%.1f%%), above the %.1f%% threshold%n",
+                    evicted, vehicles, 100.0 * evicted / vehicles, maxEvicted);
+        }
+
+        return checker.count.get();
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments.
+     * @throws InterruptedException If interrupted while waiting for a run to finish.
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        // Options, then the positional profile, vehicles and soak seconds
+        GridlockPolicy policy = GridlockPolicy.EVICT_ONE;
+        double maxEvicted = 1;
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+
+            if (args[i].equals("--gridlock") && i + 1 < args.length) {
+                policy = GridlockPolicy.valueOf(args[++i].toUpperCase().replace('-', '_'));
+            } else if (args[i].equals("--max-evicted") && i + 1 < args.length) {
+                maxEvicted = Double.parseDouble(args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+
+        String profile = positional.size() > 0 ? positional.get(0) : "smoke";
+        boolean soak = profile.equals("soak");
+        int vehicles = positional.size() > 1 ? Integer.parseInt(positional.get(1))
+                : soak ? 20_000 : profile.equals("quick") ? QUICK_VEHICLES : 2_000;
+        long soakSeconds = positional.size() > 2 ? Long.parseLong(positional.get(2)) : 600;
+
+        // Silence roundabout building logs
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        long violations = 0;
+        long deadline = System.nanoTime() + soakSeconds * 1_000_000_000L;
+        int round = 0;
+
+        // Smoke runs every configuration once, soak cycles them until the deadline
+        do {
+
+            for (int[] config : CONFIGURATIONS) {
+                violations += run(out, config, vehicles, 31L * round + config[0], policy, maxEvicted);
+            }
+            round++;
+
+        } while (soak && System.nanoTime() < deadline && violations == 0);
+
+        if (violations != 0) {
+            out.println("FAILED with " + violations + " violations");
+        } else if (overEvicted != 0) {
+            out.println("OK with " + overEvicted + " runs above the " + maxEvicted + "% eviction threshold");
+        } else {
+            out.println("OK");
+        }
+        System.exit(violations == 0 ? 0 : 1);
+    }
+}
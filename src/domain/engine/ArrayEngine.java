@@ -0,0 +1,399 @@
+package domain.engine;
+
+import domain.roundabout.Factory;
+import domain.roundabout.Roundabout;
+import domain.vehicles.VehicleType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Headless simulation engine over a struct-of-arrays vehicle store.
+ * <p>
+ * Vehicles are plain slots in a {@link VehicleStore} and the roundabout occupancy is an
+ * int array indexed by vertex key, so a step is a couple of tight loops over primitive
+ * arrays. The engine is single threaded and, once routes are registered, a step
+ * allocates nothing.
+ */
+public class ArrayEngine {
+
+    /**
+     * The vehicle state.
+     */
+    private final VehicleStore store;
+
+    /**
+     * The slot + 1 of the vehicle on each vertex, 0 when the vertex is free.
+     */
+    private final int[] occupancy;
+
+    /**
+     * The routes as vertex key arrays, indexed by route id.
+     */
+    private final List<int[]> routeList;
+
+    /**
+     * The routes as an array, rebuilt when a route is registered.
+     */
+    private int[][] routes;
+
+    /**
+     * The entry each route starts at, indexed by route id.
+     */
+    private int[] routeEntry;
+
+    /**
+     * The queued vehicles of each entry as ring buffers of (route id << 8 | class).
+     */
+    private final int[][] queues;
+
+    /**
+     * The queue head of each entry.
+     */
+    private final long[] queueHead;
+
+    /**
+     * The queue tail of each entry.
+     */
+    private final long[] queueTail;
+
+    /**
+     * The acceleration of each vehicle class in m/s^2.
+     */
+    private final float[] classAcceleration;
+
+    /**
+     * The maximum speed of each vehicle class in m/s.
+     */
+    private final float[] classMaxSpeed;
+
+    /**
+     * The length of a vertex in meters.
+     */
+    private final float cellLength;
+
+    /**
+     * Step counters.
+     */
+    private long steps;
+    private long moves;
+    private long blocked;
+    private long entered;
+    private long exited;
+
+    /**
+     * ArrayEngine constructor.
+     *
+     * @param vertexCount   The number of vertices, vertex keys must be in [0, vertexCount).
+     * @param nEntries      The number of entries.
+     * @param capacity      The maximum number of active vehicles.
+     * @param queueCapacity The maximum number of queued vehicles per entry.
+     * @param cellLength    The length of a vertex in meters.
+     */
+    public ArrayEngine(int vertexCount, int nEntries, int capacity, int queueCapacity, float cellLength) {
+
+        this.store = new VehicleStore(capacity);
+        this.occupancy = new int[vertexCount];
+        this.routeList = new ArrayList<>();
+        this.routes = new int[0][];
+        this.routeEntry = new int[0];
+        this.queues = new int[nEntries][queueCapacity];
+        this.queueHead = new long[nEntries];
+        this.queueTail = new long[nEntries];
+        this.cellLength = cellLength;
+
+        // Vehicle type accelerations are km/h gained per second
+        VehicleType[] types = VehicleType.values();
+        this.classAcceleration = new float[types.length];
+        this.classMaxSpeed = new float[types.length];
+        for (VehicleType type : types) {
+
+            this.classAcceleration[type.ordinal()] = type.getAcceleration() / 3.6f;
+            this.classMaxSpeed[type.ordinal()] = type.getMaxSpeed() / 3.6f;
+        }
+    }
+
+    /**
+     * Returns an engine for the given roundabout with every alternative route registered.
+     * Route ids are ordered by entry, exit, heavy/light and alternative.
+     *
+     * @param roundabout    The roundabout.
+     * @param capacity      The maximum number of active vehicles.
+     * @param queueCapacity The maximum number of queued vehicles per entry.
+     * @return ArrayEngine
+     */
+    public static ArrayEngine fromRoundabout(Roundabout roundabout, int capacity, int queueCapacity) {
+
+        ArrayEngine engine = new ArrayEngine(roundabout.getVertices().size(), roundabout.getEntriesNumber(),
+                capacity, queueCapacity, (float) (1 / Factory.VERTEX_PER_METER_RATIO));
+
+        for (int entry = 1; entry <= roundabout.getEntriesNumber(); entry++) {
+
+            for (int exit = 1; exit <= roundabout.getExitsNumber(); exit++) {
+
+                for (boolean heavy : new boolean[]{true, false}) {
+
+                    for (int[] route : roundabout.getAlternativeRoutes(entry, exit, heavy)) {
+                        engine.registerRoute(entry, route);
+                    }
+                }
+            }
+        }
+
+        return engine;
+    }
+
+    /**
+     * Registers a route.
+     *
+     * @param entry    The entry the route starts at.
+     * @param vertices The route vertex keys.
+     * @return int The route id.
+     */
+    public int registerRoute(int entry, int[] vertices) {
+
+        this.routeList.add(vertices.clone());
+        this.routes = this.routeList.toArray(new int[0][]);
+        this.routeEntry = Arrays.copyOf(this.routeEntry, this.routes.length);
+        this.routeEntry[this.routes.length - 1] = entry;
+
+        return this.routes.length - 1;
+    }
+
+    /**
+     * Returns the number of registered routes.
+     *
+     * @return int
+     */
+    public int getRoutesNumber() {
+        return this.routes.length;
+    }
+
+    /**
+     * Returns the vehicle store.
+     *
+     * @return VehicleStore
+     */
+    public VehicleStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * Queues a vehicle on the entry its route starts at.
+     *
+     * @param routeId The vehicle route id.
+     * @param type    The vehicle type.
+     * @return boolean False when the entry queue is full.
+     */
+    public boolean spawn(int routeId, VehicleType type) {
+
+        int entry = this.routeEntry[routeId] - 1;
+        int[] queue = this.queues[entry];
+
+        if (this.queueTail[entry] - this.queueHead[entry] == queue.length) {
+            return false;
+        }
+
+        queue[(int) (this.queueTail[entry]++ % queue.length)] = (routeId << 8) | type.ordinal();
+
+        return true;
+    }
+
+    /**
+     * Places a vehicle directly on a route node.
+     *
+     * @param routeId  The vehicle route id.
+     * @param position The route index of the node.
+     * @param type     The vehicle type.
+     * @return boolean False when the node is taken or the store is full.
+     */
+    public boolean place(int routeId, int position, VehicleType type) {
+
+        int vertex = this.routes[routeId][position];
+        if (this.occupancy[vertex] != 0) {
+            return false;
+        }
+
+        int slot = this.store.add(routeId, position, this.classAcceleration[type.ordinal()],
+                this.classMaxSpeed[type.ordinal()], (byte) type.ordinal());
+        if (slot < 0) {
+            return false;
+        }
+
+        this.occupancy[vertex] = slot + 1;
+
+        return true;
+    }
+
+    /**
+     * Advances the simulation.
+     *
+     * @param dt The step duration in seconds.
+     */
+    public void step(float dt) {
+
+        this.updateSpeeds(dt);
+        this.moveVehicles();
+        this.admitQueued();
+        this.steps++;
+    }
+
+    /**
+     * Speed and progress kernel, written as a plain loop over the store arrays so it vectorizes.
+     *
+     * @param dt The step duration in seconds.
+     */
+    private void updateSpeeds(float dt) {
+
+        float[] speed = this.store.speed;
+        float[] acceleration = this.store.acceleration;
+        float[] maxSpeed = this.store.maxSpeed;
+        float[] progress = this.store.progress;
+        int n = this.store.size;
+
+        for (int i = 0; i < n; i++) {
+
+            float s = Math.min(speed[i] + acceleration[i] * dt, maxSpeed[i]);
+            speed[i] = s;
+            progress[i] += s * dt;
+        }
+    }
+
+    /**
+     * Moves every vehicle which travelled a whole vertex to its next route node if it is free.
+     */
+    private void moveVehicles() {
+
+        int[] position = this.store.position;
+        int[] route = this.store.route;
+        float[] speed = this.store.speed;
+        float[] progress = this.store.progress;
+        int[][] routes = this.routes;
+        int[] occupancy = this.occupancy;
+
+        int i = 0;
+        while (i < this.store.size) {
+
+            // Still travelling along the current vertex
+            if (progress[i] < this.cellLength) {
+                i++;
+                continue;
+            }
+
+            int[] r = routes[route[i]];
+            int pos = position[i];
+
+            // Route finished, leave the roundabout
+            if (pos + 1 == r.length) {
+
+                occupancy[r[pos]] = 0;
+                this.exited++;
+
+                // The last vehicle now lives in this slot, process it next
+                if (this.store.remove(i) != i) {
+                    occupancy[routes[route[i]][position[i]]] = i + 1;
+                }
+
+                continue;
+            }
+
+            // Move to next node or stop in front of it
+            int next = r[pos + 1];
+            if (occupancy[next] == 0) {
+
+                occupancy[r[pos]] = 0;
+                occupancy[next] = i + 1;
+                position[i] = pos + 1;
+                progress[i] -= this.cellLength;
+                this.moves++;
+
+            } else {
+
+                speed[i] = 0;
+                progress[i] = this.cellLength;
+                this.blocked++;
+            }
+
+            i++;
+        }
+    }
+
+    /**
+     * Lets the head of each entry queue in when the first node of its route is free.
+     */
+    private void admitQueued() {
+
+        for (int entry = 0; entry < this.queues.length; entry++) {
+
+            if (this.queueHead[entry] == this.queueTail[entry]) {
+                continue;
+            }
+
+            int[] queue = this.queues[entry];
+            int item = queue[(int) (this.queueHead[entry] % queue.length)];
+            int routeId = item >>> 8;
+            int vehicleClass = item & 0xFF;
+            int first = this.routes[routeId][0];
+
+            if (this.occupancy[first] != 0) {
+                continue;
+            }
+
+            int slot = this.store.add(routeId, 0, this.classAcceleration[vehicleClass],
+                    this.classMaxSpeed[vehicleClass], (byte) vehicleClass);
+            if (slot < 0) {
+                return;
+            }
+
+            this.occupancy[first] = slot + 1;
+            this.queueHead[entry]++;
+            this.entered++;
+        }
+    }
+
+    /**
+     * Returns the number of steps run.
+     *
+     * @return long
+     */
+    public long getSteps() {
+        return this.steps;
+    }
+
+    /**
+     * Returns the number of vehicle moves.
+     *
+     * @return long
+     */
+    public long getMoves() {
+        return this.moves;
+    }
+
+    /**
+     * Returns the number of times a vehicle was blocked by the vehicle ahead.
+     *
+     * @return long
+     */
+    public long getBlocked() {
+        return this.blocked;
+    }
+
+    /**
+     * Returns the number of vehicles which entered the roundabout from a queue.
+     *
+     * @return long
+     */
+    public long getEntered() {
+        return this.entered;
+    }
+
+    /**
+     * Returns the number of vehicles which left the roundabout.
+     *
+     * @return long
+     */
+    public long getExited() {
+        return this.exited;
+    }
+}
@@ -0,0 +1,187 @@
+package domain.engine;
+
+/**
+ * Vehicle state kept as parallel primitive arrays.
+ * <p>
+ * Active vehicles are always the slots [0, size), removing a vehicle moves the last
+ * one into its slot so update kernels run over dense arrays without branching on
+ * free slots. Nothing is allocated after construction.
+ */
+public class VehicleStore {
+
+    /**
+     * The route index of the node each vehicle stands on.
+     */
+    final int[] position;
+
+    /**
+     * The route id of each vehicle.
+     */
+    final int[] route;
+
+    /**
+     * The speed of each vehicle in m/s.
+     */
+    final float[] speed;
+
+    /**
+     * The acceleration of each vehicle in m/s^2.
+     */
+    final float[] acceleration;
+
+    /**
+     * The maximum speed of each vehicle in m/s.
+     */
+    final float[] maxSpeed;
+
+    /**
+     * The distance each vehicle travelled since it entered its node, in meters.
+     */
+    final float[] progress;
+
+    /**
+     * The class of each vehicle, the VehicleType ordinal.
+     */
+    final byte[] vehicleClass;
+
+    /**
+     * The number of active vehicles.
+     */
+    int size;
+
+    /**
+     * VehicleStore constructor.
+     *
+     * @param capacity The maximum number of active vehicles.
+     */
+    public VehicleStore(int capacity) {
+
+        this.position = new int[capacity];
+        this.route = new int[capacity];
+        this.speed = new float[capacity];
+        this.acceleration = new float[capacity];
+        this.maxSpeed = new float[capacity];
+        this.progress = new float[capacity];
+        this.vehicleClass = new byte[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of active vehicles.
+     *
+     * @return int
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the maximum number of active vehicles.
+     *
+     * @return int
+     */
+    public int capacity() {
+        return this.position.length;
+    }
+
+    /**
+     * Returns the number of bytes used per vehicle slot.
+     *
+     * @return int
+     */
+    public static int bytesPerVehicle() {
+        return 6 * Integer.BYTES + 1;
+    }
+
+    /**
+     * Adds a vehicle.
+     *
+     * @param route        The vehicle route id.
+     * @param position     The route index of the node the vehicle stands on.
+     * @param acceleration The vehicle acceleration in m/s^2.
+     * @param maxSpeed     The vehicle maximum speed in m/s.
+     * @param vehicleClass The vehicle class.
+     * @return int The vehicle slot or -1 if the store is full.
+     */
+    public int add(int route, int position, float acceleration, float maxSpeed, byte vehicleClass) {
+
+        if (this.size == this.position.length) {
+            return -1;
+        }
+
+        int slot = this.size++;
+        this.position[slot] = position;
+        this.route[slot] = route;
+        this.speed[slot] = 0;
+        this.acceleration[slot] = acceleration;
+        this.maxSpeed[slot] = maxSpeed;
+        this.progress[slot] = 0;
+        this.vehicleClass[slot] = vehicleClass;
+
+        return slot;
+    }
+
+    /**
+     * Removes a vehicle by moving the last vehicle into its slot.
+     *
+     * @param slot The vehicle slot.
+     * @return int The slot the moved vehicle was in, equal to slot when no vehicle moved.
+     */
+    public int remove(int slot) {
+
+        int last = --this.size;
+
+        if (slot != last) {
+
+            this.position[slot] = this.position[last];
+            this.route[slot] = this.route[last];
+            this.speed[slot] = this.speed[last];
+            this.acceleration[slot] = this.acceleration[last];
+            this.maxSpeed[slot] = this.maxSpeed[last];
+            this.progress[slot] = this.progress[last];
+            this.vehicleClass[slot] = this.vehicleClass[last];
+        }
+
+        return last;
+    }
+
+    /**
+     * Returns the route index of the node a vehicle stands on.
+     *
+     * @param slot The vehicle slot.
+     * @return int
+     */
+    public int getPosition(int slot) {
+        return this.position[slot];
+    }
+
+    /**
+     * Returns the route id of a vehicle.
+     *
+     * @param slot The vehicle slot.
+     * @return int
+     */
+    public int getRoute(int slot) {
+        return this.route[slot];
+    }
+
+    /**
+     * Returns the speed of a vehicle in m/s.
+     *
+     * @param slot The vehicle slot.
+     * @return float
+     */
+    public float getSpeed(int slot) {
+        return this.speed[slot];
+    }
+
+    /**
+     * Returns the class of a vehicle.
+     *
+     * @param slot The vehicle slot.
+     * @return byte
+     */
+    public byte getVehicleClass(int slot) {
+        return this.vehicleClass[slot];
+    }
+}
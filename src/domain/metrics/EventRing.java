@@ -0,0 +1,180 @@
+package domain.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded ring of event records written by many threads and read by a single one.
+ * <p>
+ * A record is three longs: a time, a subject and a detail, whose meaning is up to the
+ * owner of the ring. Writers claim a sequence without locks, store the record fields in
+ * its slot and then publish the sequence in the slot, so nothing is allocated per event.
+ * The reader consumes published slots in sequence order. When the reader is a whole ring
+ * behind, events are dropped and counted instead of making writers wait.
+ */
+class EventRing {
+
+    /**
+     * Ring slot mask, the ring size is a power of two.
+     */
+    private final int mask;
+
+    /**
+     * Record fields per ring slot.
+     */
+    private final long[] times;
+    private final long[] subjects;
+    private final long[] details;
+
+    /**
+     * The sequence published in each slot, written after the record fields.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The next sequence to claim.
+     */
+    private final AtomicLong cursor;
+
+    /**
+     * The next sequence the reader consumes.
+     */
+    private volatile long consumed;
+
+    /**
+     * The number of events dropped because the ring was full.
+     */
+    private final LongAdder dropped;
+
+    /**
+     * EventRing constructor.
+     *
+     * @param capacity The number of events the ring holds, rounded up to a power of two.
+     */
+    EventRing(int capacity) {
+
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        this.mask = size - 1;
+        this.times = new long[size];
+        this.subjects = new long[size];
+        this.details = new long[size];
+        this.published = new AtomicLongArray(size);
+        this.cursor = new AtomicLong();
+        this.dropped = new LongAdder();
+
+        // No slot is published before its first lap
+        for (int i = 0; i < size; i++) {
+            this.published.set(i, -1);
+        }
+    }
+
+    /**
+     * Appends a record, or drops it when the ring is full.
+     *
+     * @param time    The record time.
+     * @param subject The record subject.
+     * @param detail  The record detail.
+     * @return boolean Whether the record was appended.
+     */
+    boolean offer(long time, long subject, long detail) {
+
+        // Claim a slot unless the reader is a whole ring behind
+        long sequence;
+        do {
+            sequence = this.cursor.get();
+            if (sequence - this.consumed > this.mask) {
+
+                this.dropped.increment();
+                return false;
+            }
+        } while (!this.cursor.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & this.mask;
+
+        this.times[slot] = time;
+        this.subjects[slot] = subject;
+        this.details[slot] = detail;
+        this.published.lazySet(slot, sequence);
+
+        return true;
+    }
+
+    /**
+     * Returns the slot of the next record to consume. Called by the reader only.
+     *
+     * @return int The slot, -1 when the next record is not published yet.
+     */
+    int peek() {
+
+        long sequence = this.consumed;
+        int slot = (int) sequence & this.mask;
+
+        return this.published.get(slot) == sequence ? slot : -1;
+    }
+
+    /**
+     * Returns the time of the record in a slot returned by {@link #peek()}.
+     *
+     * @param slot The slot.
+     * @return long
+     */
+    long getTime(int slot) {
+        return this.times[slot];
+    }
+
+    /**
+     * Returns the subject of the record in a slot returned by {@link #peek()}.
+     *
+     * @param slot The slot.
+     * @return long
+     */
+    long getSubject(int slot) {
+        return this.subjects[slot];
+    }
+
+    /**
+     * Returns the detail of the record in a slot returned by {@link #peek()}.
+     *
+     * @param slot The slot.
+     * @return long
+     */
+    long getDetail(int slot) {
+        return this.details[slot];
+    }
+
+    /**
+     * Consumes the record returned by {@link #peek()}, its slot may then be reused. Called by the reader only.
+     */
+    void advance() {
+        this.consumed = this.consumed + 1;
+    }
+
+    /**
+     * Returns whether every claimed record was consumed.
+     *
+     * @return boolean
+     */
+    boolean isDrained() {
+        return this.consumed == this.cursor.get();
+    }
+
+    /**
+     * Returns the number of records appended so far.
+     *
+     * @return long
+     */
+    long getAppended() {
+        return this.cursor.get();
+    }
+
+    /**
+     * Returns the number of records dropped because the ring was full.
+     *
+     * @return long
+     */
+    long getDropped() {
+        return this.dropped.sum();
+    }
+}
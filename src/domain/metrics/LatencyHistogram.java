@@ -0,0 +1,170 @@
+package domain.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of latencies with power of two microsecond buckets.
+ * <p>
+ * Bucket i counts the latencies below 2^i microseconds not counted by a lower bucket,
+ * the last bucket counts everything longer. Recording is a few atomic additions, so
+ * vehicles record their own latencies and readers take snapshots at any time.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of buckets, the last one is unbounded.
+     */
+    public static final int BUCKETS = 40;
+
+    /**
+     * The number of latencies in each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The number of recorded latencies.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of the recorded latencies in nanoseconds.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * The longest recorded latency in nanoseconds.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Returns the bucket of a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     * @return int
+     */
+    private static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos) / 1000));
+    }
+
+    /**
+     * Returns the upper bound of a bucket.
+     *
+     * @param bucket The bucket.
+     * @return long The bound in nanoseconds, Long.MAX_VALUE for the last bucket.
+     */
+    public static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) * 1000;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+
+        this.buckets.incrementAndGet(bucket(nanos));
+        this.count.increment();
+        this.sum.add(nanos);
+        this.max.accumulate(nanos);
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return long
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded latencies.
+     *
+     * @return long The sum in nanoseconds.
+     */
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * Returns the longest recorded latency.
+     *
+     * @return long The latency in nanoseconds, 0 when none was recorded.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Returns the mean recorded latency.
+     *
+     * @return double The mean in nanoseconds, 0 when none was recorded.
+     */
+    public double getMean() {
+
+        long count = this.getCount();
+        return count == 0 ? 0 : (double) this.getSum() / count;
+    }
+
+    /**
+     * Returns a copy of the bucket counts. Concurrent recordings may or may not be included.
+     *
+     * @return long[] The count of each bucket.
+     */
+    public long[] snapshot() {
+
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Returns an upper bound of a latency percentile.
+     *
+     * @param percentile The percentile, 0 to 100.
+     * @return long The upper bound of the bucket holding the percentile in nanoseconds, capped at the longest latency.
+     */
+    public long getPercentile(double percentile) {
+
+        long[] counts = this.snapshot();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        // First bucket reaching the rank
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBound(i), this.getMax());
+            }
+        }
+
+        return this.getMax();
+    }
+
+    /**
+     * Resets the histogram.
+     */
+    public void reset() {
+
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.reset();
+    }
+}
@@ -0,0 +1,493 @@
+package domain.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import domain.roundabout.AdmissionController;
+import domain.roundabout.Roundabout;
+import domain.vehicles.Vehicle;
+import domain.vehicles.VehicleType;
+import graphv2.Vertex;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Serves roundabout state and metrics over HTTP with the JDK built-in server.
+ * <p>
+ * Endpoints, all GET:
+ * <pre>
+ * /metrics             counters, gauges, entry queue lengths and latency histograms in Prometheus text format
+ * /metrics?format=json the same as JSON
+ * /occupancy           the vehicle on every occupied vertex, the blocked vertices and the entry queue lengths as JSON
+ * /topology            the roundabout vertices, their lanes and successors, entries and exits as JSON
+ * </pre>
+ * Responses are built from lock free reads of the counters, histograms and vertex references on a
+ * single server thread, so scraping never makes a vehicle wait. A snapshot is not taken at one
+ * instant: values read later may include moves made while the response was built.
+ */
+public class MetricsServer {
+
+    /**
+     * The Prometheus text format content type.
+     */
+    private static final String PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * The JSON content type.
+     */
+    private static final String JSON = "application/json; charset=utf-8";
+
+    /**
+     * Returns the served roundabout, which may change between requests.
+     */
+    private final Supplier<Roundabout> roundabout;
+
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Runs the request handlers.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * MetricsServer constructor, the server is not started.
+     *
+     * @param roundabout Returns the served roundabout.
+     * @param address    The address to listen on, port 0 picks a free port.
+     * @throws IOException If the address cannot be bound.
+     */
+    public MetricsServer(Supplier<Roundabout> roundabout, InetSocketAddress address) throws IOException {
+
+        this.roundabout = roundabout;
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        this.server.createContext("/metrics", exchange -> {
+
+            boolean json = "format=json".equals(exchange.getRequestURI().getQuery());
+            this.handle(exchange, "/metrics", json ? JSON : PROMETHEUS, json ? this::metricsJson : this::prometheus);
+        });
+        this.server.createContext("/occupancy", exchange -> this.handle(exchange, "/occupancy", JSON, this::occupancy));
+        this.server.createContext("/topology", exchange -> this.handle(exchange, "/topology", JSON, this::topology));
+        this.server.setExecutor(this.executor);
+    }
+
+    /**
+     * Starts serving.
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stops serving, waiting at most a second for the requests being served.
+     */
+    public void stop() {
+
+        this.server.stop(1);
+        this.executor.shutdown();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return int
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Answers a request with the body built from the current roundabout.
+     *
+     * @param exchange    The exchange.
+     * @param path        The only path served by the context.
+     * @param contentType The response content type.
+     * @param body        Builds the response body from the roundabout.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handle(HttpExchange exchange, String path, String contentType,
+                        Function<Roundabout, String> body) throws IOException {
+
+        try {
+
+            Roundabout roundabout = this.roundabout.get();
+
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                this.respond(exchange, 405, "text/plain; charset=utf-8", "Only GET is supported\n");
+            } else if (!path.equals(exchange.getRequestURI().getPath())) {
+                this.respond(exchange, 404, "text/plain; charset=utf-8", "Not found\n");
+            } else if (roundabout == null) {
+                this.respond(exchange, 503, "text/plain; charset=utf-8", "No roundabout\n");
+            } else {
+                this.respond(exchange, 200, contentType, body.apply(roundabout));
+            }
+
+        } catch (RuntimeException e) {
+            this.respond(exchange, 500, "text/plain; charset=utf-8", e + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends a response.
+     *
+     * @param exchange    The exchange.
+     * @param status      The status code.
+     * @param contentType The content type.
+     * @param body        The body.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Returns the number of vehicles on the roundabout vertices.
+     *
+     * @param roundabout The roundabout.
+     * @return int
+     */
+    private static int occupied(Roundabout roundabout) {
+
+        int occupied = 0;
+        for (int key = 0; key < roundabout.getVertexCount(); key++) {
+
+            if (roundabout.getVertex(key).getValue().get() instanceof Vehicle) {
+                occupied++;
+            }
+        }
+
+        return occupied;
+    }
+
+    /**
+     * Appends a metric in Prometheus text format.
+     *
+     * @param out   The output.
+     * @param name  The metric name.
+     * @param type  The metric type.
+     * @param help  The metric description.
+     * @param value The value.
+     */
+    private static void metric(StringBuilder out, String name, String type, String help, double value) {
+
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(number(value)).append('\n');
+    }
+
+    /**
+     * Appends a latency histogram in Prometheus text format, in seconds.
+     *
+     * @param out       The output.
+     * @param name      The metric name.
+     * @param help      The metric description.
+     * @param histogram The histogram.
+     */
+    private static void histogram(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+
+        // Cumulative buckets up to the last non empty one, the count follows the buckets
+        long[] counts = histogram.snapshot();
+        int last = counts.length - 2;
+        while (last > 0 && counts[last] == 0) last--;
+
+        long total = 0;
+        for (int i = 0; i <= last; i++) {
+
+            total += counts[i];
+            out.append(name).append("_bucket{le=\"").append(number(LatencyHistogram.upperBound(i) / 1e9))
+                    .append("\"} ").append(total).append('\n');
+        }
+        for (int i = last + 1; i < counts.length; i++) {
+            total += counts[i];
+        }
+
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(total).append('\n');
+        out.append(name).append("_sum ").append(number(histogram.getSum() / 1e9)).append('\n');
+        out.append(name).append("_count ").append(total).append('\n');
+    }
+
+    /**
+     * Builds the metrics in Prometheus text format.
+     *
+     * @param roundabout The roundabout.
+     * @return String
+     */
+    private String prometheus(Roundabout roundabout) {
+
+        SimulationMetrics metrics = roundabout.getMetrics();
+        AdmissionController admission = roundabout.getAdmission();
+        StringBuilder out = new StringBuilder(4096);
+
+        // Counters
+        metric(out, "roundabout_claim_attempts_total", "counter", "Node claim attempts.", metrics.getClaimAttempts());
+        metric(out, "roundabout_claim_failures_total", "counter", "Node claims which failed because the node was taken.",
+                metrics.getClaimFailures());
+        metric(out, "roundabout_reservations_total", "counter", "Nodes reserved ahead of vehicles.", metrics.getReservations());
+        metric(out, "roundabout_entered_total", "counter", "Vehicles which entered the roundabout.", metrics.getEntered());
+        metric(out, "roundabout_exited_total", "counter", "Vehicles which left through their exit.", metrics.getExited());
+        metric(out, "roundabout_gap_rejections_total", "counter", "Queue heads which did not enter for lack of a gap.",
+                metrics.getGapRejections());
+        metric(out, "roundabout_priority_yields_total", "counter", "Times regular vehicles gave way to a priority route.",
+                metrics.getPriorityYields());
+        metric(out, "roundabout_admitted_total", "counter", "Vehicles admitted into the roundabout.", admission.getAdmitted());
+        metric(out, "roundabout_rejected_total", "counter", "Vehicles rejected by admission control.", admission.getRejected());
+        metric(out, "roundabout_deferred_total", "counter", "Vehicles deferred by admission control.", admission.getDeferred());
+
+        // Gauges
+        metric(out, "roundabout_simulated_seconds", "gauge", "Simulated time.", roundabout.getClock().millis() / 1000.0);
+        metric(out, "roundabout_vehicles_in_flight", "gauge", "Admitted vehicles which did not leave yet.",
+                admission.getInFlight());
+        metric(out, "roundabout_vehicles_waiting_outside", "gauge", "Vehicles waiting for admission.",
+                admission.getWaitingOutside());
+        metric(out, "roundabout_occupied_vertices", "gauge", "Vertices occupied by a vehicle.", occupied(roundabout));
+
+        out.append("# HELP roundabout_entry_queue_length Vehicles queued at each entry.\n");
+        out.append("# TYPE roundabout_entry_queue_length gauge\n");
+        for (int entry = 1; entry <= roundabout.getEntriesNumber(); entry++) {
+
+            out.append("roundabout_entry_queue_length{entry=\"").append(entry).append("\"} ")
+                    .append(roundabout.getEntryQueue(entry).size()).append('\n');
+        }
+
+        // Latencies
+        histogram(out, "roundabout_trip_latency_seconds", "Simulated time regular vehicles took from spawning to leaving.",
+                metrics.getTripLatency());
+        histogram(out, "roundabout_priority_trip_latency_seconds",
+                "Simulated time priority vehicles took from spawning to leaving.", metrics.getPriorityLatency());
+
+        return out.toString();
+    }
+
+    /**
+     * Appends a latency histogram as a JSON object, in seconds.
+     *
+     * @param out       The output.
+     * @param histogram The histogram.
+     */
+    private static void histogramJson(StringBuilder out, LatencyHistogram histogram) {
+
+        long[] counts = histogram.snapshot();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+
+        out.append("{\"count\":").append(total)
+                .append(",\"sum\":").append(number(histogram.getSum() / 1e9))
+                .append(",\"max\":").append(number(histogram.getMax() / 1e9))
+                .append(",\"p50\":").append(number(histogram.getPercentile(50) / 1e9))
+                .append(",\"p95\":").append(number(histogram.getPercentile(95) / 1e9))
+                .append(",\"p99\":").append(number(histogram.getPercentile(99) / 1e9))
+                .append(",\"buckets\":[");
+
+        // Only the non empty buckets, by upper bound
+        boolean first = true;
+        for (int i = 0; i < counts.length; i++) {
+
+            if (counts[i] == 0) {
+                continue;
+            }
+            if (!first) out.append(',');
+            first = false;
+
+            out.append("{\"le\":").append(i == counts.length - 1 ? "null" : number(LatencyHistogram.upperBound(i) / 1e9))
+                    .append(",\"count\":").append(counts[i]).append('}');
+        }
+        out.append("]}");
+    }
+
+    /**
+     * Appends the entry queue lengths as a JSON array, by entry.
+     *
+     * @param out        The output.
+     * @param roundabout The roundabout.
+     */
+    private static void queuesJson(StringBuilder out, Roundabout roundabout) {
+
+        out.append('[');
+        for (int entry = 1; entry <= roundabout.getEntriesNumber(); entry++) {
+
+            if (entry > 1) out.append(',');
+            out.append(roundabout.getEntryQueue(entry).size());
+        }
+        out.append(']');
+    }
+
+    /**
+     * Builds the metrics as JSON.
+     *
+     * @param roundabout The roundabout.
+     * @return String
+     */
+    private String metricsJson(Roundabout roundabout) {
+
+        SimulationMetrics metrics = roundabout.getMetrics();
+        AdmissionController admission = roundabout.getAdmission();
+        StringBuilder out = new StringBuilder(2048);
+
+        out.append("{\"counters\":{")
+                .append("\"claimAttempts\":").append(metrics.getClaimAttempts())
+                .append(",\"claimFailures\":").append(metrics.getClaimFailures())
+                .append(",\"reservations\":").append(metrics.getReservations())
+                .append(",\"entered\":").append(metrics.getEntered())
+                .append(",\"exited\":").append(metrics.getExited())
+                .append(",\"gapRejections\":").append(metrics.getGapRejections())
+                .append(",\"priorityYields\":").append(metrics.getPriorityYields())
+                .append(",\"admitted\":").append(admission.getAdmitted())
+                .append(",\"rejected\":").append(admission.getRejected())
+                .append(",\"deferred\":").append(admission.getDeferred())
+                .append("},\"gauges\":{")
+                .append("\"simulatedSeconds\":").append(number(roundabout.getClock().millis() / 1000.0))
+                .append(",\"inFlight\":").append(admission.getInFlight())
+                .append(",\"waitingOutside\":").append(admission.getWaitingOutside())
+                .append(",\"occupiedVertices\":").append(occupied(roundabout))
+                .append("},\"queues\":");
+        queuesJson(out, roundabout);
+
+        out.append(",\"latency\":{\"trip\":");
+        histogramJson(out, metrics.getTripLatency());
+        out.append(",\"priorityTrip\":");
+        histogramJson(out, metrics.getPriorityLatency());
+        out.append("}}");
+
+        return out.toString();
+    }
+
+    /**
+     * Builds the occupancy snapshot as JSON.
+     *
+     * @param roundabout The roundabout.
+     * @return String
+     */
+    private String occupancy(Roundabout roundabout) {
+
+        StringBuilder out = new StringBuilder(4096);
+        out.append("{\"simulatedSeconds\":").append(number(roundabout.getClock().millis() / 1000.0))
+                .append(",\"vertices\":").append(roundabout.getVertexCount())
+                .append(",\"occupied\":[");
+
+        // Each vertex reference is read once, entries hold their queue
+        StringBuilder blocked = new StringBuilder();
+        boolean first = true;
+        for (int key = 0; key < roundabout.getVertexCount(); key++) {
+
+            Object value = roundabout.getVertex(key).getValue().get();
+            if (value instanceof Vehicle) {
+
+                Vehicle vehicle = (Vehicle) value;
+                VehicleType type = VehicleType.of(vehicle);
+
+                if (!first) out.append(',');
+                first = false;
+                out.append("{\"key\":").append(key)
+                        .append(",\"vehicle\":").append(vehicle.getId())
+                        .append(",\"type\":").append(type == null ? "null" : "\"" + type.getLabel() + "\"")
+                        .append('}');
+
+            } else if (roundabout.isBlocked(key)) {
+
+                if (blocked.length() > 0) blocked.append(',');
+                blocked.append(key);
+            }
+        }
+
+        out.append("],\"blocked\":[").append(blocked).append("],\"queues\":");
+        queuesJson(out, roundabout);
+        out.append('}');
+
+        return out.toString();
+    }
+
+    /**
+     * Builds the topology as JSON.
+     *
+     * @param roundabout The roundabout.
+     * @return String
+     */
+    private String topology(Roundabout roundabout) {
+
+        StringBuilder out = new StringBuilder(8192);
+        out.append("{\"radius\":").append(number(roundabout.getRadius()))
+                .append(",\"laneWidth\":").append(number(roundabout.getLaneWidth()))
+                .append(",\"vertexPerMeter\":").append(number(roundabout.getVertexPerMeterRatio()))
+                .append(",\"lanes\":").append(roundabout.getLanesNumber())
+                .append(",\"entries\":[");
+        for (int entry = 1; entry <= roundabout.getEntriesNumber(); entry++) {
+
+            if (entry > 1) out.append(',');
+            out.append(roundabout.getEntryKey(entry));
+        }
+        out.append("],\"exits\":[");
+        for (int exit = 1; exit <= roundabout.getExitsNumber(); exit++) {
+
+            if (exit > 1) out.append(',');
+            out.append(roundabout.getExitKey(exit));
+        }
+
+        // Lane is -1 for entries and -2 for exits
+        out.append("],\"vertices\":[");
+        for (int key = 0; key < roundabout.getVertexCount(); key++) {
+
+            if (key > 0) out.append(',');
+            out.append("{\"key\":").append(key)
+                    .append(",\"lane\":").append(roundabout.getVertex(key).getWeight())
+                    .append(",\"next\":[");
+
+            boolean first = true;
+            for (Vertex<AtomicReference> next : roundabout.getAdjacentVertices(key)) {
+
+                if (!first) out.append(',');
+                first = false;
+                out.append(next.getKey());
+            }
+            out.append("]}");
+        }
+        out.append("]}");
+
+        return out.toString();
+    }
+
+    /**
+     * Formats a number for JSON and Prometheus, whole numbers without a fraction.
+     *
+     * @param value The number.
+     * @return String
+     */
+    private static String number(double value) {
+
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+
+        return Double.toString(value);
+    }
+}
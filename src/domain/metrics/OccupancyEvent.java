@@ -0,0 +1,103 @@
+package domain.metrics;
+
+import domain.vehicles.VehicleType;
+
+/**
+ * A roundabout occupancy change as delivered by an {@link OccupancyPublisher}.
+ */
+public final class OccupancyEvent {
+
+    /**
+     * The event kind.
+     */
+    private final OccupancyEventType type;
+
+    /**
+     * When the event happened in simulated nanoseconds.
+     */
+    private final long time;
+
+    /**
+     * The vehicle id.
+     */
+    private final long vehicle;
+
+    /**
+     * The vehicle type, null if not a known type.
+     */
+    private final VehicleType vehicleType;
+
+    /**
+     * The vertex key, entry or exit, depending on the event kind.
+     */
+    private final int value;
+
+    /**
+     * OccupancyEvent constructor.
+     *
+     * @param type        The event kind.
+     * @param time        When the event happened in simulated nanoseconds.
+     * @param vehicle     The vehicle id.
+     * @param vehicleType The vehicle type, null if not a known type.
+     * @param value       The vertex key, entry or exit.
+     */
+    public OccupancyEvent(OccupancyEventType type, long time, long vehicle, VehicleType vehicleType, int value) {
+
+        this.type = type;
+        this.time = time;
+        this.vehicle = vehicle;
+        this.vehicleType = vehicleType;
+        this.value = value;
+    }
+
+    /**
+     * Returns the event kind.
+     *
+     * @return OccupancyEventType
+     */
+    public OccupancyEventType getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns when the event happened.
+     *
+     * @return long The simulated time in nanoseconds.
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * Returns the vehicle id.
+     *
+     * @return long
+     */
+    public long getVehicle() {
+        return this.vehicle;
+    }
+
+    /**
+     * Returns the vehicle type.
+     *
+     * @return VehicleType The type or null if the vehicle is not of a known type.
+     */
+    public VehicleType getVehicleType() {
+        return this.vehicleType;
+    }
+
+    /**
+     * Returns the event value: the vertex key of a claim or release, the entry of a queue
+     * or enter event and the exit of an exit or eviction.
+     *
+     * @return int
+     */
+    public int getValue() {
+        return this.value;
+    }
+
+    @Override
+    public String toString() {
+        return this.type + " vehicle=" + this.vehicle + " value=" + this.value + " time=" + this.time;
+    }
+}
@@ -0,0 +1,37 @@
+package domain.metrics;
+
+/**
+ * The kinds of roundabout occupancy events.
+ */
+public enum OccupancyEventType {
+
+    /**
+     * A vehicle claimed a vertex, to move into it or to reserve it.
+     */
+    CLAIM,
+
+    /**
+     * A vehicle released a vertex.
+     */
+    RELEASE,
+
+    /**
+     * A vehicle joined an entry queue.
+     */
+    QUEUE,
+
+    /**
+     * A vehicle moved from its entry queue into the roundabout.
+     */
+    ENTER,
+
+    /**
+     * A vehicle left the roundabout through its exit.
+     */
+    EXIT,
+
+    /**
+     * A vehicle was removed from the roundabout.
+     */
+    EVICTED
+}
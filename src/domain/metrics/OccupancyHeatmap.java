@@ -0,0 +1,218 @@
+package domain.metrics;
+
+import domain.roundabout.OccupancyListener;
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Accumulates how long each vertex was occupied and how long vehicles were blocked on it.
+ * <p>
+ * Totals are updated from the vehicle movement path with one clock read per claim and
+ * release and one add per vertex. A decayed view of the totals is computed on demand,
+ * where every sample fades by half each half-life, so the view shows where the
+ * roundabout was recently busy rather than where it is busy at this very moment.
+ */
+public class OccupancyHeatmap implements OccupancyListener {
+
+    /**
+     * When each vertex was last claimed in simulated nanoseconds, 0 if never.
+     * Only written by the vehicle holding the vertex. A release racing the next claim may
+     * read the new claim time and undercount that occupation, which a heatmap tolerates.
+     */
+    private final long[] claimedAt;
+
+    /**
+     * The total simulated nanoseconds each vertex was occupied.
+     */
+    private final AtomicLongArray occupiedNanos;
+
+    /**
+     * The total simulated milliseconds vehicles were blocked waiting for each vertex.
+     */
+    private final AtomicLongArray blockedMillis;
+
+    /**
+     * The totals at the last sample, only touched while sampling.
+     */
+    private final long[] sampledOccupied;
+    private final long[] sampledBlocked;
+
+    /**
+     * The decayed share of time each vertex was occupied, in [0, 1].
+     */
+    private final double[] occupiedHeat;
+
+    /**
+     * The decayed share of time vehicles were blocked on each vertex, in [0, 1].
+     */
+    private final double[] blockedHeat;
+
+    /**
+     * When the decayed view was last sampled in simulated nanoseconds.
+     */
+    private long lastSample;
+
+    /**
+     * The simulation clock occupation and sampling times are taken from.
+     */
+    private final SimulationClock clock;
+
+    /**
+     * The number of simulated seconds after which a sample weighs half as much.
+     */
+    private volatile double halfLife;
+
+    /**
+     * OccupancyHeatmap constructor.
+     *
+     * @param vertexCount The number of vertices, vertex keys must be in [0, vertexCount).
+     * @param halfLife    The number of simulated seconds after which a sample weighs half as much.
+     * @param clock       The simulation clock, so the heat does not depend on the time scale.
+     */
+    public OccupancyHeatmap(int vertexCount, double halfLife, SimulationClock clock) {
+
+        this.claimedAt = new long[vertexCount];
+        this.occupiedNanos = new AtomicLongArray(vertexCount);
+        this.blockedMillis = new AtomicLongArray(vertexCount);
+        this.sampledOccupied = new long[vertexCount];
+        this.sampledBlocked = new long[vertexCount];
+        this.occupiedHeat = new double[vertexCount];
+        this.blockedHeat = new double[vertexCount];
+        this.clock = clock;
+        this.lastSample = clock.nanoTime();
+        this.setHalfLife(halfLife);
+    }
+
+    /**
+     * Sets the number of simulated seconds after which a sample weighs half as much.
+     *
+     * @param halfLife The half-life in seconds.
+     */
+    public void setHalfLife(double halfLife) {
+
+        if (halfLife <= 0) {
+            throw new IllegalArgumentException("Half-life must be positive!");
+        }
+
+        this.halfLife = halfLife;
+    }
+
+    /**
+     * Starts timing the occupation of a vertex.
+     *
+     * @param vehicle The vehicle.
+     * @param key     The vertex key.
+     */
+    @Override
+    public void onClaim(Vehicle vehicle, int key) {
+
+        this.claimedAt[key] = this.clock.nanoTime();
+    }
+
+    /**
+     * Adds the occupation of a vertex to its total.
+     *
+     * @param vehicle The vehicle.
+     * @param key     The vertex key.
+     */
+    @Override
+    public void onRelease(Vehicle vehicle, int key) {
+
+        long claimed = this.claimedAt[key];
+
+        // Claimed before the heatmap was listening
+        if (claimed == 0) {
+            return;
+        }
+
+        this.occupiedNanos.addAndGet(key, this.clock.nanoTime() - claimed);
+    }
+
+    /**
+     * Adds a blocked wait to the vertex total.
+     *
+     * @param vehicle The vehicle.
+     * @param key     The vertex key.
+     * @param millis  The number of milliseconds the vehicle waits.
+     */
+    @Override
+    public void onBlocked(Vehicle vehicle, int key, long millis) {
+
+        this.blockedMillis.addAndGet(key, millis);
+    }
+
+    /**
+     * Returns the total simulated nanoseconds a vertex was occupied, not counting the current occupation.
+     *
+     * @param key The vertex key.
+     * @return long
+     */
+    public long getOccupiedNanos(int key) {
+        return this.occupiedNanos.get(key);
+    }
+
+    /**
+     * Returns the total simulated milliseconds vehicles were blocked waiting for a vertex.
+     *
+     * @param key The vertex key.
+     * @return long
+     */
+    public long getBlockedMillis(int key) {
+        return this.blockedMillis.get(key);
+    }
+
+    /**
+     * Folds the totals accumulated since the last sample into the decayed view.
+     * Nothing changes while the clock is paused.
+     */
+    public synchronized void sample() {
+
+        long now = this.clock.nanoTime();
+        double elapsed = now - this.lastSample;
+        if (elapsed <= 0) {
+            return;
+        }
+
+        // Weight of the previous view after the elapsed time
+        double decay = Math.pow(0.5, elapsed / (this.halfLife * 1e9));
+
+        for (int i = 0; i < this.claimedAt.length; i++) {
+
+            long occupied = this.occupiedNanos.get(i);
+            long blocked = this.blockedMillis.get(i);
+
+            // Share of the elapsed time spent occupied or blocked
+            double occupiedShare = Math.min(1, (occupied - this.sampledOccupied[i]) / elapsed);
+            double blockedShare = Math.min(1, (blocked - this.sampledBlocked[i]) * 1e6 / elapsed);
+
+            this.occupiedHeat[i] = decay * this.occupiedHeat[i] + (1 - decay) * occupiedShare;
+            this.blockedHeat[i] = decay * this.blockedHeat[i] + (1 - decay) * blockedShare;
+            this.sampledOccupied[i] = occupied;
+            this.sampledBlocked[i] = blocked;
+        }
+
+        this.lastSample = now;
+    }
+
+    /**
+     * Returns the decayed share of time a vertex was occupied as of the last sample.
+     *
+     * @param key The vertex key.
+     * @return double A value in [0, 1].
+     */
+    public synchronized double getOccupiedHeat(int key) {
+        return this.occupiedHeat[key];
+    }
+
+    /**
+     * Returns the decayed share of time vehicles were blocked on a vertex as of the last sample.
+     *
+     * @param key The vertex key.
+     * @return double A value in [0, 1].
+     */
+    public synchronized double getBlockedHeat(int key) {
+        return this.blockedHeat[key];
+    }
+}
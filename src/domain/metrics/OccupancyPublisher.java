@@ -0,0 +1,510 @@
+package domain.metrics;
+
+import domain.roundabout.OccupancyListener;
+import domain.roundabout.Roundabout;
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+import domain.vehicles.VehicleType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the claim, release, queue, entry and exit events of a roundabout as a reactive stream.
+ * <p>
+ * Vehicles write events into a bounded {@link EventRing} without locks or allocation, as
+ * for the {@link TraceRecorder}, and never wait for a subscriber: when the ring is full
+ * events are dropped and counted. A dispatcher thread moves the events into a bounded
+ * buffer per subscriber, and a delivery task per subscriber on its own thread hands
+ * them over in batches as the subscriber requests them. A batch holds every buffered
+ * event up to the requested and maximum batch sizes, so batches grow under load. A slow
+ * subscriber only fills its own buffer, then loses events according to its
+ * {@link OverflowPolicy} without holding back the vehicles or the other subscribers.
+ * <p>
+ * Run the publisher in its own thread. Once stopped, the remaining events are dispatched
+ * and every subscriber is completed.
+ */
+public class OccupancyPublisher implements Flow.Publisher<List<OccupancyEvent>>, OccupancyListener, Runnable {
+
+    /**
+     * Nanoseconds the dispatcher parks when there is nothing to do.
+     */
+    private static final long IDLE_PARK = 200_000;
+
+    /**
+     * The event kinds, indexed by ordinal.
+     */
+    private static final OccupancyEventType[] EVENTS = OccupancyEventType.values();
+
+    /**
+     * The vehicle types, indexed by ordinal.
+     */
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    /**
+     * The published roundabout.
+     */
+    private final Roundabout roundabout;
+
+    /**
+     * The event ring, records hold the time, the vehicle, and the event kind, vehicle class and value.
+     */
+    private final EventRing ring;
+
+    /**
+     * The simulation clock event times are taken from.
+     */
+    private final SimulationClock clock;
+
+    /**
+     * The number of events each subscriber buffer holds.
+     */
+    private final int bufferSize;
+
+    /**
+     * The maximum number of events delivered at once.
+     */
+    private final int maxBatch;
+
+    /**
+     * The overflow policy of subscribers which do not choose one.
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * Runs the subscriber delivery tasks, a slow subscriber only ties up its own thread.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The active subscriptions.
+     */
+    private final List<EventSubscription> subscriptions;
+
+    /**
+     * The number of events subscribers lost because their buffer was full.
+     */
+    private final LongAdder overflowed;
+
+    /**
+     * Whether the publisher is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Whether the publisher finished and completed its subscribers.
+     */
+    private volatile boolean closed;
+
+    /**
+     * A subscription with its own buffer, demand and delivery task.
+     */
+    private final class EventSubscription implements Flow.Subscription {
+
+        /**
+         * The subscriber.
+         */
+        private final Flow.Subscriber<? super List<OccupancyEvent>> subscriber;
+
+        /**
+         * What happens to events when the buffer is full.
+         */
+        private final OverflowPolicy policy;
+
+        /**
+         * The buffered events, filled by the dispatcher and drained by the delivery task.
+         */
+        private final ArrayBlockingQueue<OccupancyEvent> buffer;
+
+        /**
+         * The number of events requested and not delivered yet, Long.MAX_VALUE when unbounded.
+         */
+        private final AtomicLong demand;
+
+        /**
+         * The number of delivery requests since the delivery task last checked, the task runs while not 0.
+         */
+        private final AtomicInteger pending;
+
+        /**
+         * Whether the subscription was cancelled or ended.
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * Whether the stream ended, the subscriber is then completed.
+         */
+        private volatile boolean completed;
+
+        /**
+         * The error to signal after an invalid request, null when none.
+         */
+        private volatile Throwable error;
+
+        /**
+         * EventSubscription constructor.
+         *
+         * @param subscriber The subscriber.
+         * @param policy     What happens to events when the buffer is full.
+         */
+        EventSubscription(Flow.Subscriber<? super List<OccupancyEvent>> subscriber, OverflowPolicy policy) {
+
+            this.subscriber = subscriber;
+            this.policy = policy;
+            this.buffer = new ArrayBlockingQueue<>(OccupancyPublisher.this.bufferSize);
+            this.demand = new AtomicLong();
+            this.pending = new AtomicInteger();
+        }
+
+        @Override
+        public void request(long n) {
+
+            if (n <= 0) {
+                this.error = new IllegalArgumentException("Requested " + n + " events, must be positive!");
+            } else {
+                this.demand.getAndUpdate(demand -> demand + n < 0 ? Long.MAX_VALUE : demand + n);
+            }
+
+            this.schedule();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        /**
+         * Buffers an event, dropping one when the buffer is full. Called by the dispatcher only.
+         *
+         * @param event The event.
+         */
+        void offer(OccupancyEvent event) {
+
+            while (!this.buffer.offer(event)) {
+
+                OccupancyPublisher.this.overflowed.increment();
+                if (this.policy == OverflowPolicy.DROP) {
+                    return;
+                }
+                this.buffer.poll();
+            }
+        }
+
+        /**
+         * Ends the stream, the subscriber is completed once it requested every buffered event.
+         */
+        void complete() {
+
+            this.completed = true;
+            this.schedule();
+        }
+
+        /**
+         * Runs the delivery task unless it is already running, in which case it checks again.
+         */
+        void schedule() {
+
+            if (this.pending.getAndIncrement() == 0) {
+
+                try {
+                    OccupancyPublisher.this.executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+
+                    // The stream ended, nothing else delivers to this subscriber
+                    this.drain();
+                }
+            }
+        }
+
+        /**
+         * Delivers the buffered events the subscriber requested, in batches. Signals to a
+         * subscriber never overlap, as only one delivery task runs at a time.
+         */
+        private void drain() {
+
+            int missed = 1;
+            do {
+                this.deliver();
+                missed = this.pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Delivers the requested events, then the error or completion if any.
+         */
+        private void deliver() {
+
+            if (this.cancelled) {
+                return;
+            }
+
+            // Invalid requests end the subscription
+            Throwable error = this.error;
+            if (error != null) {
+
+                this.cancelled = true;
+                this.subscriber.onError(error);
+                return;
+            }
+
+            long demand = this.demand.get();
+            while (demand > 0 && !this.buffer.isEmpty() && !this.cancelled) {
+
+                int size = (int) Math.min(demand, OccupancyPublisher.this.maxBatch);
+                List<OccupancyEvent> batch = new ArrayList<>(Math.min(size, this.buffer.size()));
+                this.buffer.drainTo(batch, size);
+
+                if (demand != Long.MAX_VALUE) {
+                    this.demand.addAndGet(-batch.size());
+                }
+
+                try {
+                    this.subscriber.onNext(Collections.unmodifiableList(batch));
+                } catch (RuntimeException e) {
+
+                    // A failing subscriber is dropped, the stream goes on for the others
+                    this.cancelled = true;
+                }
+
+                demand = this.demand.get();
+            }
+
+            // Completed once every buffered event was requested and delivered, as SubmissionPublisher.close()
+            if (this.completed && !this.cancelled && this.buffer.isEmpty()) {
+
+                this.cancelled = true;
+                this.subscriber.onComplete();
+            }
+        }
+    }
+
+    /**
+     * OccupancyPublisher constructor.
+     *
+     * @param roundabout The published roundabout.
+     * @param capacity   The number of events the ring holds, rounded up to a power of two.
+     * @param bufferSize The number of events each subscriber buffer holds.
+     * @param maxBatch   The maximum number of events delivered at once.
+     * @param policy     The overflow policy of subscribers which do not choose one.
+     */
+    public OccupancyPublisher(Roundabout roundabout, int capacity, int bufferSize, int maxBatch, OverflowPolicy policy) {
+
+        if (bufferSize < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("Buffer and batch sizes must be positive!");
+        }
+
+        this.roundabout = roundabout;
+        this.ring = new EventRing(capacity);
+        this.clock = roundabout.getClock();
+        this.bufferSize = bufferSize;
+        this.maxBatch = maxBatch;
+        this.policy = policy;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+
+            Thread thread = new Thread(runnable, "occupancy-publisher");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        this.overflowed = new LongAdder();
+        this.running = true;
+    }
+
+    /**
+     * Subscribes with the publisher overflow policy.
+     *
+     * @param subscriber The subscriber.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<OccupancyEvent>> subscriber) {
+        this.subscribe(subscriber, this.policy);
+    }
+
+    /**
+     * Subscribes with an overflow policy of its own.
+     *
+     * @param subscriber The subscriber.
+     * @param policy     What happens to events when the subscriber buffer is full.
+     */
+    public void subscribe(Flow.Subscriber<? super List<OccupancyEvent>> subscriber, OverflowPolicy policy) {
+
+        Objects.requireNonNull(subscriber);
+        Objects.requireNonNull(policy);
+
+        EventSubscription subscription = new EventSubscription(subscriber, policy);
+        subscriber.onSubscribe(subscription);
+        this.subscriptions.add(subscription);
+
+        // Subscribed too late, the stream already ended
+        if (this.closed && this.subscriptions.remove(subscription)) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Returns the number of events published so far.
+     *
+     * @return long
+     */
+    public long getPublished() {
+        return this.ring.getAppended();
+    }
+
+    /**
+     * Returns the number of events dropped because the dispatcher fell behind.
+     *
+     * @return long
+     */
+    public long getDropped() {
+        return this.ring.getDropped();
+    }
+
+    /**
+     * Returns the number of events subscribers lost because their buffer was full.
+     *
+     * @return long
+     */
+    public long getOverflowed() {
+        return this.overflowed.sum();
+    }
+
+    /**
+     * Returns the number of active subscribers.
+     *
+     * @return int
+     */
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    /**
+     * Stops the publisher, every subscriber is completed once the dispatcher finished.
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Appends an event to the ring, or drops it when the ring is full.
+     * Nothing is recorded while nobody is subscribed.
+     *
+     * @param event   The event kind.
+     * @param vehicle The vehicle.
+     * @param value   The vertex key, entry or exit.
+     */
+    private void record(OccupancyEventType event, Vehicle vehicle, int value) {
+
+        if (this.subscriptions.isEmpty()) {
+            return;
+        }
+
+        VehicleType type = VehicleType.of(vehicle);
+
+        this.ring.offer(this.clock.nanoTime(), vehicle.getId(),
+                (long) event.ordinal() << 56 | (long) (type == null ? 0xFF : type.ordinal()) << 48 | (value & 0xFFFFFFFFL));
+    }
+
+    @Override
+    public void onClaim(Vehicle vehicle, int key) {
+        this.record(OccupancyEventType.CLAIM, vehicle, key);
+    }
+
+    @Override
+    public void onRelease(Vehicle vehicle, int key) {
+        this.record(OccupancyEventType.RELEASE, vehicle, key);
+    }
+
+    @Override
+    public void onQueue(Vehicle vehicle, int entry) {
+        this.record(OccupancyEventType.QUEUE, vehicle, entry);
+    }
+
+    @Override
+    public void onEnter(Vehicle vehicle) {
+        this.record(OccupancyEventType.ENTER, vehicle, vehicle.getSource());
+    }
+
+    @Override
+    public void onExit(Vehicle vehicle) {
+        this.record(vehicle.isEvicted() ? OccupancyEventType.EVICTED : OccupancyEventType.EXIT, vehicle,
+                vehicle.getDestination());
+    }
+
+    /**
+     * Listens to the roundabout and dispatches events until stopped and the ring is drained.
+     */
+    @Override
+    public void run() {
+
+        this.roundabout.addOccupancyListener(this);
+
+        while (true) {
+
+            boolean stopping = !this.running;
+            if (stopping) {
+                this.roundabout.removeOccupancyListener(this);
+            }
+
+            // Move every published record into the subscriber buffers in sequence order
+            boolean moved = false;
+            for (int slot = this.ring.peek(); slot >= 0; slot = this.ring.peek()) {
+
+                long detail = this.ring.getDetail(slot);
+                int type = (int) (detail >>> 48) & 0xFF;
+                OccupancyEvent event = new OccupancyEvent(EVENTS[(int) (detail >>> 56)], this.ring.getTime(slot),
+                        this.ring.getSubject(slot), type < TYPES.length ? TYPES[type] : null, (int) detail);
+
+                for (EventSubscription subscription : this.subscriptions) {
+                    subscription.offer(event);
+                }
+
+                this.ring.advance();
+                moved = true;
+            }
+
+            // Hand the new events to the delivery tasks, forget ended subscriptions
+            for (EventSubscription subscription : this.subscriptions) {
+
+                if (subscription.cancelled) {
+                    this.subscriptions.remove(subscription);
+                } else if (moved) {
+                    subscription.schedule();
+                }
+            }
+
+            // Done once stopped and every claimed slot was dispatched
+            if (stopping && this.ring.isDrained()) {
+                break;
+            }
+
+            if (!moved) {
+                LockSupport.parkNanos(IDLE_PARK);
+            }
+        }
+
+        // Complete the subscribers, late ones complete themselves
+        this.closed = true;
+        for (EventSubscription subscription : this.subscriptions) {
+
+            if (this.subscriptions.remove(subscription)) {
+                subscription.complete();
+            }
+        }
+        this.executor.shutdown();
+
+        this.running = false;
+    }
+}
@@ -0,0 +1,17 @@
+package domain.metrics;
+
+/**
+ * What an event stream does with a subscriber whose buffer is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Drop the new events until the subscriber catches up.
+     */
+    DROP,
+
+    /**
+     * Drop the oldest buffered events, so the subscriber always gets the latest ones.
+     */
+    LATEST
+}
@@ -0,0 +1,227 @@
+package domain.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the vehicle movement inside a roundabout.
+ * <p>
+ * Counters are striped so recording from many vehicle threads does not contend.
+ */
+public class SimulationMetrics {
+
+    /**
+     * The number of node claim attempts.
+     */
+    private final LongAdder claimAttempts = new LongAdder();
+
+    /**
+     * The number of node claim attempts which failed because the node was taken.
+     */
+    private final LongAdder claimFailures = new LongAdder();
+
+    /**
+     * The number of nodes reserved ahead of the vehicle position.
+     */
+    private final LongAdder reservations = new LongAdder();
+
+    /**
+     * The number of vehicles which entered the roundabout.
+     */
+    private final LongAdder entered = new LongAdder();
+
+    /**
+     * The number of vehicles which left the roundabout through their exit.
+     */
+    private final LongAdder exited = new LongAdder();
+
+    /**
+     * The number of times a queue head did not enter because the outer lane gap was too short.
+     */
+    private final LongAdder gapRejections = new LongAdder();
+
+    /**
+     * The number of times a regular vehicle gave way to an announced priority route.
+     */
+    private final LongAdder priorityYields = new LongAdder();
+
+    /**
+     * The time regular vehicles took from spawning to leaving.
+     */
+    private final LatencyHistogram tripLatency = new LatencyHistogram();
+
+    /**
+     * The time priority vehicles took from spawning to leaving, kept apart from regular traffic.
+     */
+    private final LatencyHistogram priorityLatency = new LatencyHistogram();
+
+    /**
+     * Records a node claim attempt.
+     *
+     * @param success Whether the node was claimed.
+     */
+    public void recordClaim(boolean success) {
+
+        this.claimAttempts.increment();
+
+        if (!success) {
+            this.claimFailures.increment();
+        }
+    }
+
+    /**
+     * Records a node reserved ahead of the vehicle position.
+     */
+    public void recordReservation() {
+
+        this.reservations.increment();
+    }
+
+    /**
+     * Records a vehicle entering the roundabout.
+     */
+    public void recordEntered() {
+
+        this.entered.increment();
+    }
+
+    /**
+     * Records a vehicle leaving the roundabout.
+     */
+    public void recordExited() {
+
+        this.exited.increment();
+    }
+
+    /**
+     * Records a queue head holding back because the outer lane gap was too short.
+     */
+    public void recordGapRejection() {
+
+        this.gapRejections.increment();
+    }
+
+    /**
+     * Records a regular vehicle giving way to an announced priority route.
+     */
+    public void recordPriorityYield() {
+
+        this.priorityYields.increment();
+    }
+
+    /**
+     * Records a regular vehicle leaving the roundabout.
+     *
+     * @param nanos The simulated time from spawning to leaving in nanoseconds.
+     */
+    public void recordTrip(long nanos) {
+
+        this.tripLatency.record(nanos);
+    }
+
+    /**
+     * Records a priority vehicle leaving the roundabout.
+     *
+     * @param nanos The simulated time from spawning to leaving in nanoseconds.
+     */
+    public void recordPriorityTrip(long nanos) {
+
+        this.priorityLatency.record(nanos);
+    }
+
+    /**
+     * Returns the number of node claim attempts.
+     *
+     * @return long
+     */
+    public long getClaimAttempts() {
+        return this.claimAttempts.sum();
+    }
+
+    /**
+     * Returns the number of failed node claim attempts.
+     *
+     * @return long
+     */
+    public long getClaimFailures() {
+        return this.claimFailures.sum();
+    }
+
+    /**
+     * Returns the number of nodes reserved ahead of the vehicle position.
+     *
+     * @return long
+     */
+    public long getReservations() {
+        return this.reservations.sum();
+    }
+
+    /**
+     * Returns the number of vehicles which entered the roundabout.
+     *
+     * @return long
+     */
+    public long getEntered() {
+        return this.entered.sum();
+    }
+
+    /**
+     * Returns the number of vehicles which left the roundabout.
+     *
+     * @return long
+     */
+    public long getExited() {
+        return this.exited.sum();
+    }
+
+    /**
+     * Returns the number of times a queue head did not enter because the outer lane gap was too short.
+     *
+     * @return long
+     */
+    public long getGapRejections() {
+        return this.gapRejections.sum();
+    }
+
+    /**
+     * Returns the number of times a regular vehicle gave way to an announced priority route.
+     *
+     * @return long
+     */
+    public long getPriorityYields() {
+        return this.priorityYields.sum();
+    }
+
+    /**
+     * Returns the latencies of the regular vehicles which left the roundabout.
+     *
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getTripLatency() {
+        return this.tripLatency;
+    }
+
+    /**
+     * Returns the latencies of the priority vehicles which left the roundabout.
+     *
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getPriorityLatency() {
+        return this.priorityLatency;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void reset() {
+
+        this.claimAttempts.reset();
+        this.claimFailures.reset();
+        this.reservations.reset();
+        this.entered.reset();
+        this.exited.reset();
+        this.gapRejections.reset();
+        this.priorityYields.reset();
+        this.tripLatency.reset();
+        this.priorityLatency.reset();
+    }
+}
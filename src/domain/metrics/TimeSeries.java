@@ -0,0 +1,261 @@
+package domain.metrics;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static domain.metrics.TimeSeriesFormat.getVarint;
+import static domain.metrics.TimeSeriesFormat.unzigzag;
+
+/**
+ * A loaded occupancy time-series, one column per vertex and per entry.
+ * <p>
+ * Occupancy columns are bitsets with one bit per sample and queue columns are arrays
+ * with one length per sample, so analysis code can scan a single column at a time.
+ */
+public class TimeSeries {
+
+    /**
+     * The sampling interval in milliseconds.
+     */
+    private final long interval;
+
+    /**
+     * When sampling started, in milliseconds since the epoch.
+     */
+    private final long start;
+
+    /**
+     * The number of samples.
+     */
+    private final int samples;
+
+    /**
+     * Whether each vertex was occupied at each sample, indexed by vertex key.
+     */
+    private final BitSet[] occupancy;
+
+    /**
+     * The queue length of each entry at each sample, indexed by entry - 1.
+     */
+    private final int[][] queueLengths;
+
+    /**
+     * TimeSeries constructor.
+     *
+     * @param interval     The sampling interval in milliseconds.
+     * @param start        When sampling started, in milliseconds since the epoch.
+     * @param samples      The number of samples.
+     * @param occupancy    The occupancy columns.
+     * @param queueLengths The queue length columns.
+     */
+    private TimeSeries(long interval, long start, int samples, BitSet[] occupancy, int[][] queueLengths) {
+
+        this.interval = interval;
+        this.start = start;
+        this.samples = samples;
+        this.occupancy = occupancy;
+        this.queueLengths = queueLengths;
+    }
+
+    /**
+     * Loads a time-series file written by a {@link TimeSeriesRecorder}.
+     *
+     * @param file The file.
+     * @return TimeSeries
+     * @throws IOException If the file cannot be read or is not a time-series file.
+     */
+    public static TimeSeries load(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            // Header
+            if (buffer.remaining() < TimeSeriesFormat.HEADER_BYTES || buffer.getInt() != TimeSeriesFormat.MAGIC) {
+                throw new IOException("Not a time-series file: " + file);
+            }
+            short version = buffer.getShort();
+            if (version != TimeSeriesFormat.VERSION) {
+                throw new IOException("Unsupported time-series version " + version);
+            }
+            int vertices = buffer.getInt();
+            int entries = buffer.getInt();
+            long interval = buffer.getLong();
+            long start = buffer.getLong();
+
+            BitSet[] occupancy = new BitSet[vertices];
+            boolean[] occupied = new boolean[vertices];
+            for (int i = 0; i < vertices; i++) {
+                occupancy[i] = new BitSet();
+            }
+
+            List<int[]> queueBlocks = new ArrayList<>();
+            int[] queueLength = new int[entries];
+            int samples = 0;
+
+            // Blocks
+            while (buffer.remaining() >= 4) {
+
+                int length = buffer.getInt();
+                int end = buffer.position() + length;
+                int first = (int) getVarint(buffer);
+                int count = (int) getVarint(buffer);
+
+                for (int key = 0; key < vertices; key++) {
+                    occupied[key] = decodeOccupancy(buffer, occupancy[key], first, count, occupied[key]);
+                }
+
+                // Queue columns are stored entry after entry
+                int[] queues = new int[entries * count];
+                for (int entry = 0; entry < entries; entry++) {
+
+                    for (int i = 0; i < count; i++) {
+
+                        queueLength[entry] += (int) unzigzag(getVarint(buffer));
+                        queues[entry * count + i] = queueLength[entry];
+                    }
+                }
+                queueBlocks.add(queues);
+
+                samples = first + count;
+                buffer.position(end);
+            }
+
+            // Join the queue blocks into one column per entry
+            int[][] queueLengths = new int[entries][samples];
+            int offset = 0;
+            for (int[] queues : queueBlocks) {
+
+                int count = queues.length / Math.max(1, entries);
+                for (int entry = 0; entry < entries; entry++) {
+                    System.arraycopy(queues, entry * count, queueLengths[entry], offset, count);
+                }
+                offset += count;
+            }
+
+            return new TimeSeries(interval, start, samples, occupancy, queueLengths);
+        }
+    }
+
+    /**
+     * Decodes the occupancy column of a vertex for one block.
+     *
+     * @param buffer   The input buffer.
+     * @param column   The vertex occupancy bits.
+     * @param first    The index of the first sample of the block.
+     * @param count    The number of samples in the block.
+     * @param occupied Whether the vertex was occupied at the end of the previous block.
+     * @return boolean Whether the vertex is occupied at the end of the block.
+     */
+    private static boolean decodeOccupancy(MappedByteBuffer buffer, BitSet column, int first, int count, boolean occupied) {
+
+        byte encoding = buffer.get();
+        int from = 0;
+
+        if (encoding == TimeSeriesFormat.GAPS) {
+
+            long toggles = getVarint(buffer);
+            int sample = -1;
+
+            for (long i = 0; i < toggles; i++) {
+
+                sample += (int) getVarint(buffer) + 1;
+                column.set(first + from, first + sample, occupied);
+                occupied = !occupied;
+                from = sample;
+            }
+
+        } else if (encoding == TimeSeriesFormat.BITMAP) {
+
+            int bytes = (count + 7) >>> 3;
+            for (int i = 0; i < bytes; i++) {
+
+                for (int b = buffer.get() & 0xFF; b != 0; b &= b - 1) {
+
+                    int sample = (i << 3) + Integer.numberOfTrailingZeros(b);
+                    column.set(first + from, first + sample, occupied);
+                    occupied = !occupied;
+                    from = sample;
+                }
+            }
+        }
+
+        // State holds until the end of the block
+        column.set(first + from, first + count, occupied);
+
+        return occupied;
+    }
+
+    /**
+     * Returns the sampling interval in milliseconds.
+     *
+     * @return long
+     */
+    public long getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * Returns when sampling started, in milliseconds since the epoch.
+     *
+     * @return long
+     */
+    public long getStart() {
+        return this.start;
+    }
+
+    /**
+     * Returns the number of samples.
+     *
+     * @return int
+     */
+    public int getSamples() {
+        return this.samples;
+    }
+
+    /**
+     * Returns the number of vertices.
+     *
+     * @return int
+     */
+    public int getVertexCount() {
+        return this.occupancy.length;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return int
+     */
+    public int getEntriesNumber() {
+        return this.queueLengths.length;
+    }
+
+    /**
+     * Returns the occupancy column of a vertex, one bit per sample.
+     *
+     * @param key The vertex key.
+     * @return BitSet
+     */
+    public BitSet getOccupancy(int key) {
+        return this.occupancy[key];
+    }
+
+    /**
+     * Returns the queue length column of an entry, one length per sample.
+     *
+     * @param entry The entry.
+     * @return int[]
+     */
+    public int[] getQueueLengths(int entry) {
+        return this.queueLengths[entry - 1];
+    }
+}
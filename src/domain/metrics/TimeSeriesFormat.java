@@ -0,0 +1,116 @@
+package domain.metrics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and varint helpers of the occupancy time-series file format.
+ * <p>
+ * A file is a header followed by blocks of consecutive samples:
+ * <pre>
+ * header: int magic, short version, int vertices, int entries, long interval in simulated millis, long start epoch millis (wall clock)
+ * block:  int block bytes, varint first sample, varint samples,
+ *         per vertex: byte encoding + occupancy column,
+ *         per entry:  one zigzag varint per sample, the queue length change since the previous sample
+ * </pre>
+ * Occupancy columns store the samples at which the vertex changed between free and
+ * occupied, relative to its state at the end of the previous block, either as varint
+ * gaps between changes or as a bitmap with one bit per sample, whichever is smaller.
+ */
+final class TimeSeriesFormat {
+
+    /**
+     * File magic number, "RBTS".
+     */
+    static final int MAGIC = 0x52425453;
+
+    /**
+     * File format version.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * Header size in bytes.
+     */
+    static final int HEADER_BYTES = 4 + 2 + 4 + 4 + 8 + 8;
+
+    /**
+     * Column encoding of a vertex which did not change during the block.
+     */
+    static final byte UNCHANGED = 0;
+
+    /**
+     * Column encoding as a varint count followed by varint gaps between change samples.
+     */
+    static final byte GAPS = 1;
+
+    /**
+     * Column encoding as a bitmap of change samples, one bit per sample.
+     */
+    static final byte BITMAP = 2;
+
+    /**
+     * Non instantiable.
+     */
+    private TimeSeriesFormat() {
+    }
+
+    /**
+     * Writes an unsigned varint.
+     *
+     * @param buffer The buffer.
+     * @param value  The value, treated as unsigned.
+     */
+    static void putVarint(ByteBuffer buffer, long value) {
+
+        while ((value & ~0x7FL) != 0) {
+
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @param buffer The buffer.
+     * @return long
+     */
+    static long getVarint(ByteBuffer buffer) {
+
+        long value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        return value;
+    }
+
+    /**
+     * Maps a signed value to an unsigned one so small magnitudes have short varints.
+     *
+     * @param value The signed value.
+     * @return long
+     */
+    static long zigzag(long value) {
+
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigzag(long)}.
+     *
+     * @param value The unsigned value.
+     * @return long
+     */
+    static long unzigzag(long value) {
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
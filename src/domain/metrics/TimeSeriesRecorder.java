@@ -0,0 +1,401 @@
+package domain.metrics;
+
+import domain.roundabout.Roundabout;
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static domain.metrics.TimeSeriesFormat.BITMAP;
+import static domain.metrics.TimeSeriesFormat.GAPS;
+import static domain.metrics.TimeSeriesFormat.UNCHANGED;
+import static domain.metrics.TimeSeriesFormat.putVarint;
+import static domain.metrics.TimeSeriesFormat.zigzag;
+
+/**
+ * Samples vertex occupancy and entry queue lengths at a fixed interval into a columnar file.
+ * The interval is simulated time, so no samples are taken while the clock is paused.
+ * <p>
+ * The sampling thread only sets bits and stores queue lengths into a block of samples.
+ * Full blocks are handed to a background writer which encodes them as described in
+ * {@link TimeSeriesFormat} and writes them through a file channel, then hands the block
+ * back for reuse. A day of one second samples of a few hundred vertices takes a few MB.
+ * <p>
+ * Run the recorder in its own thread, stop it and join the thread to get a complete file.
+ */
+public class TimeSeriesRecorder implements Runnable {
+
+    /**
+     * The number of samples per block.
+     */
+    private static final int BLOCK_SAMPLES = 4096;
+
+    /**
+     * The number of blocks shared by the sampler and the writer.
+     */
+    private static final int BLOCKS = 3;
+
+    /**
+     * Wall-clock nanoseconds between checks for a stop while waiting for the next sample.
+     */
+    private static final long POLL_NANOS = 100_000_000;
+
+    /**
+     * The sampled roundabout.
+     */
+    private final Roundabout roundabout;
+
+    /**
+     * The output file.
+     */
+    private final Path file;
+
+    /**
+     * The sampling interval in simulated milliseconds.
+     */
+    private final long interval;
+
+    /**
+     * Blocks ready to be filled.
+     */
+    private final BlockingQueue<Block> free;
+
+    /**
+     * Blocks ready to be written, a block without samples ends the file.
+     */
+    private final BlockingQueue<Block> full;
+
+    /**
+     * The number of samples taken.
+     */
+    private volatile long samples;
+
+    /**
+     * The write failure, null when none happened.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Whether the recorder is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Raw samples of a block.
+     */
+    private static class Block {
+
+        /**
+         * The occupancy bits as [vertex][sample / 64].
+         */
+        final long[][] occupancy;
+
+        /**
+         * The queue lengths as [entry][sample].
+         */
+        final int[][] queues;
+
+        /**
+         * The index of the first sample of the block in the file.
+         */
+        long first;
+
+        /**
+         * The number of samples in the block.
+         */
+        int count;
+
+        /**
+         * Block constructor.
+         *
+         * @param vertices The number of vertices.
+         * @param entries  The number of entries.
+         */
+        Block(int vertices, int entries) {
+
+            this.occupancy = new long[vertices][BLOCK_SAMPLES / 64];
+            this.queues = new int[entries][BLOCK_SAMPLES];
+        }
+    }
+
+    /**
+     * TimeSeriesRecorder constructor.
+     *
+     * @param roundabout The sampled roundabout.
+     * @param file       The output file, overwritten.
+     * @param interval   The sampling interval in simulated milliseconds.
+     */
+    public TimeSeriesRecorder(Roundabout roundabout, Path file, long interval) {
+
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Sampling interval must be positive!");
+        }
+
+        this.roundabout = roundabout;
+        this.file = file;
+        this.interval = interval;
+        this.free = new ArrayBlockingQueue<>(BLOCKS);
+        this.full = new ArrayBlockingQueue<>(BLOCKS + 1);
+        this.running = true;
+
+        for (int i = 0; i < BLOCKS; i++) {
+            this.free.add(new Block(roundabout.getVertexCount(), roundabout.getEntriesNumber()));
+        }
+    }
+
+    /**
+     * Returns the number of samples taken.
+     *
+     * @return long
+     */
+    public long getSamples() {
+        return this.samples;
+    }
+
+    /**
+     * Returns the write failure.
+     *
+     * @return IOException The failure or null if writing succeeded so far.
+     */
+    public IOException getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Stops the recorder, the file is complete once the recorder thread finished.
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Takes one sample into the block.
+     *
+     * @param block The block.
+     */
+    private void sample(Block block) {
+
+        int index = block.count;
+        long bit = 1L << (index & 63);
+
+        for (int key = 0; key < block.occupancy.length; key++) {
+
+            if (this.roundabout.getVertex(key).getValue().get() instanceof Vehicle) {
+                block.occupancy[key][index >>> 6] |= bit;
+            }
+        }
+
+        for (int entry = 0; entry < block.queues.length; entry++) {
+            block.queues[entry][index] = this.roundabout.getEntryQueue(entry + 1).size();
+        }
+
+        block.count++;
+    }
+
+    /**
+     * Samples at a fixed rate until stopped, then waits for the writer to finish the file.
+     */
+    @Override
+    public void run() {
+
+        // Header is written by the writer before the first block
+        Thread writer = new Thread(this::write, "time-series-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        SimulationClock clock = this.roundabout.getClock();
+        long period = this.interval * 1_000_000;
+        long next = clock.nanoTime();
+        long index = 0;
+
+        try {
+
+            Block block = this.free.take();
+            block.first = 0;
+
+            while (this.running && this.failure == null) {
+
+                // Hand over full blocks
+                if (block.count == BLOCK_SAMPLES) {
+
+                    this.full.put(block);
+                    block = this.free.take();
+                    block.first = index;
+                }
+
+                this.sample(block);
+                this.samples = ++index;
+
+                // Samples keep a fixed schedule even when one was late
+                next += period;
+                while (this.running && !clock.awaitNanos(next, POLL_NANOS)) ;
+            }
+
+            // Flush the last block and end the file, unless the writer already failed
+            if (this.failure == null) {
+
+                if (block.count > 0) {
+                    this.full.put(block);
+                }
+                this.full.put(new Block(0, 0));
+            }
+            writer.join();
+
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+        }
+
+        this.running = false;
+    }
+
+    /**
+     * Encodes and writes blocks until the end of file block arrives.
+     */
+    private void write() {
+
+        int vertices = this.roundabout.getVertexCount();
+        int entries = this.roundabout.getEntriesNumber();
+
+        // Worst case block size, every column as a bitmap and every queue change as a long varint
+        int capacity = 4 + 20 + vertices * (1 + BLOCK_SAMPLES / 8) + entries * BLOCK_SAMPLES * 5;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(capacity, TimeSeriesFormat.HEADER_BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        // State at the end of the previous block
+        boolean[] occupied = new boolean[vertices];
+        int[] queueLength = new int[entries];
+        long[] changes = new long[BLOCK_SAMPLES / 64];
+
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            // Header
+            buffer.putInt(TimeSeriesFormat.MAGIC).putShort(TimeSeriesFormat.VERSION)
+                    .putInt(vertices).putInt(entries).putLong(this.interval).putLong(System.currentTimeMillis());
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+
+            for (Block block = this.full.take(); block.count > 0; block = this.full.take()) {
+
+                buffer.clear();
+                buffer.position(4);
+                putVarint(buffer, block.first);
+                putVarint(buffer, block.count);
+
+                // Occupancy columns
+                for (int key = 0; key < vertices; key++) {
+                    occupied[key] = this.encodeOccupancy(buffer, block, key, occupied[key], changes);
+                }
+
+                // Queue length columns
+                for (int entry = 0; entry < entries; entry++) {
+
+                    int[] queue = block.queues[entry];
+                    for (int i = 0; i < block.count; i++) {
+
+                        putVarint(buffer, zigzag(queue[i] - queueLength[entry]));
+                        queueLength[entry] = queue[i];
+                    }
+                }
+
+                // Block length prefix
+                buffer.putInt(0, buffer.position() - 4);
+                buffer.flip();
+                while (buffer.hasRemaining()) channel.write(buffer);
+
+                // Recycle the block
+                for (long[] bits : block.occupancy) {
+                    Arrays.fill(bits, 0);
+                }
+                block.count = 0;
+                this.free.put(block);
+            }
+
+        } catch (IOException e) {
+            this.failure = e;
+            this.running = false;
+        } catch (InterruptedException e) {
+            this.failure = new IOException("Time-series writer interrupted", e);
+        }
+
+        // Never leave the sampler waiting for a block
+        this.free.offer(new Block(vertices, entries));
+    }
+
+    /**
+     * Encodes the occupancy column of a vertex as the samples where its state changed.
+     *
+     * @param buffer   The output buffer.
+     * @param block    The block.
+     * @param key      The vertex key.
+     * @param occupied Whether the vertex was occupied at the end of the previous block.
+     * @param changes  A scratch array of a block bitmap size.
+     * @return boolean Whether the vertex is occupied at the end of the block.
+     */
+    private boolean encodeOccupancy(ByteBuffer buffer, Block block, int key, boolean occupied, long[] changes) {
+
+        long[] bits = block.occupancy[key];
+        int words = (block.count + 63) >>> 6;
+        long carry = occupied ? 1 : 0;
+        int toggles = 0;
+
+        // A change is a sample whose state differs from the previous sample
+        for (int w = 0; w < words; w++) {
+
+            changes[w] = bits[w] ^ ((bits[w] << 1) | carry);
+            carry = bits[w] >>> 63;
+        }
+        if ((block.count & 63) != 0) {
+            changes[words - 1] &= (1L << (block.count & 63)) - 1;
+        }
+        for (int w = 0; w < words; w++) {
+            toggles += Long.bitCount(changes[w]);
+        }
+
+        int last = block.count - 1;
+        boolean end = (bits[last >>> 6] >>> (last & 63) & 1) == 1;
+
+        if (toggles == 0) {
+
+            buffer.put(UNCHANGED);
+            return end;
+        }
+
+        // Gaps are at most two bytes each for usual change rates
+        int bitmapBytes = (block.count + 7) >>> 3;
+        if (toggles * 2 < bitmapBytes) {
+
+            buffer.put(GAPS);
+            putVarint(buffer, toggles);
+
+            int previous = -1;
+            for (int w = 0; w < words; w++) {
+
+                for (long word = changes[w]; word != 0; word &= word - 1) {
+
+                    int sample = (w << 6) + Long.numberOfTrailingZeros(word);
+                    putVarint(buffer, sample - previous - 1);
+                    previous = sample;
+                }
+            }
+
+        } else {
+
+            buffer.put(BITMAP);
+            for (int i = 0; i < bitmapBytes; i++) {
+                buffer.put((byte) (changes[i >>> 3] >>> ((i & 7) << 3)));
+            }
+        }
+
+        return end;
+    }
+}
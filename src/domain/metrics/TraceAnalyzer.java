@@ -0,0 +1,640 @@
+package domain.metrics;
+
+import domain.vehicles.VehicleType;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the key performance indicators of a recorded roundabout run in one parallel pass.
+ * <p>
+ * The trace is memory mapped chunk by chunk, so it may be larger than the heap, and the
+ * chunks are analyzed by a parallel stream. Every chunk yields a partial result whose
+ * occupations and trips may still be open at the chunk edges, and partial results are
+ * merged in trace order, closing what the next chunk completes.
+ * <p>
+ * Usage: TraceAnalyzer trace-file [chunk MB]
+ */
+public class TraceAnalyzer {
+
+    /**
+     * Default chunk size in bytes.
+     */
+    private static final int CHUNK_BYTES = 64 << 20;
+
+    /**
+     * The vehicle types, indexed by record vehicle class.
+     */
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    /**
+     * The trace header.
+     */
+    private final Header header;
+
+    /**
+     * The merged result.
+     */
+    private final Partial result;
+
+    /**
+     * The trace duration in nanoseconds.
+     */
+    private final long duration;
+
+    /**
+     * The trace header fields.
+     */
+    private static class Header {
+
+        int vertices;
+        int entries;
+        int exits;
+        double metersPerVertex;
+        long start;
+        byte[] lanes;
+        long dataOffset;
+    }
+
+    /**
+     * A vehicle trip, possibly seen only in part.
+     */
+    private static class Trip {
+
+        long queued = -1;
+        long entered = -1;
+        long exited = -1;
+        int entry;
+        int vehicleClass = -1;
+        boolean evicted;
+
+        /**
+         * Fills the fields this trip is missing from a later part of the same trip.
+         *
+         * @param later The later part.
+         */
+        void merge(Trip later) {
+
+            if (this.queued < 0) this.queued = later.queued;
+            if (this.entered < 0) this.entered = later.entered;
+            if (this.exited < 0) this.exited = later.exited;
+            if (this.entry == 0) this.entry = later.entry;
+            if (this.vehicleClass < 0) this.vehicleClass = later.vehicleClass;
+            this.evicted |= later.evicted;
+        }
+    }
+
+    /**
+     * The indicators of a contiguous range of records.
+     */
+    private static class Partial {
+
+        /**
+         * First and last record times.
+         */
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+
+        /**
+         * Vehicles which left through each exit, indexed by exit - 1, and evicted vehicles.
+         */
+        final long[] exited;
+        long evicted;
+
+        /**
+         * Total queue delay and delayed vehicles of each entry, indexed by entry - 1.
+         */
+        final long[] delay;
+        final long[] delayed;
+
+        /**
+         * Claimed nodes, travel time and trips of each vehicle class.
+         */
+        final long[] classClaims;
+        final long[] classTime;
+        final long[] classTrips;
+
+        /**
+         * Whether each vertex had any claim or release, and the occupied time between them.
+         */
+        final boolean[] seen;
+        final long[] occupied;
+
+        /**
+         * Release time of each vertex when its first event is a release, -1 otherwise.
+         */
+        final long[] leading;
+
+        /**
+         * Claim time of each vertex when its last event is a claim, -1 otherwise.
+         */
+        final long[] trailing;
+
+        /**
+         * Blocked milliseconds of each vertex.
+         */
+        final long[] blocked;
+
+        /**
+         * Trips not complete within the range, by vehicle.
+         */
+        final Map<Integer, Trip> trips;
+
+        /**
+         * Partial constructor.
+         *
+         * @param header The trace header.
+         */
+        Partial(Header header) {
+
+            this.exited = new long[header.exits];
+            this.delay = new long[header.entries];
+            this.delayed = new long[header.entries];
+            this.classClaims = new long[TYPES.length];
+            this.classTime = new long[TYPES.length];
+            this.classTrips = new long[TYPES.length];
+            this.seen = new boolean[header.vertices];
+            this.occupied = new long[header.vertices];
+            this.leading = new long[header.vertices];
+            this.trailing = new long[header.vertices];
+            this.blocked = new long[header.vertices];
+            this.trips = new HashMap<>();
+
+            Arrays.fill(this.leading, -1);
+            Arrays.fill(this.trailing, -1);
+        }
+
+        /**
+         * Adds a trip to the indicators if it is complete.
+         *
+         * @param trip  The trip.
+         * @param force Whether to add what is known of an incomplete trip.
+         * @return boolean Whether the trip was added.
+         */
+        boolean close(Trip trip, boolean force) {
+
+            if (!force && (trip.queued < 0 || trip.entered < 0 || trip.exited < 0)) {
+                return false;
+            }
+
+            if (trip.queued >= 0 && trip.entered >= 0 && trip.entry > 0) {
+
+                this.delay[trip.entry - 1] += trip.entered - trip.queued;
+                this.delayed[trip.entry - 1]++;
+            }
+
+            if (trip.entered >= 0 && trip.exited >= 0 && !trip.evicted && trip.vehicleClass >= 0) {
+
+                this.classTime[trip.vehicleClass] += trip.exited - trip.entered;
+                this.classTrips[trip.vehicleClass]++;
+            }
+
+            return true;
+        }
+
+        /**
+         * Returns the trip of a vehicle, creating it when first seen.
+         *
+         * @param vehicle The vehicle.
+         * @return Trip
+         */
+        Trip trip(int vehicle) {
+
+            return this.trips.computeIfAbsent(vehicle, v -> new Trip());
+        }
+
+        /**
+         * Merges the partial result of the records right after this range.
+         *
+         * @param next The next partial result.
+         * @return Partial This partial result.
+         */
+        Partial merge(Partial next) {
+
+            this.first = Math.min(this.first, next.first);
+            this.last = Math.max(this.last, next.last);
+            this.evicted += next.evicted;
+
+            for (int i = 0; i < this.exited.length; i++) {
+                this.exited[i] += next.exited[i];
+            }
+            for (int i = 0; i < this.delay.length; i++) {
+
+                this.delay[i] += next.delay[i];
+                this.delayed[i] += next.delayed[i];
+            }
+            for (int i = 0; i < TYPES.length; i++) {
+
+                this.classClaims[i] += next.classClaims[i];
+                this.classTime[i] += next.classTime[i];
+                this.classTrips[i] += next.classTrips[i];
+            }
+
+            // Occupations open at the end of this range close with the first release of the next
+            for (int key = 0; key < this.seen.length; key++) {
+
+                this.occupied[key] += next.occupied[key];
+                this.blocked[key] += next.blocked[key];
+
+                if (this.trailing[key] >= 0 && next.leading[key] >= 0) {
+                    this.occupied[key] += next.leading[key] - this.trailing[key];
+                }
+                if (!this.seen[key]) {
+                    this.leading[key] = next.leading[key];
+                }
+                if (next.seen[key]) {
+                    this.trailing[key] = next.trailing[key];
+                }
+                this.seen[key] |= next.seen[key];
+            }
+
+            // Trips continued in the next range
+            for (Map.Entry<Integer, Trip> entry : next.trips.entrySet()) {
+
+                Trip trip = this.trips.get(entry.getKey());
+
+                if (trip == null) {
+                    this.trips.put(entry.getKey(), entry.getValue());
+                } else {
+
+                    trip.merge(entry.getValue());
+                    if (this.close(trip, false)) {
+                        this.trips.remove(entry.getKey());
+                    }
+                }
+            }
+
+            return this;
+        }
+    }
+
+    /**
+     * TraceAnalyzer constructor.
+     *
+     * @param header The trace header.
+     * @param result The merged result of every chunk.
+     */
+    private TraceAnalyzer(Header header, Partial result) {
+
+        this.header = header;
+        this.result = result;
+
+        // Close what is still open at the edges of the trace
+        for (Trip trip : result.trips.values()) {
+            result.close(trip, true);
+        }
+        result.trips.clear();
+        for (int key = 0; key < header.vertices; key++) {
+
+            if (result.leading[key] >= 0) {
+                result.occupied[key] += result.leading[key] - result.first;
+            }
+            if (result.trailing[key] >= 0) {
+                result.occupied[key] += result.last - result.trailing[key];
+            }
+        }
+
+        this.duration = Math.max(1, result.last - result.first);
+    }
+
+    /**
+     * Reads the trace header.
+     *
+     * @param channel The trace channel.
+     * @return Header
+     * @throws IOException If the file is not a trace file.
+     */
+    private static Header readHeader(FileChannel channel) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(TraceFormat.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) ;
+        buffer.flip();
+
+        if (buffer.remaining() < TraceFormat.HEADER_BYTES || buffer.getInt() != TraceFormat.MAGIC) {
+            throw new IOException("Not a trace file");
+        }
+        short version = buffer.getShort();
+        if (version != TraceFormat.VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+
+        Header header = new Header();
+        header.vertices = buffer.getInt();
+        header.entries = buffer.getInt();
+        header.exits = buffer.getInt();
+        header.metersPerVertex = buffer.getDouble();
+        header.start = buffer.getLong();
+
+        ByteBuffer lanes = ByteBuffer.allocate(header.vertices);
+        while (lanes.hasRemaining() && channel.read(lanes, TraceFormat.HEADER_BYTES + lanes.position()) > 0) ;
+        header.lanes = lanes.array();
+        header.dataOffset = TraceFormat.HEADER_BYTES + header.vertices;
+
+        return header;
+    }
+
+    /**
+     * Analyzes a chunk of records.
+     *
+     * @param channel The trace channel.
+     * @param header  The trace header.
+     * @param offset  The chunk offset in the file.
+     * @param length  The chunk length, a multiple of the record size.
+     * @return Partial
+     */
+    private static Partial analyzeChunk(FileChannel channel, Header header, long offset, long length) {
+
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        Partial partial = new Partial(header);
+        long[] claimedAt = new long[header.vertices];
+        Arrays.fill(claimedAt, -1);
+
+        for (int at = 0; at + TraceFormat.RECORD_BYTES <= length; at += TraceFormat.RECORD_BYTES) {
+
+            long time = buffer.getLong(at);
+            int vehicle = buffer.getInt(at + 8);
+            int key = buffer.getInt(at + 12);
+            byte event = buffer.get(at + 16);
+            int vehicleClass = buffer.get(at + 17) & 0xFF;
+            int value = buffer.getInt(at + 20);
+
+            partial.first = Math.min(partial.first, time);
+            partial.last = Math.max(partial.last, time);
+
+            switch (event) {
+
+                case TraceFormat.CLAIM:
+
+                    claimedAt[key] = time;
+                    partial.seen[key] = true;
+                    if (vehicleClass < TYPES.length) {
+                        partial.classClaims[vehicleClass]++;
+                    }
+                    break;
+
+                case TraceFormat.RELEASE:
+
+                    if (claimedAt[key] >= 0) {
+
+                        partial.occupied[key] += time - claimedAt[key];
+                        claimedAt[key] = -1;
+
+                    } else if (!partial.seen[key]) {
+                        partial.leading[key] = time;
+                    }
+                    partial.seen[key] = true;
+                    break;
+
+                case TraceFormat.BLOCKED:
+
+                    partial.blocked[key] += value;
+                    break;
+
+                case TraceFormat.QUEUE:
+
+                    Trip queued = partial.trip(vehicle);
+                    queued.queued = time;
+                    queued.entry = value;
+                    break;
+
+                case TraceFormat.ENTER:
+
+                    Trip entered = partial.trip(vehicle);
+                    entered.entered = time;
+                    entered.entry = value;
+                    break;
+
+                default:
+
+                    // Exit or eviction
+                    Trip trip = partial.trip(vehicle);
+                    trip.exited = time;
+                    trip.evicted = event == TraceFormat.EVICTED;
+                    trip.vehicleClass = vehicleClass < TYPES.length ? vehicleClass : -1;
+
+                    if (trip.evicted) {
+                        partial.evicted++;
+                    } else if (value > 0 && value <= header.exits) {
+                        partial.exited[value - 1]++;
+                    }
+
+                    if (partial.close(trip, false)) {
+                        partial.trips.remove(vehicle);
+                    }
+            }
+        }
+
+        // Occupations still open at the end of the chunk
+        for (int key = 0; key < header.vertices; key++) {
+            partial.trailing[key] = claimedAt[key];
+        }
+
+        return partial;
+    }
+
+    /**
+     * Analyzes a trace file.
+     *
+     * @param file       The trace file.
+     * @param chunkBytes The approximate chunk size in bytes.
+     * @return TraceAnalyzer The indicators.
+     * @throws IOException If the file cannot be read or is not a trace file.
+     */
+    public static TraceAnalyzer analyze(Path file, int chunkBytes) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            Header header = readHeader(channel);
+
+            long records = (channel.size() - header.dataOffset) / TraceFormat.RECORD_BYTES;
+            long chunkRecords = Math.max(1, chunkBytes / TraceFormat.RECORD_BYTES);
+            int chunks = (int) ((records + chunkRecords - 1) / chunkRecords);
+
+            // Ordered reduction keeps every merge between adjacent ranges
+            Partial result = IntStream.range(0, chunks).parallel()
+                    .mapToObj(i -> analyzeChunk(channel, header,
+                            header.dataOffset + i * chunkRecords * TraceFormat.RECORD_BYTES,
+                            Math.min(chunkRecords, records - i * chunkRecords) * TraceFormat.RECORD_BYTES))
+                    .reduce(Partial::merge)
+                    .orElseGet(() -> new Partial(header));
+
+            if (result.first == Long.MAX_VALUE) {
+                result.first = result.last = 0;
+            }
+
+            return new TraceAnalyzer(header, result);
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the trace duration in seconds.
+     *
+     * @return double
+     */
+    public double getDuration() {
+        return this.duration / 1e9;
+    }
+
+    /**
+     * Returns the vehicles which left through an exit per minute.
+     *
+     * @param exit The exit.
+     * @return double
+     */
+    public double getThroughput(int exit) {
+        return this.result.exited[exit - 1] * 60e9 / this.duration;
+    }
+
+    /**
+     * Returns the mean time vehicles waited in an entry queue in seconds.
+     *
+     * @param entry The entry.
+     * @return double
+     */
+    public double getMeanDelay(int entry) {
+
+        long delayed = this.result.delayed[entry - 1];
+        return delayed == 0 ? 0 : this.result.delay[entry - 1] / 1e9 / delayed;
+    }
+
+    /**
+     * Returns the mean speed of a vehicle class inside the roundabout in km/h.
+     * Every claimed node after the first node of a trip counts as one vertex travelled.
+     *
+     * @param type The vehicle type.
+     * @return double
+     */
+    public double getMeanSpeed(VehicleType type) {
+
+        int i = type.ordinal();
+        long time = this.result.classTime[i];
+        long nodes = this.result.classClaims[i] - this.result.classTrips[i];
+
+        return time <= 0 ? 0 : nodes * this.header.metersPerVertex / (time / 1e9) * 3.6;
+    }
+
+    /**
+     * Returns the share of time the vertices of a lane were occupied.
+     *
+     * @param lane The lane.
+     * @return double A value in [0, 1].
+     */
+    public double getLaneUtilization(int lane) {
+
+        long occupied = 0;
+        int vertices = 0;
+
+        for (int key = 0; key < this.header.vertices; key++) {
+
+            if (this.header.lanes[key] == lane) {
+
+                occupied += this.result.occupied[key];
+                vertices++;
+            }
+        }
+
+        return vertices == 0 ? 0 : (double) occupied / vertices / this.duration;
+    }
+
+    /**
+     * Returns the share of the trace vehicles spent blocked waiting for a vertex.
+     * Several vehicles may wait for the same vertex, so the share may exceed 1.
+     *
+     * @param key The vertex key.
+     * @return double
+     */
+    public double getBlockedShare(int key) {
+        return this.result.blocked[key] * 1e6 / this.duration;
+    }
+
+    /**
+     * Returns the number of lanes in the trace.
+     *
+     * @return int
+     */
+    public int getLanesNumber() {
+
+        int lanes = 0;
+        for (byte lane : this.header.lanes) {
+            lanes = Math.max(lanes, lane + 1);
+        }
+
+        return lanes;
+    }
+
+    /**
+     * Prints every indicator.
+     *
+     * @param out The output stream.
+     */
+    public void report(PrintStream out) {
+
+        out.printf("duration=%.1fs evicted=%d%n", this.getDuration(), this.result.evicted);
+
+        for (int exit = 1; exit <= this.header.exits; exit++) {
+            out.printf("exit %d throughput=%.2f veh/min%n", exit, this.getThroughput(exit));
+        }
+        for (int entry = 1; entry <= this.header.entries; entry++) {
+            out.printf("entry %d mean delay=%.2fs%n", entry, this.getMeanDelay(entry));
+        }
+        for (VehicleType type : TYPES) {
+            out.printf("%s mean speed=%.1f km/h%n", type, this.getMeanSpeed(type));
+        }
+        for (int lane = 0; lane < this.getLanesNumber(); lane++) {
+            out.printf("lane %d utilization=%.1f%%%n", lane, 100 * this.getLaneUtilization(lane));
+        }
+
+        // Busiest vertices first
+        IntStream.range(0, this.header.vertices).boxed()
+                .sorted((a, b) -> Double.compare(this.getBlockedShare(b), this.getBlockedShare(a)))
+                .limit(10)
+                .forEach(key -> out.printf("vertex %d lane %d blocked share=%.3f%n",
+                        key, this.header.lanes[key], this.getBlockedShare(key)));
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments.
+     * @throws IOException If the trace cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length == 0) {
+
+            System.out.println("Usage: TraceAnalyzer trace-file [chunk MB]");
+            System.exit(2);
+        }
+
+        int chunkBytes = args.length > 1 ? Integer.parseInt(args[1]) << 20 : CHUNK_BYTES;
+
+        long start = System.nanoTime();
+        TraceAnalyzer analyzer = analyze(Paths.get(args[0]), chunkBytes);
+        long elapsed = System.nanoTime() - start;
+
+        analyzer.report(System.out);
+        System.out.printf("analyzed in %.2fs%n", elapsed / 1e9);
+    }
+}
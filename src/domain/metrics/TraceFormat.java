@@ -0,0 +1,55 @@
+package domain.metrics;
+
+/**
+ * Constants of the occupancy trace file format.
+ * <p>
+ * A file is a header followed by fixed size little endian records, so it can be split
+ * into chunks at any multiple of the record size:
+ * <pre>
+ * header: int magic, short version, int vertices, int entries, int exits, double meters per vertex,
+ *         long start epoch millis, one byte per vertex with its lane, -1 for entries and -2 for exits
+ * record: long simulated nanos since start, int vehicle, int vertex key, byte event, byte vehicle class,
+ *         short unused, int value
+ * </pre>
+ * The record value is the waited milliseconds of a blocked event, the entry of a queue
+ * event and the exit of an exit or eviction event.
+ */
+final class TraceFormat {
+
+    /**
+     * File magic number, "RBTR".
+     */
+    static final int MAGIC = 0x52425452;
+
+    /**
+     * File format version.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * Fixed header size in bytes, the vertex lanes follow.
+     */
+    static final int HEADER_BYTES = 4 + 2 + 4 + 4 + 4 + 8 + 8;
+
+    /**
+     * Record size in bytes.
+     */
+    static final int RECORD_BYTES = 24;
+
+    /**
+     * Record events.
+     */
+    static final byte CLAIM = 0;
+    static final byte RELEASE = 1;
+    static final byte BLOCKED = 2;
+    static final byte QUEUE = 3;
+    static final byte ENTER = 4;
+    static final byte EXIT = 5;
+    static final byte EVICTED = 6;
+
+    /**
+     * Non instantiable.
+     */
+    private TraceFormat() {
+    }
+}
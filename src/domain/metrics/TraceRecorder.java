@@ -0,0 +1,263 @@
+package domain.metrics;
+
+import domain.roundabout.Factory;
+import domain.roundabout.OccupancyListener;
+import domain.roundabout.Roundabout;
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+import domain.vehicles.VehicleType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every claim, release, blocked wait, queue, entry and exit of a roundabout run into a trace file.
+ * <p>
+ * Vehicles write events into a bounded {@link EventRing} without locks or allocation, and a background
+ * writer drains the ring through a file channel in the format described in {@link TraceFormat}.
+ * When the writer falls behind, events are dropped and counted instead of slowing vehicles down.
+ * <p>
+ * Run the recorder in its own thread, stop it and join the thread to get a complete file.
+ */
+public class TraceRecorder implements OccupancyListener, Runnable {
+
+    /**
+     * Nanoseconds the writer parks when the ring is empty.
+     */
+    private static final long IDLE_PARK = 200_000;
+
+    /**
+     * The recorded roundabout.
+     */
+    private final Roundabout roundabout;
+
+    /**
+     * The output file.
+     */
+    private final Path file;
+
+    /**
+     * The event ring, records hold the time, the vehicle and key, and the event, class and value.
+     */
+    private final EventRing ring;
+
+    /**
+     * The simulation clock event times are taken from.
+     */
+    private final SimulationClock clock;
+
+    /**
+     * When recording started in simulated nanoseconds.
+     */
+    private final long start;
+
+    /**
+     * When recording started in milliseconds since the epoch.
+     */
+    private final long startMillis;
+
+    /**
+     * The write failure, null when none happened.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Whether the recorder is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * TraceRecorder constructor.
+     *
+     * @param roundabout The recorded roundabout.
+     * @param file       The output file, overwritten.
+     * @param capacity   The number of events the ring holds, rounded up to a power of two.
+     */
+    public TraceRecorder(Roundabout roundabout, Path file, int capacity) {
+
+        this.roundabout = roundabout;
+        this.file = file;
+        this.ring = new EventRing(capacity);
+        this.clock = roundabout.getClock();
+        this.start = this.clock.nanoTime();
+        this.startMillis = System.currentTimeMillis();
+        this.running = true;
+    }
+
+    /**
+     * Returns the number of events recorded so far.
+     *
+     * @return long
+     */
+    public long getRecorded() {
+        return this.ring.getAppended();
+    }
+
+    /**
+     * Returns the number of events dropped because the writer fell behind.
+     *
+     * @return long
+     */
+    public long getDropped() {
+        return this.ring.getDropped();
+    }
+
+    /**
+     * Returns the write failure.
+     *
+     * @return IOException The failure or null if writing succeeded so far.
+     */
+    public IOException getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Stops recording, the file is complete once the recorder thread finished.
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Appends an event to the ring, or drops it when the ring is full.
+     *
+     * @param event   The event.
+     * @param vehicle The vehicle.
+     * @param key     The vertex key.
+     * @param value   The event value.
+     */
+    private void record(byte event, Vehicle vehicle, int key, int value) {
+
+        VehicleType type = VehicleType.of(vehicle);
+
+        this.ring.offer(this.clock.nanoTime() - this.start,
+                vehicle.getId() << 32 | (key & 0xFFFFFFFFL),
+                (long) event << 56 | (long) (type == null ? 0xFF : type.ordinal()) << 48 | (value & 0xFFFFFFFFL));
+    }
+
+    @Override
+    public void onClaim(Vehicle vehicle, int key) {
+        this.record(TraceFormat.CLAIM, vehicle, key, 0);
+    }
+
+    @Override
+    public void onRelease(Vehicle vehicle, int key) {
+        this.record(TraceFormat.RELEASE, vehicle, key, 0);
+    }
+
+    @Override
+    public void onBlocked(Vehicle vehicle, int key, long millis) {
+        this.record(TraceFormat.BLOCKED, vehicle, key, (int) Math.min(Integer.MAX_VALUE, millis));
+    }
+
+    @Override
+    public void onQueue(Vehicle vehicle, int entry) {
+        this.record(TraceFormat.QUEUE, vehicle, -1, entry);
+    }
+
+    @Override
+    public void onEnter(Vehicle vehicle) {
+        this.record(TraceFormat.ENTER, vehicle, -1, vehicle.getSource());
+    }
+
+    @Override
+    public void onExit(Vehicle vehicle) {
+        this.record(vehicle.isEvicted() ? TraceFormat.EVICTED : TraceFormat.EXIT, vehicle, -1, vehicle.getDestination());
+    }
+
+    /**
+     * Writes the trace header.
+     *
+     * @param buffer The output buffer.
+     */
+    private void putHeader(ByteBuffer buffer) {
+
+        buffer.putInt(TraceFormat.MAGIC).putShort(TraceFormat.VERSION)
+                .putInt(this.roundabout.getVertexCount())
+                .putInt(this.roundabout.getEntriesNumber())
+                .putInt(this.roundabout.getExitsNumber())
+                .putDouble(1 / Factory.VERTEX_PER_METER_RATIO)
+                .putLong(this.startMillis);
+
+        for (int key = 0; key < this.roundabout.getVertexCount(); key++) {
+            buffer.put((byte) this.roundabout.getVertex(key).getWeight());
+        }
+    }
+
+    /**
+     * Listens to the roundabout and writes events until stopped and the ring is drained.
+     */
+    @Override
+    public void run() {
+
+        this.roundabout.addOccupancyListener(this);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(1 << 16,
+                TraceFormat.HEADER_BYTES + this.roundabout.getVertexCount())).order(ByteOrder.LITTLE_ENDIAN);
+
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            this.putHeader(buffer);
+
+            while (true) {
+
+                boolean stopping = !this.running;
+                if (stopping) {
+                    this.roundabout.removeOccupancyListener(this);
+                }
+
+                // Copy every published record in sequence order
+                for (int slot = this.ring.peek(); slot >= 0; slot = this.ring.peek()) {
+
+                    if (buffer.remaining() < TraceFormat.RECORD_BYTES) {
+
+                        buffer.flip();
+                        while (buffer.hasRemaining()) channel.write(buffer);
+                        buffer.clear();
+                    }
+
+                    long subject = this.ring.getSubject(slot);
+                    long detail = this.ring.getDetail(slot);
+                    buffer.putLong(this.ring.getTime(slot))
+                            .putInt((int) (subject >>> 32))
+                            .putInt((int) subject)
+                            .put((byte) (detail >>> 56))
+                            .put((byte) (detail >>> 48))
+                            .putShort((short) 0)
+                            .putInt((int) detail);
+
+                    this.ring.advance();
+                }
+
+                // Done once stopped and every claimed slot was written
+                if (stopping && this.ring.isDrained()) {
+                    break;
+                }
+
+                // Flush when idle
+                if (buffer.position() > 0) {
+
+                    buffer.flip();
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                    buffer.clear();
+                }
+                LockSupport.parkNanos(IDLE_PARK);
+            }
+
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+
+        } catch (IOException e) {
+            this.failure = e;
+            this.roundabout.removeOccupancyListener(this);
+        }
+
+        this.running = false;
+    }
+}
@@ -0,0 +1,511 @@
+package domain.roundabout;
+
+import domain.vehicles.Vehicle;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Limits the number of vehicles in flight before they are queued on a roundabout entry.
+ * <p>
+ * A vehicle is in flight from the moment it is admitted until it leaves the roundabout.
+ * Both the number of vehicles in flight per entry and in the whole roundabout are bounded,
+ * and a spawn over either limit is rejected, blocks the spawning thread or waits in a
+ * queue outside the roundabout, depending on the admission policy. Admitted vehicles are
+ * handed to a launcher, which starts their thread by default.
+ * <p>
+ * A vehicle leaving the roundabout only gives its slot back and signals a background
+ * admission thread, which wakes the blocked spawns and launches the vehicles waiting
+ * outside, so exits never pay for starting other vehicles.
+ * <p>
+ * The controller can be used as the sink of a traffic generator.
+ */
+public class AdmissionController implements Consumer<Vehicle>, OccupancyListener {
+
+    /**
+     * Maximum number of nanoseconds a blocked spawn parks before checking the limits again.
+     */
+    private static final long BLOCK_RECHECK = 10_000_000;
+
+    /**
+     * The thread admitting waiting spawns after exits, for every controller.
+     */
+    private static final ExecutorService ADMITTER = Executors.newSingleThreadExecutor(runnable -> {
+
+        Thread thread = new Thread(runnable, "admission");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    /**
+     * The number of vehicles in flight per entry, indexed by entry - 1.
+     */
+    private final AtomicIntegerArray entryInFlight;
+
+    /**
+     * The number of vehicles in flight in the roundabout.
+     */
+    private final AtomicInteger inFlight;
+
+    /**
+     * The admitted vehicles which have not left the roundabout yet.
+     */
+    private final Set<Vehicle> admitted;
+
+    /**
+     * The vehicles waiting outside each entry, indexed by entry - 1.
+     */
+    private final ConcurrentLinkedQueue<Vehicle>[] outside;
+
+    /**
+     * The number of vehicles waiting outside the roundabout.
+     */
+    private final AtomicInteger waitingOutside;
+
+    /**
+     * The threads blocked on a spawn.
+     */
+    private final ConcurrentLinkedQueue<Thread> blocked;
+
+    /**
+     * The number of exits signalled since the admission task last checked, the task runs while not 0.
+     */
+    private final AtomicInteger pending;
+
+    /**
+     * The entry index which freed the last slot, admitted first.
+     */
+    private volatile int freed;
+
+    /**
+     * Admits waiting spawns on the admission thread.
+     */
+    private final Runnable admitTask;
+
+    /**
+     * Spawn counters.
+     */
+    private final LongAdder admittedCount;
+    private final LongAdder rejectedCount;
+    private final LongAdder deferredCount;
+
+    /**
+     * The maximum number of vehicles in flight per entry.
+     */
+    private volatile int entryLimit;
+
+    /**
+     * The maximum number of vehicles in flight in the roundabout.
+     */
+    private volatile int globalLimit;
+
+    /**
+     * What happens to a spawn over the limits.
+     */
+    private volatile AdmissionPolicy policy;
+
+    /**
+     * Starts admitted vehicles.
+     */
+    private volatile Consumer<Vehicle> launcher;
+
+    /**
+     * AdmissionController constructor, without limits until they are set.
+     *
+     * @param roundabout The roundabout the vehicles are spawned in.
+     * @param launcher   Starts admitted vehicles.
+     */
+    @SuppressWarnings("unchecked")
+    public AdmissionController(Roundabout roundabout, Consumer<Vehicle> launcher) {
+
+        this.entryInFlight = new AtomicIntegerArray(roundabout.getEntriesNumber());
+        this.inFlight = new AtomicInteger();
+        this.admitted = ConcurrentHashMap.newKeySet();
+        this.outside = new ConcurrentLinkedQueue[roundabout.getEntriesNumber()];
+        this.waitingOutside = new AtomicInteger();
+        this.blocked = new ConcurrentLinkedQueue<>();
+        this.pending = new AtomicInteger();
+        this.admitTask = this::admit;
+        this.admittedCount = new LongAdder();
+        this.rejectedCount = new LongAdder();
+        this.deferredCount = new LongAdder();
+        this.entryLimit = Integer.MAX_VALUE;
+        this.globalLimit = Integer.MAX_VALUE;
+        this.policy = AdmissionPolicy.REJECT;
+        this.launcher = launcher;
+
+        for (int i = 0; i < this.outside.length; i++) {
+            this.outside[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        // Free slots when vehicles leave
+        roundabout.addOccupancyListener(this);
+    }
+
+    /**
+     * Returns the maximum number of vehicles in flight per entry.
+     *
+     * @return int
+     */
+    public int getEntryLimit() {
+        return this.entryLimit;
+    }
+
+    /**
+     * Sets the maximum number of vehicles in flight per entry.
+     *
+     * @param entryLimit The limit, at least 1.
+     */
+    public void setEntryLimit(int entryLimit) {
+
+        if (entryLimit < 1) {
+            throw new IllegalArgumentException("Entry limit must be at least 1");
+        }
+
+        this.entryLimit = entryLimit;
+        this.wakeUp();
+    }
+
+    /**
+     * Returns the maximum number of vehicles in flight in the roundabout.
+     *
+     * @return int
+     */
+    public int getGlobalLimit() {
+        return this.globalLimit;
+    }
+
+    /**
+     * Sets the maximum number of vehicles in flight in the roundabout.
+     *
+     * @param globalLimit The limit, at least 1.
+     */
+    public void setGlobalLimit(int globalLimit) {
+
+        if (globalLimit < 1) {
+            throw new IllegalArgumentException("Global limit must be at least 1");
+        }
+
+        this.globalLimit = globalLimit;
+        this.wakeUp();
+    }
+
+    /**
+     * Returns what happens to a spawn over the limits.
+     *
+     * @return AdmissionPolicy
+     */
+    public AdmissionPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Sets what happens to a spawn over the limits.
+     *
+     * @param policy The admission policy.
+     */
+    public void setPolicy(AdmissionPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Sets what starts admitted vehicles, for instance a vehicle scheduler.
+     *
+     * @param launcher Starts admitted vehicles.
+     */
+    public void setLauncher(Consumer<Vehicle> launcher) {
+        this.launcher = launcher;
+    }
+
+    /**
+     * Takes an in-flight slot on an entry if both limits allow it.
+     *
+     * @param entry The entry index, entry - 1.
+     * @return boolean Whether the slot was taken.
+     */
+    private boolean tryAcquire(int entry) {
+
+        // Roundabout slot
+        int current;
+        do {
+            current = this.inFlight.get();
+            if (current >= this.globalLimit) {
+                return false;
+            }
+        } while (!this.inFlight.compareAndSet(current, current + 1));
+
+        // Entry slot, give the roundabout slot back if the entry is full
+        do {
+            current = this.entryInFlight.get(entry);
+            if (current >= this.entryLimit) {
+
+                this.inFlight.decrementAndGet();
+                return false;
+            }
+        } while (!this.entryInFlight.compareAndSet(entry, current, current + 1));
+
+        return true;
+    }
+
+    /**
+     * Starts a vehicle which holds an in-flight slot.
+     *
+     * @param vehicle The vehicle.
+     */
+    private void launch(Vehicle vehicle) {
+
+        this.admitted.add(vehicle);
+        this.admittedCount.increment();
+        this.launcher.accept(vehicle);
+    }
+
+    /**
+     * Spawns a vehicle, applying the admission policy when a limit is reached.
+     *
+     * @param vehicle The vehicle, not started.
+     * @return boolean False if the vehicle was rejected.
+     */
+    public boolean submit(Vehicle vehicle) {
+
+        int entry = vehicle.getSource() - 1;
+        AdmissionPolicy policy = this.policy;
+
+        // Never overtake vehicles already waiting outside the entry
+        if (this.outside[entry].isEmpty() && this.tryAcquire(entry)) {
+
+            this.launch(vehicle);
+            return true;
+        }
+
+        switch (policy) {
+
+            case QUEUE_OUTSIDE:
+
+                this.deferredCount.increment();
+                this.waitingOutside.incrementAndGet();
+                this.outside[entry].add(vehicle);
+
+                // A slot may have freed up meanwhile
+                this.drainOutside(entry);
+
+                return true;
+
+            case BLOCK:
+
+                this.deferredCount.increment();
+                Thread thread = Thread.currentThread();
+                this.blocked.add(thread);
+
+                try {
+
+                    while (!this.tryAcquire(entry)) {
+
+                        // Give up when interrupted
+                        if (thread.isInterrupted()) {
+
+                            this.rejectedCount.increment();
+                            return false;
+                        }
+
+                        LockSupport.parkNanos(this, BLOCK_RECHECK);
+                    }
+
+                } finally {
+                    this.blocked.remove(thread);
+                }
+
+                this.launch(vehicle);
+                return true;
+
+            default:
+
+                this.rejectedCount.increment();
+                return false;
+        }
+    }
+
+    /**
+     * Spawns a vehicle, so the controller can be used as a vehicle sink.
+     *
+     * @param vehicle The vehicle, not started.
+     */
+    @Override
+    public void accept(Vehicle vehicle) {
+
+        this.submit(vehicle);
+    }
+
+    /**
+     * Admits the vehicles waiting outside an entry while there are free slots.
+     *
+     * @param entry The entry index, entry - 1.
+     */
+    private void drainOutside(int entry) {
+
+        ConcurrentLinkedQueue<Vehicle> queue = this.outside[entry];
+
+        while (!queue.isEmpty() && this.tryAcquire(entry)) {
+
+            Vehicle vehicle = queue.poll();
+
+            // Another thread admitted the last waiting vehicle
+            if (vehicle == null) {
+
+                this.release(entry);
+                return;
+            }
+
+            this.waitingOutside.decrementAndGet();
+            this.launch(vehicle);
+        }
+    }
+
+    /**
+     * Gives back an in-flight slot.
+     *
+     * @param entry The entry index, entry - 1.
+     */
+    private void release(int entry) {
+
+        this.entryInFlight.decrementAndGet(entry);
+        this.inFlight.decrementAndGet();
+    }
+
+    /**
+     * Lets waiting spawns retry after a slot freed up or a limit was raised.
+     *
+     * @param first The entry index to start admitting from.
+     */
+    private void wakeUp(int first) {
+
+        // Blocked spawning threads retry on their own
+        for (Thread thread : this.blocked) {
+            LockSupport.unpark(thread);
+        }
+
+        // Vehicles outside the roundabout, starting with the entry which freed a slot
+        if (this.waitingOutside.get() > 0) {
+
+            for (int i = 0; i < this.outside.length; i++) {
+                this.drainOutside((first + i) % this.outside.length);
+            }
+        }
+    }
+
+    /**
+     * Runs the admission task unless it is already running, in which case it checks again.
+     */
+    private void signal() {
+
+        if (this.pending.getAndIncrement() == 0) {
+            ADMITTER.execute(this.admitTask);
+        }
+    }
+
+    /**
+     * Lets waiting spawns retry until no exit was signalled meanwhile, on the admission thread.
+     */
+    private void admit() {
+
+        int missed = 1;
+        do {
+            this.wakeUp(this.freed);
+            missed = this.pending.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Lets waiting spawns retry after a limit was raised.
+     */
+    private void wakeUp() {
+
+        this.wakeUp(0);
+    }
+
+    /**
+     * Frees the in-flight slot of an admitted vehicle which left the roundabout and
+     * signals the admission thread when spawns are waiting for it.
+     *
+     * @param vehicle The vehicle.
+     */
+    @Override
+    public void onExit(Vehicle vehicle) {
+
+        // Vehicles started without the controller hold no slot
+        if (!this.admitted.remove(vehicle)) {
+            return;
+        }
+
+        this.release(vehicle.getSource() - 1);
+
+        if (!this.blocked.isEmpty() || this.waitingOutside.get() > 0) {
+
+            this.freed = vehicle.getSource() - 1;
+            this.signal();
+        }
+    }
+
+    /**
+     * Returns the number of vehicles in flight in the roundabout.
+     *
+     * @return int
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Returns the number of vehicles in flight from an entry.
+     *
+     * @param entry The entry.
+     * @return int
+     */
+    public int getInFlight(int entry) {
+        return this.entryInFlight.get(entry - 1);
+    }
+
+    /**
+     * Returns the number of vehicles waiting outside the roundabout.
+     *
+     * @return int
+     */
+    public int getWaitingOutside() {
+        return this.waitingOutside.get();
+    }
+
+    /**
+     * Returns the number of admitted spawns.
+     *
+     * @return long
+     */
+    public long getAdmitted() {
+        return this.admittedCount.sum();
+    }
+
+    /**
+     * Returns the number of rejected spawns.
+     *
+     * @return long
+     */
+    public long getRejected() {
+        return this.rejectedCount.sum();
+    }
+
+    /**
+     * Returns the number of spawns which had to wait for a slot.
+     *
+     * @return long
+     */
+    public long getDeferred() {
+        return this.deferredCount.sum();
+    }
+}
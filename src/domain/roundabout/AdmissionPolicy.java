@@ -0,0 +1,22 @@
+package domain.roundabout;
+
+/**
+ * What the admission controller does with a vehicle spawned while the roundabout is at its in-flight limit.
+ */
+public enum AdmissionPolicy {
+
+    /**
+     * Drop the vehicle.
+     */
+    REJECT,
+
+    /**
+     * Block the spawning thread until the vehicle can be admitted.
+     */
+    BLOCK,
+
+    /**
+     * Hold the vehicle in a queue outside the roundabout and admit it as soon as a slot frees up.
+     */
+    QUEUE_OUTSIDE
+}
@@ -0,0 +1,365 @@
+package domain.roundabout;
+
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+import domain.vehicles.VehicleType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * A consistent snapshot of a running roundabout which a run can be resumed from.
+ * <p>
+ * Capturing halts the vehicles before their next step, copies the state into a buffer and
+ * lets the vehicles go again, so the pause only lasts as long as the copy. Writing the file
+ * happens afterwards. The snapshot is a little endian binary layout:
+ * <pre>
+ * header:    int magic, short version, double radius, int lanes, int entries, int exits,
+ *            double lane width, double vertex per meter, int vertices, int look-ahead,
+ *            byte routing mode, int alternative routes, byte route selection policy,
+ *            long simulated nanos, double time scale, int gap window
+ * meters:    per entry byte metering mode, long green millis, long cycle millis,
+ *            long cycle offset millis, int window, int threshold
+ * blocks:    int count, then the blocked vertex keys, int count, then per blocked edge
+ *            int source key and int target key
+ * vehicles:  int count, then per vehicle byte type, int entry, int exit and its own state
+ * queues:    per entry int count, then the vehicle indexes in queue order
+ * occupancy: per vertex the index of the holding vehicle, -1 when free
+ * </pre>
+ * Vehicles travelling between two nodes resume with their next step right away.
+ */
+public class Checkpoint {
+
+    /**
+     * File magic number, "RBCK".
+     */
+    private static final int MAGIC = 0x5242434B;
+
+    /**
+     * File format version.
+     */
+    private static final short VERSION = 3;
+
+    /**
+     * Header size in bytes.
+     */
+    private static final int HEADER_BYTES = 4 + 2 + 8 + 4 + 4 + 4 + 8 + 8 + 4 + 4 + 1 + 4 + 1 + 8 + 8 + 4;
+
+    /**
+     * Size of the metering settings of an entry in bytes.
+     */
+    private static final int METER_BYTES = 1 + 8 + 8 + 8 + 4 + 4;
+
+    /**
+     * The snapshot.
+     */
+    private final ByteBuffer data;
+
+    /**
+     * The number of nanoseconds the vehicles were halted for.
+     */
+    private final long pauseNanos;
+
+    /**
+     * Checkpoint constructor.
+     *
+     * @param data       The snapshot.
+     * @param pauseNanos The number of nanoseconds the vehicles were halted for.
+     */
+    private Checkpoint(ByteBuffer data, long pauseNanos) {
+
+        this.data = data;
+        this.pauseNanos = pauseNanos;
+    }
+
+    /**
+     * Captures the state of a running roundabout.
+     *
+     * @param roundabout The roundabout.
+     * @return Checkpoint
+     * @throws IllegalStateException If a vehicle is not of a known vehicle type.
+     */
+    public static Checkpoint capture(Roundabout roundabout) {
+
+        long start = System.nanoTime();
+        ByteBuffer buffer;
+
+        roundabout.halt();
+        try {
+
+            Vehicle[] vehicles = roundabout.getVehicles().toArray(new Vehicle[0]);
+            Map<Vehicle, Integer> indexes = new IdentityHashMap<>(vehicles.length * 2);
+            int[] blockedVertices = IntStream.range(0, roundabout.getVertexCount()).filter(roundabout::isBlocked).toArray();
+            long[] blockedEdges = roundabout.getBlockedEdges().stream().mapToLong(Long::longValue).toArray();
+
+            // Size the buffer for the worst case
+            int capacity = HEADER_BYTES + METER_BYTES * roundabout.getEntriesNumber()
+                    + 4 + 4 * blockedVertices.length + 4 + 8 * blockedEdges.length
+                    + 4 + 4 * roundabout.getEntriesNumber() + 4 * vehicles.length + 4 * roundabout.getVertexCount();
+            for (int i = 0; i < vehicles.length; i++) {
+
+                indexes.put(vehicles[i], i);
+                capacity += 1 + 4 + 4 + vehicles[i].getStateBytes();
+            }
+            buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+
+            // Header
+            SimulationClock clock = roundabout.getClock();
+            buffer.putInt(MAGIC).putShort(VERSION)
+                    .putDouble(roundabout.getRadius())
+                    .putInt(roundabout.getLanesNumber())
+                    .putInt(roundabout.getEntriesNumber())
+                    .putInt(roundabout.getExitsNumber())
+                    .putDouble(roundabout.getLaneWidth())
+                    .putDouble(roundabout.getVertexPerMeterRatio())
+                    .putInt(roundabout.getVertexCount())
+                    .putInt(roundabout.getLookAhead())
+                    .put((byte) roundabout.getRoutingMode().ordinal())
+                    .putInt(roundabout.getAlternativeRoutes())
+                    .put((byte) roundabout.getRouteSelectionPolicy().ordinal())
+                    .putLong(clock.nanoTime())
+                    .putDouble(clock.getScale())
+                    .putInt(roundabout.getGapWindow());
+
+            // Entry metering
+            for (int entry = 1; entry <= roundabout.getEntriesNumber(); entry++) {
+
+                EntryMeter meter = roundabout.getEntryMeter(entry);
+                buffer.put((byte) meter.getMode().ordinal())
+                        .putLong(meter.getGreenMillis())
+                        .putLong(meter.getCycleMillis())
+                        .putLong(meter.getOffsetMillis())
+                        .putInt(meter.getWindow())
+                        .putInt(meter.getThreshold());
+            }
+
+            // Blocked vertices and edges
+            buffer.putInt(blockedVertices.length);
+            for (int key : blockedVertices) {
+                buffer.putInt(key);
+            }
+            buffer.putInt(blockedEdges.length);
+            for (long edge : blockedEdges) {
+                buffer.putInt((int) (edge >>> 32)).putInt((int) edge);
+            }
+
+            // Vehicles
+            buffer.putInt(vehicles.length);
+            for (Vehicle vehicle : vehicles) {
+
+                VehicleType type = VehicleType.of(vehicle);
+                if (type == null) {
+                    throw new IllegalStateException("Cannot checkpoint " + vehicle.getLabel() + ", unknown vehicle type!");
+                }
+
+                buffer.put((byte) type.ordinal()).putInt(vehicle.getSource()).putInt(vehicle.getDestination());
+                vehicle.writeState(buffer);
+            }
+
+            // Entry queues
+            for (int entry = 1; entry <= roundabout.getEntriesNumber(); entry++) {
+
+                int countAt = buffer.position();
+                int count = 0;
+                buffer.putInt(0);
+
+                for (Vehicle vehicle : roundabout.getEntryQueue(entry)) {
+
+                    Integer index = indexes.get(vehicle);
+                    if (index != null) {
+
+                        buffer.putInt(index);
+                        count++;
+                    }
+                }
+                buffer.putInt(countAt, count);
+            }
+
+            // Occupancy
+            for (int key = 0; key < roundabout.getVertexCount(); key++) {
+
+                Object holder = roundabout.getVertex(key).getValue().get();
+                Integer index = holder instanceof Vehicle ? indexes.get(holder) : null;
+                buffer.putInt(index != null ? index : -1);
+            }
+
+        } finally {
+            roundabout.resume();
+        }
+
+        buffer.flip();
+
+        return new Checkpoint(buffer, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the number of nanoseconds the vehicles were halted for while capturing.
+     *
+     * @return long 0 for a checkpoint read from a file.
+     */
+    public long getPauseNanos() {
+        return this.pauseNanos;
+    }
+
+    /**
+     * Returns the size of the snapshot in bytes.
+     *
+     * @return int
+     */
+    public int getBytes() {
+        return this.data.limit();
+    }
+
+    /**
+     * Writes the checkpoint to a file.
+     *
+     * @param file The file, overwritten.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            ByteBuffer buffer = this.data.duplicate();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads a checkpoint file.
+     *
+     * @param file The file.
+     * @return Checkpoint
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     */
+    public static Checkpoint read(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            buffer.flip();
+
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            if (buffer.getShort(4) != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + buffer.getShort(4));
+            }
+
+            return new Checkpoint(buffer, 0);
+        }
+    }
+
+    /**
+     * Rebuilds the roundabout and its vehicles and resumes the run.
+     * The factory lane width and vertex per meter ratio are set to the checkpoint values.
+     *
+     * @param launcher Starts each restored vehicle, as a thread or on a scheduler.
+     * @return Roundabout The restored roundabout.
+     */
+    public Roundabout restore(Consumer<Vehicle> launcher) {
+
+        ByteBuffer buffer = this.data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(4 + 2);
+
+        // Rebuild the same graph
+        double radius = buffer.getDouble();
+        int lanes = buffer.getInt();
+        int entries = buffer.getInt();
+        int exits = buffer.getInt();
+        Factory.getInstance().setLaneWidth(buffer.getDouble());
+        Factory.getInstance().setVertexPerMeterRatio(buffer.getDouble());
+        Roundabout roundabout = Factory.getInstance().buildRoundabout(radius, lanes, entries, exits);
+
+        if (buffer.getInt() != roundabout.getVertexCount()) {
+            throw new IllegalStateException("Rebuilt roundabout does not match the checkpoint!");
+        }
+
+        // Settings and simulated time
+        roundabout.setLookAhead(buffer.getInt());
+        roundabout.setRoutingMode(RoutingMode.values()[buffer.get()]);
+        roundabout.setAlternativeRoutes(buffer.getInt());
+        roundabout.setRouteSelectionPolicy(RouteSelectionPolicy.values()[buffer.get()]);
+        long nanos = buffer.getLong();
+        roundabout.getClock().setScale(buffer.getDouble());
+        roundabout.getClock().setNanoTime(nanos);
+        roundabout.setGapWindow(buffer.getInt());
+
+        // Entry metering
+        for (int entry = 1; entry <= entries; entry++) {
+
+            EntryMeter meter = roundabout.getEntryMeter(entry);
+            meter.setMode(MeteringMode.values()[buffer.get()]);
+            long greenMillis = buffer.getLong();
+            long cycleMillis = buffer.getLong();
+            meter.setCycle(greenMillis, cycleMillis, buffer.getLong());
+            int window = buffer.getInt();
+            int threshold = buffer.getInt();
+
+            // Entries without upstream vertices keep their empty window
+            if (window > 0) {
+                meter.setWindow(window, threshold);
+            }
+        }
+
+        // Blocks, before the occupancy so vertices blocked while occupied close once their vehicle leaves
+        for (int i = buffer.getInt(); i > 0; i--) {
+            roundabout.blockVertex(buffer.getInt());
+        }
+        for (int i = buffer.getInt(); i > 0; i--) {
+            roundabout.blockEdge(buffer.getInt(), buffer.getInt());
+        }
+
+        // Vehicles
+        Vehicle[] vehicles = new Vehicle[buffer.getInt()];
+        for (int i = 0; i < vehicles.length; i++) {
+
+            VehicleType type = VehicleType.values()[buffer.get()];
+            int source = buffer.getInt();
+            int destination = buffer.getInt();
+
+            vehicles[i] = type.create(source, destination, roundabout);
+            vehicles[i].readState(buffer);
+            roundabout.register(vehicles[i]);
+        }
+
+        // Entry queues
+        for (int entry = 1; entry <= entries; entry++) {
+
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                roundabout.getEntryQueue(entry).add(vehicles[buffer.getInt()]);
+            }
+        }
+
+        // Occupancy, listeners see the held nodes as claimed
+        for (int key = 0; key < roundabout.getVertexCount(); key++) {
+
+            int index = buffer.getInt();
+            if (index >= 0) {
+
+                AtomicReference node = roundabout.getVertex(key).getValue();
+                node.set(vehicles[index]);
+                roundabout.notifyClaim(vehicles[index], key);
+            }
+        }
+
+        // Resume the run
+        for (Vehicle vehicle : vehicles) {
+            launcher.accept(vehicle);
+        }
+
+        return roundabout;
+    }
+}
@@ -0,0 +1,570 @@
+package domain.roundabout;
+
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+import graphv2.Graph;
+import graphv2.Vertex;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Routes vehicles through the roundabout using live congestion.
+ * <p>
+ * Every vertex has a cost made of its recent occupancy and the recent time vehicles
+ * spent waiting to move into it. The cost to reach every exit from every vertex is
+ * kept in an immutable snapshot. A vehicle finding the snapshot stale hands its
+ * refresh to a background thread and carries on with the current one, so choosing
+ * the next hop at a decision point only reads the snapshot and looks at the vertex
+ * successors, and no vehicle step ever pays for the distance recomputation.
+ * <p>
+ * Blocked vertices cost infinity and blocked edges are never followed, so routes go
+ * around them. Blocking or unblocking recomputes the snapshot at once.
+ */
+public class CongestionRouter {
+
+    /**
+     * Smoothing factor of the occupancy and wait time moving averages.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * Cost changes below this value do not trigger a distance recomputation.
+     */
+    private static final double TOLERANCE = 0.05;
+
+    /**
+     * The thread refreshing the snapshots of every router.
+     */
+    private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor(runnable -> {
+
+        Thread thread = new Thread(runnable, "congestion-router");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    /**
+     * Weight of the vertex occupancy on the vertex cost.
+     */
+    private final double occupancyWeight;
+
+    /**
+     * Weight of the vertex wait time, in seconds, on the vertex cost.
+     */
+    private final double waitWeight;
+
+    /**
+     * Minimum number of simulated milliseconds between snapshot refreshes.
+     */
+    private final long refreshInterval;
+
+    /**
+     * The simulation clock refreshes are timed with.
+     */
+    private final SimulationClock clock;
+
+    /**
+     * The graph vertices indexed by key.
+     */
+    private final Vertex<AtomicReference>[] vertices;
+
+    /**
+     * The successors of each vertex.
+     */
+    private final int[][] successors;
+
+    /**
+     * The predecessors of each vertex.
+     */
+    private final int[][] predecessors;
+
+    /**
+     * Whether a vertex links two lanes, so a vehicle can change its route there.
+     */
+    private final boolean[] decisionPoints;
+
+    /**
+     * The exit vertex keys.
+     */
+    private final int[] exits;
+
+    /**
+     * The index of each vertex in the exits array, -1 if the vertex is not an exit.
+     */
+    private final int[] exitIndex;
+
+    /**
+     * Milliseconds vehicles waited on each vertex since the last refresh.
+     */
+    private final AtomicLongArray pendingWait;
+
+    /**
+     * Occupancy moving average, only touched while holding the refresh lock.
+     */
+    private final double[] occupancyAverage;
+
+    /**
+     * Wait time moving average, only touched while holding the refresh lock.
+     */
+    private final double[] waitAverage;
+
+    /**
+     * Whether each vertex is blocked, only touched while holding the refresh lock.
+     */
+    private final boolean[] blocked;
+
+    /**
+     * Guards snapshot refreshes, vehicles never wait on it.
+     */
+    private final ReentrantLock refreshLock;
+
+    /**
+     * Whether a refresh was handed to the background thread and has not finished yet.
+     */
+    private final AtomicBoolean refreshing;
+
+    /**
+     * The current routing snapshot.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * When the snapshot was last refreshed in simulated milliseconds.
+     */
+    private volatile long lastRefresh;
+
+    /**
+     * An immutable view of vertex costs and the cost to reach every exit.
+     */
+    private static class Snapshot {
+
+        /**
+         * The cost to move into each vertex.
+         */
+        final double[] cost;
+
+        /**
+         * The blocked edges as the source key shifted left 32 bits or'ed with the target key.
+         */
+        final Set<Long> blockedEdges;
+
+        /**
+         * The cost to reach each exit from each vertex, indexed as [exit index][vertex key].
+         */
+        final double[][] distance;
+
+        /**
+         * Snapshot constructor.
+         *
+         * @param cost         The cost to move into each vertex.
+         * @param blockedEdges The blocked edges.
+         * @param distance     The cost to reach each exit from each vertex.
+         */
+        Snapshot(double[] cost, Set<Long> blockedEdges, double[][] distance) {
+
+            this.cost = cost;
+            this.blockedEdges = blockedEdges;
+            this.distance = distance;
+        }
+
+        /**
+         * Returns whether an edge may be followed.
+         *
+         * @param from The source vertex key.
+         * @param to   The target vertex key.
+         * @return boolean
+         */
+        boolean isOpen(int from, int to) {
+            return this.blockedEdges.isEmpty() || !this.blockedEdges.contains(((long) from << 32) | to);
+        }
+    }
+
+    /**
+     * CongestionRouter constructor.
+     *
+     * @param graph           The roundabout graph, vertex keys must be contiguous from 0.
+     * @param exitNodes       The roundabout exit vertices.
+     * @param occupancyWeight Weight of the vertex occupancy on the vertex cost.
+     * @param waitWeight      Weight of the vertex wait time, in seconds, on the vertex cost.
+     * @param refreshInterval Minimum number of simulated milliseconds between snapshot refreshes.
+     * @param clock           The simulation clock refreshes are timed with.
+     */
+    @SuppressWarnings("unchecked")
+    public CongestionRouter(Graph<AtomicReference> graph, Collection<Vertex<AtomicReference>> exitNodes,
+                            double occupancyWeight, double waitWeight, long refreshInterval, SimulationClock clock) {
+
+        int n = graph.getVertices().size();
+
+        this.occupancyWeight = occupancyWeight;
+        this.waitWeight = waitWeight;
+        this.refreshInterval = refreshInterval;
+        this.clock = clock;
+        this.vertices = new Vertex[n];
+        this.successors = new int[n][];
+        this.predecessors = new int[n][];
+        this.decisionPoints = new boolean[n];
+        this.pendingWait = new AtomicLongArray(n);
+        this.occupancyAverage = new double[n];
+        this.waitAverage = new double[n];
+        this.blocked = new boolean[n];
+        this.refreshLock = new ReentrantLock();
+        this.refreshing = new AtomicBoolean();
+
+        // Index vertices and successors
+        int[] inDegree = new int[n];
+        for (Vertex<AtomicReference> vertex : graph.getVertices()) {
+
+            List<Vertex<AtomicReference>> adjacent = graph.getAdjacentVertices(vertex.getKey());
+
+            this.vertices[vertex.getKey()] = vertex;
+            this.successors[vertex.getKey()] = new int[adjacent.size()];
+
+            for (int i = 0; i < adjacent.size(); i++) {
+
+                Vertex<AtomicReference> next = adjacent.get(i);
+                this.successors[vertex.getKey()][i] = next.getKey();
+                inDegree[next.getKey()]++;
+
+                // Lane links connect vertices of two different lanes
+                if (vertex.getWeight() >= 0 && next.getWeight() >= 0 && next.getWeight() != vertex.getWeight()) {
+                    this.decisionPoints[vertex.getKey()] = true;
+                }
+            }
+        }
+
+        // Index predecessors
+        for (int i = 0; i < n; i++) {
+            this.predecessors[i] = new int[inDegree[i]];
+        }
+        for (int i = 0; i < n; i++) {
+
+            for (int next : this.successors[i]) {
+                this.predecessors[next][--inDegree[next]] = i;
+            }
+        }
+
+        // Index exits
+        this.exits = exitNodes.stream().mapToInt(Vertex::getKey).toArray();
+        this.exitIndex = new int[n];
+        Arrays.fill(this.exitIndex, -1);
+        for (int i = 0; i < this.exits.length; i++) {
+            this.exitIndex[this.exits[i]] = i;
+        }
+
+        // Initial snapshot with free flow costs
+        double[] cost = new double[n];
+        Arrays.fill(cost, 1);
+        this.snapshot = new Snapshot(cost, Collections.emptySet(), this.distances(cost, Collections.emptySet()));
+        this.lastRefresh = clock.millis();
+    }
+
+    /**
+     * Returns whether a vehicle can change its route at the given vertex.
+     *
+     * @param key The vertex key.
+     * @return boolean
+     */
+    public boolean isDecisionPoint(int key) {
+
+        return this.decisionPoints[key];
+    }
+
+    /**
+     * Records the time a vehicle waited to move into a vertex.
+     *
+     * @param key    The vertex key.
+     * @param millis The number of milliseconds waited.
+     */
+    public void recordWait(int key, long millis) {
+
+        this.pendingWait.addAndGet(key, millis);
+    }
+
+    /**
+     * Blocks or unblocks a vertex and recomputes the snapshot.
+     *
+     * @param key     The vertex key.
+     * @param blocked Whether the vertex is blocked.
+     */
+    public void setBlocked(int key, boolean blocked) {
+
+        this.refreshLock.lock();
+        try {
+
+            this.blocked[key] = blocked;
+
+            Snapshot current = this.snapshot;
+            double[] cost = current.cost.clone();
+            cost[key] = this.cost(key);
+            this.snapshot = new Snapshot(cost, current.blockedEdges, this.distances(cost, current.blockedEdges));
+
+        } finally {
+            this.refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks or unblocks an edge and recomputes the snapshot.
+     *
+     * @param from    The source vertex key.
+     * @param to      The target vertex key.
+     * @param blocked Whether the edge is blocked.
+     */
+    public void setBlocked(int from, int to, boolean blocked) {
+
+        this.refreshLock.lock();
+        try {
+
+            Snapshot current = this.snapshot;
+            Set<Long> edges = new HashSet<>(current.blockedEdges);
+            if (blocked) {
+                edges.add(((long) from << 32) | to);
+            } else {
+                edges.remove(((long) from << 32) | to);
+            }
+
+            edges = Collections.unmodifiableSet(edges);
+            this.snapshot = new Snapshot(current.cost, edges, this.distances(current.cost, edges));
+
+        } finally {
+            this.refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the cost to move into a vertex from its moving averages, only called while holding the refresh lock.
+     *
+     * @param key The vertex key.
+     * @return double Infinity when the vertex is blocked.
+     */
+    private double cost(int key) {
+
+        if (this.blocked[key]) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return 1 + this.occupancyWeight * this.occupancyAverage[key] + this.waitWeight * this.waitAverage[key];
+    }
+
+    /**
+     * Computes the cost to reach every exit from every vertex with a reverse Dijkstra per exit.
+     *
+     * @param cost         The cost to move into each vertex.
+     * @param blockedEdges The blocked edges, never relaxed.
+     * @return double[][]
+     */
+    private double[][] distances(double[] cost, Set<Long> blockedEdges) {
+
+        double[][] distance = new double[this.exits.length][];
+
+        for (int e = 0; e < this.exits.length; e++) {
+
+            double[] dist = new double[cost.length];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            dist[this.exits[e]] = 0;
+
+            // Queue holds {distance, key} pairs
+            PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+            queue.add(new double[]{0, this.exits[e]});
+
+            while (!queue.isEmpty()) {
+
+                double[] head = queue.poll();
+                int key = (int) head[1];
+
+                // Skip stale queue entries
+                if (head[0] > dist[key]) {
+                    continue;
+                }
+
+                // Relax every edge into the current vertex
+                for (int previous : this.predecessors[key]) {
+
+                    if (!blockedEdges.isEmpty() && blockedEdges.contains(((long) previous << 32) | key)) {
+                        continue;
+                    }
+
+                    double candidate = dist[key] + cost[key];
+                    if (candidate < dist[previous]) {
+
+                        dist[previous] = candidate;
+                        queue.add(new double[]{candidate, previous});
+                    }
+                }
+            }
+
+            distance[e] = dist;
+        }
+
+        return distance;
+    }
+
+    /**
+     * Hands a refresh to the background thread if the snapshot is older than the refresh interval
+     * and no refresh is pending.
+     */
+    private void refreshIfStale() {
+
+        if (this.clock.millis() - this.lastRefresh < this.refreshInterval
+                || !this.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        REFRESHER.execute(this::refresh);
+    }
+
+    /**
+     * Folds live congestion into the vertex costs and publishes a new snapshot, on the background thread.
+     * Distances are only recomputed when some vertex cost changed noticeably.
+     */
+    private void refresh() {
+
+        this.refreshLock.lock();
+        try {
+
+            Snapshot current = this.snapshot;
+            double[] cost = new double[this.vertices.length];
+            boolean changed = false;
+
+            for (int i = 0; i < cost.length; i++) {
+
+                // Fold live occupancy and waits into the moving averages
+                double occupied = this.vertices[i].getValue().get() instanceof Vehicle ? 1 : 0;
+                double waited = this.pendingWait.getAndSet(i, 0) / 1000.0;
+                this.occupancyAverage[i] += SMOOTHING * (occupied - this.occupancyAverage[i]);
+                this.waitAverage[i] += SMOOTHING * (waited - this.waitAverage[i]);
+
+                cost[i] = this.cost(i);
+                changed |= cost[i] != current.cost[i] && !(Math.abs(cost[i] - current.cost[i]) <= TOLERANCE);
+            }
+
+            // Keep the previous snapshot when congestion did not change
+            if (changed) {
+                this.snapshot = new Snapshot(cost, current.blockedEdges, this.distances(cost, current.blockedEdges));
+            }
+
+            this.lastRefresh = this.clock.millis();
+
+        } finally {
+            this.refreshLock.unlock();
+            this.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Returns the cheapest successor of a vertex on the way to an exit.
+     *
+     * @param snapshot  The routing snapshot.
+     * @param key       The vertex key.
+     * @param exit      The exit index.
+     * @param outerOnly Whether only outer lane vertices may be used.
+     * @return int The successor key or -1 if the exit is unreachable.
+     */
+    private int nextHop(Snapshot snapshot, int key, int exit, boolean outerOnly) {
+
+        int best = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+
+        for (int next : this.successors[key]) {
+
+            if (outerOnly && this.vertices[next].getWeight() > 0 || !snapshot.isOpen(key, next)) {
+                continue;
+            }
+
+            double candidate = snapshot.cost[next] + snapshot.distance[exit][next];
+            if (candidate < bestCost) {
+
+                best = next;
+                bestCost = candidate;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns the cheapest route from a vertex to an exit under current congestion.
+     * The route is followed twice on the same snapshot, once to count its vertices and
+     * once to write them, so only the returned array is allocated.
+     *
+     * @param from      The starting vertex key, not part of the route.
+     * @param exitKey   The exit vertex key.
+     * @param outerOnly Whether only outer lane vertices may be used.
+     * @return int[] The route vertex keys or null if the exit is unreachable.
+     */
+    public int[] route(int from, int exitKey, boolean outerOnly) {
+
+        this.refreshIfStale();
+
+        Snapshot current = this.snapshot;
+        int exit = this.exitIndex[exitKey];
+
+        // Count the route vertices, a simple route never visits a vertex twice
+        int length = 0;
+        for (int key = from; key != exitKey; length++) {
+
+            key = this.nextHop(current, key, exit, outerOnly);
+            if (key < 0 || length == this.vertices.length) {
+                return null;
+            }
+        }
+
+        int[] route = new int[length];
+        int key = from;
+        for (int i = 0; i < length; i++) {
+
+            key = this.nextHop(current, key, exit, outerOnly);
+            route[i] = key;
+        }
+
+        return route;
+    }
+
+    /**
+     * Writes the cheapest route from a vertex to an exit under current congestion.
+     * The starting vertex is not written.
+     *
+     * @param from      The starting vertex key.
+     * @param exitKey   The exit vertex key.
+     * @param outerOnly Whether only outer lane vertices may be used.
+     * @param buffer    The buffer to write the route vertex keys to.
+     * @param offset    The buffer index to start writing at.
+     * @return int The buffer index after the route or -1 if the exit is unreachable.
+     */
+    public int route(int from, int exitKey, boolean outerOnly, int[] buffer, int offset) {
+
+        this.refreshIfStale();
+
+        Snapshot current = this.snapshot;
+        int exit = this.exitIndex[exitKey];
+        int index = offset;
+
+        // Follow the cheapest successor until the exit is reached
+        int key = from;
+        while (key != exitKey) {
+
+            key = this.nextHop(current, key, exit, outerOnly);
+
+            // Exit unreachable or route does not fit
+            if (key < 0 || index == buffer.length) {
+                return -1;
+            }
+
+            buffer[index++] = key;
+        }
+
+        return index;
+    }
+}
@@ -0,0 +1,282 @@
+package domain.roundabout;
+
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+import graphv2.Graph;
+import graphv2.Vertex;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A metering signal gating the head of one entry queue.
+ * <p>
+ * Under heavy demand unmetered entries flood the ring until vehicles on it can no longer
+ * reach their exits. A fixed cycle meter lets the queue head enter only during the green
+ * part of its cycle, with the cycles of the entries staggered so they take turns. An
+ * adaptive meter looks at a window of outer lane vertices upstream of the entry and holds
+ * the queue while too many of them are occupied, leaving room for the traffic already
+ * on the ring. The signal is only read by the queue head, never by vehicles on the ring.
+ * <p>
+ * The same upstream index gives the free gap queue heads accept or reject before entering.
+ */
+public class EntryMeter {
+
+    /**
+     * Milliseconds an adaptive meter holds the queue head before it is checked again.
+     */
+    private static final long ADAPTIVE_RECHECK = 100;
+
+    /**
+     * The simulated time the cycles run on.
+     */
+    private final SimulationClock clock;
+
+    /**
+     * The outer lane vertices upstream of the entry, closest first.
+     */
+    private final Vertex<AtomicReference>[] upstream;
+
+    /**
+     * The number of times the queue head was held.
+     */
+    private final LongAdder held;
+
+    /**
+     * How the meter decides.
+     */
+    private volatile MeteringMode mode;
+
+    /**
+     * The green and whole cycle durations and the cycle offset in milliseconds.
+     */
+    private volatile long greenMillis;
+    private volatile long cycleMillis;
+    private volatile long offsetMillis;
+
+    /**
+     * The number of upstream vertices an adaptive meter looks at.
+     */
+    private volatile int window;
+
+    /**
+     * The number of occupied upstream vertices from which an adaptive meter turns red.
+     */
+    private volatile int threshold;
+
+    /**
+     * EntryMeter constructor, the meter starts off.
+     *
+     * @param graph     The roundabout graph.
+     * @param entryKey  The entry vertex key.
+     * @param clock     The simulated time the cycles run on.
+     * @param maxWindow The maximum number of upstream vertices to index.
+     */
+    @SuppressWarnings("unchecked")
+    public EntryMeter(Graph<AtomicReference> graph, int entryKey, SimulationClock clock, int maxWindow) {
+
+        this.clock = clock;
+        this.held = new LongAdder();
+        this.mode = MeteringMode.OFF;
+        this.greenMillis = 2000;
+        this.cycleMillis = 4000;
+        this.threshold = 2;
+
+        // Walk the outer lane backwards from the vertex the entry merges into
+        Vertex<AtomicReference>[] upstream = new Vertex[maxWindow];
+        Vertex<AtomicReference> merge = graph.getAdjacentVertices(entryKey).get(0);
+        Vertex<AtomicReference> current = merge;
+        int count = 0;
+        while (count < maxWindow) {
+
+            Vertex<AtomicReference> previous = null;
+            for (Vertex<AtomicReference> candidate : graph.getPredecessors(current.getKey())) {
+
+                if (candidate.getWeight() == merge.getWeight()) {
+                    previous = candidate;
+                }
+            }
+
+            // Stop once the whole lane is indexed
+            if (previous == null || previous == merge) {
+                break;
+            }
+
+            upstream[count++] = previous;
+            current = previous;
+        }
+
+        this.upstream = Arrays.copyOf(upstream, count);
+        this.window = Math.min(4, count);
+    }
+
+    /**
+     * Returns how the meter decides.
+     *
+     * @return MeteringMode
+     */
+    public MeteringMode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Sets how the meter decides.
+     *
+     * @param mode The metering mode.
+     */
+    public void setMode(MeteringMode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Returns the green part of the fixed cycle.
+     *
+     * @return long The number of milliseconds.
+     */
+    public long getGreenMillis() {
+        return this.greenMillis;
+    }
+
+    /**
+     * Returns the whole fixed cycle.
+     *
+     * @return long The number of milliseconds.
+     */
+    public long getCycleMillis() {
+        return this.cycleMillis;
+    }
+
+    /**
+     * Returns when the fixed cycle of this entry starts.
+     *
+     * @return long The number of milliseconds.
+     */
+    public long getOffsetMillis() {
+        return this.offsetMillis;
+    }
+
+    /**
+     * Returns the number of upstream vertices an adaptive meter looks at.
+     *
+     * @return int
+     */
+    public int getWindow() {
+        return this.window;
+    }
+
+    /**
+     * Returns the number of occupied upstream vertices from which an adaptive meter turns red.
+     *
+     * @return int
+     */
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    /**
+     * Sets the fixed cycle timing plan.
+     *
+     * @param greenMillis  The green part of the cycle in milliseconds.
+     * @param cycleMillis  The whole cycle in milliseconds.
+     * @param offsetMillis When the cycle of this entry starts, so entries can be staggered.
+     */
+    public void setCycle(long greenMillis, long cycleMillis, long offsetMillis) {
+
+        if (greenMillis <= 0 || cycleMillis < greenMillis) {
+            throw new IllegalArgumentException("The green time must be positive and fit in the cycle!");
+        }
+
+        this.greenMillis = greenMillis;
+        this.cycleMillis = cycleMillis;
+        this.offsetMillis = offsetMillis;
+    }
+
+    /**
+     * Sets the adaptive plan.
+     *
+     * @param window    The number of upstream outer lane vertices to look at.
+     * @param threshold The number of occupied upstream vertices from which the meter turns red.
+     */
+    public void setWindow(int window, int threshold) {
+
+        if (window < 1 || window > this.upstream.length || threshold < 1) {
+            throw new IllegalArgumentException("Window must be 1 to " + this.upstream.length
+                    + " vertices and the threshold positive!");
+        }
+
+        this.window = window;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the free gap on the outer lane ahead of the entry.
+     *
+     * @param limit The maximum number of upstream vertices to look at.
+     * @return int The number of free upstream vertices before the closest vehicle, up to the limit.
+     */
+    public int getGap(int limit) {
+
+        int end = Math.min(limit, this.upstream.length);
+        for (int i = 0; i < end; i++) {
+
+            if (this.upstream[i].getValue().get() instanceof Vehicle) {
+                return i;
+            }
+        }
+
+        return end;
+    }
+
+    /**
+     * Returns the number of times the queue head was held.
+     *
+     * @return long
+     */
+    public long getHeld() {
+        return this.held.sum();
+    }
+
+    /**
+     * Returns how long the head of the entry queue must wait before trying to enter.
+     *
+     * @return long 0 when the signal is green, otherwise the number of milliseconds to wait.
+     */
+    public long holdMillis() {
+
+        long wait;
+        switch (this.mode) {
+
+            case FIXED_CYCLE:
+
+                // Wait for the start of the next green part
+                long cycle = this.cycleMillis;
+                long inCycle = Math.floorMod(this.clock.millis() - this.offsetMillis, cycle);
+                wait = inCycle < this.greenMillis ? 0 : cycle - inCycle;
+                break;
+
+            case ADAPTIVE:
+
+                // Count the occupied vertices in the window, stop at the threshold
+                int occupied = 0;
+                int window = this.window;
+                for (int i = 0; i < window && occupied < this.threshold; i++) {
+
+                    if (this.upstream[i].getValue().get() instanceof Vehicle) {
+                        occupied++;
+                    }
+                }
+                wait = occupied < this.threshold ? 0 : ADAPTIVE_RECHECK;
+                break;
+
+            default:
+                return 0;
+        }
+
+        if (wait > 0) {
+            this.held.increment();
+        }
+
+        return wait;
+    }
+}
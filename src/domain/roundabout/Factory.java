@@ -253,7 +253,10 @@ public class Factory {
             }
         }
 
-        return new Roundabout(graph, entryNodes, exitNodes, lanePerimeterMap);
+        Roundabout roundabout = new Roundabout(graph, entryNodes, exitNodes, lanePerimeterMap);
+        roundabout.setBuildParameters(radius, LANE_WIDTH, VERTEX_PER_METER_RATIO);
+
+        return roundabout;
     }
 
     /**
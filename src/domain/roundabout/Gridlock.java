@@ -0,0 +1,71 @@
+package domain.roundabout;
+
+import domain.vehicles.Vehicle;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A cycle of vehicles each waiting for the node held by the next one.
+ */
+public class Gridlock {
+
+    /**
+     * The vehicles in the cycle.
+     */
+    private final List<Vehicle> vehicles;
+
+    /**
+     * The vertex keys each vehicle is waiting for, in the same order as the vehicles.
+     */
+    private final List<Integer> vertexKeys;
+
+    /**
+     * Gridlock constructor.
+     *
+     * @param vehicles   The vehicles in the cycle.
+     * @param vertexKeys The vertex keys each vehicle is waiting for.
+     */
+    public Gridlock(List<Vehicle> vehicles, List<Integer> vertexKeys) {
+
+        this.vehicles = Collections.unmodifiableList(vehicles);
+        this.vertexKeys = Collections.unmodifiableList(vertexKeys);
+    }
+
+    /**
+     * Returns the vehicles in the cycle.
+     *
+     * @return List<Vehicle>
+     */
+    public List<Vehicle> getVehicles() {
+        return this.vehicles;
+    }
+
+    /**
+     * Returns the vertex keys each vehicle is waiting for.
+     *
+     * @return List<Integer>
+     */
+    public List<Integer> getVertexKeys() {
+        return this.vertexKeys;
+    }
+
+    /**
+     * Returns the gridlock string representation.
+     *
+     * @return String
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder builder = new StringBuilder("Gridlock: ");
+        for (int i = 0; i < this.vehicles.size(); i++) {
+
+            Vehicle vehicle = this.vehicles.get(i);
+            builder.append(vehicle.getLabel()).append(" [").append(vehicle.getId()).append("] -> (")
+                    .append(this.vertexKeys.get(i)).append(") -> ");
+        }
+
+        return builder.append(this.vehicles.get(0).getLabel()).toString();
+    }
+}
@@ -0,0 +1,311 @@
+package domain.roundabout;
+
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+import graphv2.Vertex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Background detector of gridlocks inside a roundabout.
+ * <p>
+ * Periodically builds a wait-for graph from the vertices occupancy where each vehicle
+ * points to the vehicle holding the node it wants to move to. As a vehicle waits for
+ * at most one node, the graph has at most one outgoing edge per vehicle and cycles are
+ * found in a single linear pass. Occupancy is read without locking, so a cycle is only
+ * reported once it is seen in two consecutive scans.
+ */
+public class GridlockDetector implements Runnable {
+
+    /**
+     * Wall-clock nanoseconds between checks for a stop or a new roundabout while waiting.
+     */
+    private static final long POLL_NANOS = 100_000_000;
+
+    /**
+     * Supplies the roundabout to scan.
+     */
+    private final Supplier<Roundabout> roundabout;
+
+    /**
+     * The number of simulated milliseconds between scans.
+     */
+    private final long interval;
+
+    /**
+     * What to do once a gridlock is found.
+     */
+    private final GridlockPolicy policy;
+
+    /**
+     * Receives every detected gridlock.
+     */
+    private final Consumer<Gridlock> listener;
+
+    /**
+     * The cycles seen in the previous scan, each as the vehicle ids starting at the lowest one.
+     */
+    private Set<List<Long>> previousCycles;
+
+    /**
+     * The number of gridlocks detected so far.
+     */
+    private final AtomicLong detected;
+
+    /**
+     * Whether the detector is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * GridlockDetector constructor, gridlocks are printed to the standard output.
+     *
+     * @param roundabout The roundabout to scan.
+     * @param interval   The number of simulated milliseconds between scans.
+     * @param policy     What to do once a gridlock is found.
+     */
+    public GridlockDetector(Roundabout roundabout, long interval, GridlockPolicy policy) {
+
+        this(() -> roundabout, interval, policy, System.out::println);
+    }
+
+    /**
+     * GridlockDetector constructor.
+     *
+     * @param roundabout Supplies the roundabout to scan, so the detector follows roundabout rebuilds.
+     * @param interval   The number of simulated milliseconds between scans.
+     * @param policy     What to do once a gridlock is found.
+     * @param listener   Receives every detected gridlock.
+     */
+    public GridlockDetector(Supplier<Roundabout> roundabout, long interval, GridlockPolicy policy,
+                            Consumer<Gridlock> listener) {
+
+        this.roundabout = roundabout;
+        this.interval = interval;
+        this.policy = policy;
+        this.listener = listener;
+        this.previousCycles = Collections.emptySet();
+        this.detected = new AtomicLong();
+        this.running = true;
+    }
+
+    /**
+     * Returns the number of gridlocks detected so far.
+     *
+     * @return long
+     */
+    public long getDetectedCount() {
+
+        return this.detected.get();
+    }
+
+    /**
+     * Stops the detector.
+     */
+    public void stop() {
+
+        this.running = false;
+    }
+
+    /**
+     * Builds the wait-for graph of the roundabout.
+     *
+     * @param roundabout The roundabout to scan.
+     * @return Map<Vehicle, Vehicle> Each waiting vehicle mapped to the vehicle holding the node it wants.
+     */
+    private Map<Vehicle, Vehicle> waitForGraph(Roundabout roundabout) {
+
+        Map<Vehicle, Vehicle> waitsFor = new IdentityHashMap<>();
+
+        for (Vertex<AtomicReference> vertex : roundabout.getVertices()) {
+
+            // Only vehicles holding a node can be part of a gridlock
+            Object holder = vertex.getValue().get();
+            if (!(holder instanceof Vehicle)) {
+                continue;
+            }
+
+            // Ignore vehicles which are moving
+            Vehicle vehicle = (Vehicle) holder;
+            Vertex<AtomicReference> target = vehicle.getWaitingFor();
+            if (target == null) {
+                continue;
+            }
+
+            // Add edge to the vehicle holding the wanted node
+            Object next = target.getValue().get();
+            if (next instanceof Vehicle && next != vehicle) {
+                waitsFor.put(vehicle, (Vehicle) next);
+            }
+        }
+
+        return waitsFor;
+    }
+
+    /**
+     * Finds all the cycles in the wait-for graph.
+     *
+     * @param waitsFor The wait-for graph.
+     * @return List<List<Vehicle>> The cycles.
+     */
+    private List<List<Vehicle>> findCycles(Map<Vehicle, Vehicle> waitsFor) {
+
+        List<List<Vehicle>> cycles = new ArrayList<>();
+
+        // Walk index of each visited vehicle, walks never revisit finished vehicles
+        Map<Vehicle, Integer> walkOf = new IdentityHashMap<>();
+        int walk = 0;
+
+        for (Vehicle start : waitsFor.keySet()) {
+
+            if (walkOf.containsKey(start)) {
+                continue;
+            }
+
+            // Follow the single outgoing edge until a dead end or a visited vehicle
+            List<Vehicle> path = new ArrayList<>();
+            Vehicle current = start;
+            while (current != null && !walkOf.containsKey(current)) {
+
+                walkOf.put(current, walk);
+                path.add(current);
+                current = waitsFor.get(current);
+            }
+
+            // A cycle exists when the walk ran into itself
+            if (current != null && walkOf.get(current) == walk) {
+                cycles.add(new ArrayList<>(path.subList(path.indexOf(current), path.size())));
+            }
+
+            walk++;
+        }
+
+        return cycles;
+    }
+
+    /**
+     * Returns the cycle signature, the vehicle ids rotated to start at the lowest id.
+     *
+     * @param cycle The cycle.
+     * @return List<Long>
+     */
+    private List<Long> signature(List<Vehicle> cycle) {
+
+        int lowest = 0;
+        for (int i = 1; i < cycle.size(); i++) {
+
+            if (cycle.get(i).getId() < cycle.get(lowest).getId()) {
+                lowest = i;
+            }
+        }
+
+        List<Long> ids = new ArrayList<>(cycle.size());
+        for (int i = 0; i < cycle.size(); i++) {
+            ids.add(cycle.get((lowest + i) % cycle.size()).getId());
+        }
+
+        return ids;
+    }
+
+    /**
+     * Scans the roundabout once, reporting and resolving stable gridlocks.
+     *
+     * @return List<Gridlock> The gridlocks found in this scan.
+     */
+    public List<Gridlock> scan() {
+
+        Roundabout current = this.roundabout.get();
+        List<Gridlock> gridlocks = new ArrayList<>();
+
+        if (current == null) {
+            return gridlocks;
+        }
+
+        Set<List<Long>> cycles = new HashSet<>();
+        for (List<Vehicle> cycle : this.findCycles(this.waitForGraph(current))) {
+
+            List<Long> signature = this.signature(cycle);
+            cycles.add(signature);
+
+            // Only report cycles which survived a whole scan interval
+            if (!this.previousCycles.contains(signature)) {
+                continue;
+            }
+
+            // Record the vertex each vehicle is waiting for
+            List<Integer> vertexKeys = new ArrayList<>(cycle.size());
+            for (Vehicle vehicle : cycle) {
+
+                Vertex<AtomicReference> target = vehicle.getWaitingFor();
+                vertexKeys.add(target != null ? target.getKey() : -1);
+            }
+
+            gridlocks.add(new Gridlock(cycle, vertexKeys));
+        }
+
+        this.previousCycles = cycles;
+
+        for (Gridlock gridlock : gridlocks) {
+
+            this.detected.incrementAndGet();
+            this.listener.accept(gridlock);
+
+            // Break the cycle by removing its first vehicle
+            if (this.policy == GridlockPolicy.EVICT_ONE) {
+
+                gridlock.getVehicles().get(0).evict();
+                this.previousCycles.remove(this.signature(gridlock.getVehicles()));
+            }
+        }
+
+        return gridlocks;
+    }
+
+    /**
+     * Scans the roundabout periodically until stopped.
+     */
+    @Override
+    public void run() {
+
+        while (this.running) {
+
+            this.scan();
+
+            try {
+                this.awaitInterval();
+            } catch (InterruptedException e) {
+                this.running = false;
+            }
+        }
+    }
+
+    /**
+     * Waits for the scan interval on the clock of the scanned roundabout.
+     * Returns early once stopped or when the roundabout is replaced, even on a paused clock.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void awaitInterval() throws InterruptedException {
+
+        Roundabout roundabout = this.roundabout.get();
+        if (roundabout == null) {
+
+            Thread.sleep(this.interval);
+            return;
+        }
+
+        SimulationClock clock = roundabout.getClock();
+        long deadline = clock.nanoTime() + this.interval * 1_000_000;
+        while (this.running && this.roundabout.get() == roundabout && !clock.awaitNanos(deadline, POLL_NANOS)) ;
+    }
+}
@@ -0,0 +1,17 @@
+package domain.roundabout;
+
+/**
+ * What the gridlock detector does once a gridlock is found.
+ */
+public enum GridlockPolicy {
+
+    /**
+     * Only report the gridlock.
+     */
+    REPORT,
+
+    /**
+     * Report the gridlock and evict one vehicle of the cycle so the others can move.
+     */
+    EVICT_ONE
+}
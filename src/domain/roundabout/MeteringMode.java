@@ -0,0 +1,22 @@
+package domain.roundabout;
+
+/**
+ * How an entry meter decides when the head of its entry queue may enter the roundabout.
+ */
+public enum MeteringMode {
+
+    /**
+     * Always green, vehicles enter as soon as the first route node is free.
+     */
+    OFF,
+
+    /**
+     * Green for a fixed part of every cycle, entries are staggered over the cycle.
+     */
+    FIXED_CYCLE,
+
+    /**
+     * Green while the outer lane upstream of the entry is not busier than a threshold.
+     */
+    ADAPTIVE
+}
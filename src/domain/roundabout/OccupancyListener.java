@@ -0,0 +1,64 @@
+package domain.roundabout;
+
+import domain.vehicles.Vehicle;
+
+/**
+ * Receives roundabout occupancy changes from the vehicle movement path.
+ * <p>
+ * Callbacks run on the moving vehicle thread so implementations must be cheap and never block.
+ */
+public interface OccupancyListener {
+
+    /**
+     * Called after a vehicle claimed a vertex, either to move into it or to reserve it.
+     *
+     * @param vehicle The vehicle.
+     * @param key     The vertex key.
+     */
+    default void onClaim(Vehicle vehicle, int key) {
+    }
+
+    /**
+     * Called after a vehicle released a vertex.
+     *
+     * @param vehicle The vehicle.
+     * @param key     The vertex key.
+     */
+    default void onRelease(Vehicle vehicle, int key) {
+    }
+
+    /**
+     * Called when a vehicle failed to claim the vertex ahead and waits before trying again.
+     *
+     * @param vehicle The vehicle.
+     * @param key     The vertex key.
+     * @param millis  The number of milliseconds the vehicle waits.
+     */
+    default void onBlocked(Vehicle vehicle, int key, long millis) {
+    }
+
+    /**
+     * Called after a vehicle joined an entry queue.
+     *
+     * @param vehicle The vehicle.
+     * @param entry   The entry.
+     */
+    default void onQueue(Vehicle vehicle, int entry) {
+    }
+
+    /**
+     * Called when a vehicle moved into its first route node, before it leaves its entry queue.
+     *
+     * @param vehicle The vehicle.
+     */
+    default void onEnter(Vehicle vehicle) {
+    }
+
+    /**
+     * Called after a vehicle left the roundabout, through its exit or evicted.
+     *
+     * @param vehicle The vehicle.
+     */
+    default void onExit(Vehicle vehicle) {
+    }
+}
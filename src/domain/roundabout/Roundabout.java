@@ -1,16 +1,28 @@
 package domain.roundabout;
 
 
+import domain.metrics.OccupancyHeatmap;
+import domain.metrics.SimulationMetrics;
+import domain.scheduling.SimulationClock;
 import domain.vehicles.Vehicle;
 import graphv2.Graph;
 import graphv2.GraphAlgorithms;
 import graphv2.Vertex;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -19,6 +31,17 @@ import java.util.stream.Collectors;
  */
 public class Roundabout {
 
+    /**
+     * Held by blocked vertices so no vehicle can claim them.
+     */
+    private static final Object BLOCKED = new Object() {
+
+        @Override
+        public String toString() {
+            return "blocked";
+        }
+    };
+
     /**
      * The roundabout graph
      */
@@ -39,6 +62,128 @@ public class Roundabout {
      */
     private Map<Integer, Double> lanePerimeterMap;
 
+    /**
+     * The roundabout movement counters.
+     */
+    private final SimulationMetrics metrics;
+
+    /**
+     * The maximum number of nodes a vehicle reserves ahead of its position, 0 disables reservations.
+     */
+    private volatile int lookAhead;
+
+    /**
+     * How light vehicles choose their route.
+     */
+    private volatile RoutingMode routingMode;
+
+    /**
+     * The number of alternative routes computed per entry and exit.
+     */
+    private volatile int alternativeRoutes;
+
+    /**
+     * How vehicles are spread across the alternative routes.
+     */
+    private volatile RouteSelectionPolicy routeSelectionPolicy;
+
+    /**
+     * The alternative routes per entry, exit and vehicle weight.
+     */
+    private final Map<Long, List<int[]>> routeCache;
+
+    /**
+     * Round robin route selection counter.
+     */
+    private final AtomicInteger routeCounter;
+
+    /**
+     * The congestion aware router, built when congestion aware routing is first used.
+     */
+    private volatile CongestionRouter router;
+
+    /**
+     * The graph vertices indexed by key.
+     */
+    private final Vertex<AtomicReference>[] vertexArray;
+
+    /**
+     * The occupancy listeners, replaced as a whole when a listener is added or removed.
+     */
+    private volatile OccupancyListener[] listeners;
+
+    /**
+     * The admission controller in front of the entry queues.
+     */
+    private final AdmissionController admission;
+
+    /**
+     * The per vertex occupied and blocked time accumulators.
+     */
+    private final OccupancyHeatmap heatmap;
+
+    /**
+     * The simulated time every vehicle delay runs on.
+     */
+    private final SimulationClock clock;
+
+    /**
+     * The outer lane radius, lane width and vertex per meter ratio the roundabout was built with.
+     */
+    private double radius;
+    private double laneWidth;
+    private double vertexPerMeterRatio;
+
+    /**
+     * The vehicles which started stepping and have not exited yet.
+     */
+    private final Set<Vehicle> vehicles;
+
+    /**
+     * Whether vehicles are held before their next step.
+     */
+    private volatile boolean halted;
+
+    /**
+     * The monitor halted vehicles wait on.
+     */
+    private final Object gate;
+
+    /**
+     * Whether each vertex is blocked, 1 if blocked.
+     */
+    private final AtomicIntegerArray blockedVertices;
+
+    /**
+     * The blocked edges as the source key shifted left 32 bits or'ed with the target key.
+     */
+    private final Set<Long> blockedEdges;
+
+    /**
+     * Incremented on every block or unblock so vehicles notice topology changes with one read.
+     */
+    private final AtomicInteger topologyVersion;
+
+    /**
+     * The number of priority vehicles which announced each vertex.
+     */
+    private final AtomicIntegerArray announced;
+
+    /**
+     * The number of announced vertices over every priority vehicle, 0 when none is active.
+     */
+    private final AtomicInteger announcements;
+
+    /**
+     * The metering signal of each entry, indexed by entry - 1.
+     */
+    private final EntryMeter[] entryMeters;
+
+    /**
+     * The number of upstream outer lane vertices queue heads check for a gap, 0 disables gap acceptance.
+     */
+    private volatile int gapWindow;
+
     /**
      * Roundabout constructor.
      *
@@ -47,6 +192,7 @@ public class Roundabout {
      * @param exitNodes        The exit nodes map.
      * @param lanePerimeterMap The mapping of the lanes to its perimeter.
      */
+    @SuppressWarnings("unchecked")
     public Roundabout(Graph<AtomicReference> graph,
                       Map<Integer, Vertex<AtomicReference>> entryNodes,
                       Map<Integer, Vertex<AtomicReference>> exitNodes,
@@ -56,142 +202,1097 @@ public class Roundabout {
         this.exitNodes = exitNodes;
         this.graph = graph;
         this.lanePerimeterMap = lanePerimeterMap;
+        this.metrics = new SimulationMetrics();
+        this.lookAhead = 0;
+        this.routingMode = RoutingMode.STATIC;
+        this.alternativeRoutes = 1;
+        this.routeSelectionPolicy = RouteSelectionPolicy.SHORTEST;
+        this.routeCache = new ConcurrentHashMap<>();
+        this.routeCounter = new AtomicInteger();
+
+        this.clock = new SimulationClock();
+        this.vehicles = ConcurrentHashMap.newKeySet();
+        this.gate = new Object();
+        this.blockedVertices = new AtomicIntegerArray(graph.getVertices().size());
+        this.blockedEdges = ConcurrentHashMap.newKeySet();
+        this.topologyVersion = new AtomicInteger();
+        this.announced = new AtomicIntegerArray(graph.getVertices().size());
+        this.announcements = new AtomicInteger();
+        this.listeners = new OccupancyListener[0];
+        this.admission = new AdmissionController(this, Vehicle::start);
+        this.heatmap = new OccupancyHeatmap(graph.getVertices().size(), 10, this.clock);
+
+        // Index vertices by key so lookups do not box keys
+        this.vertexArray = new Vertex[graph.getVertices().size()];
+        for (Vertex<AtomicReference> vertex : graph.getVertices()) {
+            this.vertexArray[vertex.getKey()] = vertex;
+        }
+
+        // Every entry gets a meter, off until metering is enabled
+        this.entryMeters = new EntryMeter[entryNodes.size()];
+        for (int entry = 1; entry <= entryNodes.size(); entry++) {
+            this.entryMeters[entry - 1] = new EntryMeter(graph, entryNodes.get(entry).getKey(), this.clock, 16);
+        }
+        this.setMeteringCycle(2000, 4000);
+
+        // Accumulate occupancy history from the start
+        this.addOccupancyListener(this.heatmap);
     }
 
     /**
-     * Returns the vertices in the graph.
+     * Adds an occupancy listener.
      *
-     * @return Collection<Vertex < AtomicReference>>
+     * @param listener The listener.
      */
-    public Collection<Vertex<AtomicReference>> getVertices() {
+    public synchronized void addOccupancyListener(OccupancyListener listener) {
 
-        return this.graph.getVertices();
+        OccupancyListener[] updated = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        updated[this.listeners.length] = listener;
+        this.listeners = updated;
     }
 
     /**
-     * Returns the vertices from lane 'i' in the graph.
+     * Removes an occupancy listener.
      *
-     * @return Collection<Vertex<AtomicReference>>
+     * @param listener The listener.
      */
-    public Collection<Vertex<AtomicReference>> getVertices(int i) {
+    public synchronized void removeOccupancyListener(OccupancyListener listener) {
 
-        // If outer lane then add entries and exits
-        if (i == 0) {
-            return this.graph.getVertices().stream().filter(v -> v.getWeight() <= i).collect(Collectors.toList());
+        this.listeners = Arrays.stream(this.listeners).filter(l -> l != listener).toArray(OccupancyListener[]::new);
+    }
+
+    /**
+     * Notifies the listeners that a vehicle claimed a vertex.
+     *
+     * @param vehicle The vehicle.
+     * @param key     The vertex key.
+     */
+    public void notifyClaim(Vehicle vehicle, int key) {
+
+        for (OccupancyListener listener : this.listeners) {
+            listener.onClaim(vehicle, key);
         }
+    }
 
-        return this.graph.getVertices().stream().filter(v -> v.getWeight() == i).collect(Collectors.toList());
+    /**
+     * Frees a vertex held by a vehicle and notifies the listeners.
+     * <p>
+     * A vertex blocked while occupied is handed straight from its vehicle to the block,
+     * so no other vehicle can claim it in between.
+     *
+     * @param vehicle The vehicle holding the vertex.
+     * @param key     The vertex key.
+     */
+    public void release(Vehicle vehicle, int key) {
+
+        AtomicReference node = this.vertexArray[key].getValue();
+        Object handover = this.blockedVertices.get(key) != 0 ? BLOCKED : null;
+        while (!node.compareAndSet(vehicle, handover)) ;
+
+        // A block or unblock racing the handover failed its own swap while the vehicle held the vertex
+        while (true) {
+
+            Object value = node.get();
+            boolean blocked = this.blockedVertices.get(key) != 0;
+
+            if (blocked && value == null) {
+                node.compareAndSet(null, BLOCKED);
+            } else if (!blocked && value == BLOCKED) {
+                node.compareAndSet(BLOCKED, null);
+            } else {
+                break;
+            }
+        }
+
+        this.notifyRelease(vehicle, key);
     }
 
     /**
-     * Returns the perimeters for each lane.
+     * Notifies the listeners that a vehicle released a vertex.
      *
-     * @return Map<Integer, Double>
+     * @param vehicle The vehicle.
+     * @param key     The vertex key.
      */
-    public Map<Integer, Double> getLanePerimeterMap() {
-        return this.lanePerimeterMap;
+    public void notifyRelease(Vehicle vehicle, int key) {
+
+        for (OccupancyListener listener : this.listeners) {
+            listener.onRelease(vehicle, key);
+        }
     }
 
     /**
-     * Returns the number of entries in the roundabout.
+     * Notifies the listeners that a vehicle is entering the roundabout from its entry queue.
      *
-     * @return int The number of entries in the roundabout.
+     * @param vehicle The vehicle.
      */
-    public int getEntriesNumber() {
-        return this.entryNodes.size();
+    public void notifyEnter(Vehicle vehicle) {
+
+        for (OccupancyListener listener : this.listeners) {
+            listener.onEnter(vehicle);
+        }
     }
 
     /**
-     * Returns the number of exits in the roundabout.
+     * Notifies the listeners that a vehicle left the roundabout.
      *
-     * @return int The number of exits in the roundabout.
+     * @param vehicle The vehicle.
      */
-    public int getExitsNumber() {
-        return this.exitNodes.size();
+    public void notifyExit(Vehicle vehicle) {
+
+        for (OccupancyListener listener : this.listeners) {
+            listener.onExit(vehicle);
+        }
     }
 
     /**
-     * Check if vertex is entry.
+     * Returns the admission controller vehicles should be spawned through.
      *
-     * @param vertex The vertex to check.
-     * @return boolean
+     * @return AdmissionController
      */
-    public boolean isEntry(Vertex<AtomicReference> vertex) {
+    public AdmissionController getAdmission() {
+        return this.admission;
+    }
 
-        return this.entryNodes.containsValue(vertex);
+    /**
+     * Returns the per vertex occupied and blocked time accumulators.
+     *
+     * @return OccupancyHeatmap
+     */
+    public OccupancyHeatmap getHeatmap() {
+        return this.heatmap;
     }
 
     /**
-     * Check if vertex is exit.
+     * Returns the simulated time every vehicle delay runs on.
      *
-     * @param vertex The vertex to check.
-     * @return boolean
+     * @return SimulationClock
      */
-    public boolean isExit(Vertex<AtomicReference> vertex) {
+    public SimulationClock getClock() {
+        return this.clock;
+    }
 
-        return this.exitNodes.containsValue(vertex);
+    /**
+     * Returns the outer lane radius the roundabout was built with.
+     *
+     * @return double
+     */
+    public double getRadius() {
+        return this.radius;
     }
 
     /**
-     * Queues the vehicle on a certain entry.
+     * Returns the lane width the roundabout was built with.
      *
-     * @param v     The vehicle to be queued.
-     * @param entry The entry in which to be queued.
-     * @return ConcurrentLinkedQueue<Vehicle> The queue.
+     * @return double
      */
-    public ConcurrentLinkedQueue<Vehicle> queueOnEntry(Vehicle v, int entry) {
+    public double getLaneWidth() {
+        return this.laneWidth;
+    }
 
-        // Get the entry queue
-        ConcurrentLinkedQueue<Vehicle> queue = (ConcurrentLinkedQueue<Vehicle>) this.entryNodes.get(entry).getValue().get();
+    /**
+     * Returns the vertex per meter ratio the roundabout was built with.
+     *
+     * @return double
+     */
+    public double getVertexPerMeterRatio() {
+        return this.vertexPerMeterRatio;
+    }
 
-        // Add vehicle to the entry queue
-        queue.add(v);
+    /**
+     * Returns the number of lanes.
+     *
+     * @return int
+     */
+    public int getLanesNumber() {
+        return this.lanePerimeterMap.size();
+    }
 
-        // Return the queue reference so the vehicle can peek
-        return queue;
+    /**
+     * Returns the roundabout graph.
+     *
+     * @return Graph<AtomicReference>
+     */
+    Graph<AtomicReference> getGraph() {
+        return this.graph;
     }
 
     /**
-     * Returns a list with the vehicle route inside the roundabout graph.
+     * Returns the entry vertex of an entry.
      *
-     * @param entry The entry the vehicle is coming from.
-     * @param exit  The exit the vehicle is taking.
-     * @return Deque<AtomicReference>
+     * @param entry The entry.
+     * @return Vertex<AtomicReference>
+     */
+    Vertex<AtomicReference> getEntryNode(int entry) {
+        return this.entryNodes.get(entry);
+    }
+
+    /**
+     * Returns the exit vertex of an exit.
+     *
+     * @param exit The exit.
+     * @return Vertex<AtomicReference>
+     */
+    Vertex<AtomicReference> getExitNode(int exit) {
+        return this.exitNodes.get(exit);
+    }
+
+    /**
+     * Records the parameters the roundabout was built with.
+     *
+     * @param radius              The outer lane radius.
+     * @param laneWidth           The lane width.
+     * @param vertexPerMeterRatio The vertex per meter ratio.
      */
-    public Deque<Vertex<AtomicReference>> getVehicleRoute(int entry, int exit, boolean heavy) {
+    void setBuildParameters(double radius, double laneWidth, double vertexPerMeterRatio) {
 
-        // Get source and destination vertex
-        int origin = this.entryNodes.get(entry).getKey();
-        int destination = this.exitNodes.get(exit).getKey();
+        this.radius = radius;
+        this.laneWidth = laneWidth;
+        this.vertexPerMeterRatio = vertexPerMeterRatio;
+    }
 
-        // Get all paths from source to destination but remove entry node
-        Deque<Vertex> route;
-        if (heavy) {
+    /**
+     * Registers a vehicle before its first step.
+     *
+     * @param vehicle The vehicle.
+     */
+    public void register(Vehicle vehicle) {
+        this.vehicles.add(vehicle);
+    }
 
-            route = GraphAlgorithms.getOuterLanePath(this.graph, origin, destination);
+    /**
+     * Unregisters a vehicle after its last step.
+     *
+     * @param vehicle The vehicle.
+     */
+    public void unregister(Vehicle vehicle) {
+        this.vehicles.remove(vehicle);
+    }
 
-        } else {
-            route = GraphAlgorithms.getShortestPath(this.graph, origin, destination);
+    /**
+     * Returns the vehicles which started stepping and have not exited yet.
+     *
+     * @return Set<Vehicle> A live read only view.
+     */
+    public Set<Vehicle> getVehicles() {
+        return Collections.unmodifiableSet(this.vehicles);
+    }
+
+    /**
+     * Returns whether vehicles are held before their next step.
+     *
+     * @return boolean
+     */
+    public boolean isHalted() {
+        return this.halted;
+    }
+
+    /**
+     * Holds every vehicle before its next step and waits for the steps in progress,
+     * so the roundabout state stays consistent until {@link #resume()}.
+     * Steps take microseconds, so this returns almost immediately.
+     */
+    public void halt() {
+
+        this.halted = true;
+
+        // A vehicle registers and flags its step before checking the halt, so none is missed
+        for (Vehicle vehicle : this.vehicles) {
+
+            while (vehicle.isStepping()) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Lets halted vehicles step again.
+     */
+    public void resume() {
+
+        synchronized (this.gate) {
+
+            this.halted = false;
+            this.gate.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the roundabout is no longer halted.
+     * An interrupt is kept for the vehicle to handle on its next wait.
+     */
+    public void awaitResume() {
+
+        boolean interrupted = false;
+
+        synchronized (this.gate) {
+
+            while (this.halted) {
+
+                try {
+                    this.gate.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
-        route.removeFirst();
+    }
+
+    /**
+     * Returns the vertex with the given key.
+     *
+     * @param key The vertex key.
+     * @return Vertex<AtomicReference>
+     */
+    public Vertex<AtomicReference> getVertex(int key) {
+        return this.vertexArray[key];
+    }
+
+    /**
+     * Returns the number of vertices in the graph.
+     *
+     * @return int
+     */
+    public int getVertexCount() {
+        return this.vertexArray.length;
+    }
+
+    /**
+     * Returns the roundabout movement counters.
+     *
+     * @return SimulationMetrics
+     */
+    public SimulationMetrics getMetrics() {
+        return this.metrics;
+    }
 
-        // Convert into Deque of Vertex value
-        Deque<Vertex<AtomicReference>> shortestRoute = new ArrayDeque<>();
+    /**
+     * Returns the maximum number of nodes a vehicle reserves ahead of its position.
+     *
+     * @return int The number of nodes, 0 when reservations are disabled.
+     */
+    public int getLookAhead() {
+        return this.lookAhead;
+    }
 
-        // Add all elements from first route
-        StringBuilder builder = new StringBuilder().append("Vehicle Route: Start -> ");
-        for (Vertex vertex : route) {
+    /**
+     * Sets the maximum number of nodes a vehicle reserves ahead of its position.
+     *
+     * @param lookAhead The number of nodes, 0 disables reservations.
+     */
+    public void setLookAhead(int lookAhead) {
 
-            shortestRoute.add(vertex);
-            builder.append("(").append(vertex.getKey()).append(") -> ");
+        if (lookAhead < 0) {
+            throw new IllegalArgumentException("Look-ahead must not be negative!");
         }
 
-        builder.append("End");
+        this.lookAhead = lookAhead;
+    }
 
-        System.out.println(builder.toString());
+    /**
+     * Returns the vertices in the graph.
+     *
+     * @return Collection<Vertex < AtomicReference>>
+     */
+    public Collection<Vertex<AtomicReference>> getVertices() {
 
-        // Return first path
-        return shortestRoute;
+        return this.graph.getVertices();
+    }
+
+    /**
+     * Returns the vertices from lane 'i' in the graph.
+     *
+     * @return Collection<Vertex<AtomicReference>>
+     */
+    public Collection<Vertex<AtomicReference>> getVertices(int i) {
+
+        // If outer lane then add entries and exits
+        if (i == 0) {
+            return this.graph.getVertices().stream().filter(v -> v.getWeight() <= i).collect(Collectors.toList());
+        }
+
+        return this.graph.getVertices().stream().filter(v -> v.getWeight() == i).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the perimeters for each lane.
+     *
+     * @return Map<Integer, Double>
+     */
+    public Map<Integer, Double> getLanePerimeterMap() {
+        return this.lanePerimeterMap;
+    }
+
+    /**
+     * Returns the number of entries in the roundabout.
+     *
+     * @return int The number of entries in the roundabout.
+     */
+    public int getEntriesNumber() {
+        return this.entryNodes.size();
+    }
+
+    /**
+     * Returns the number of exits in the roundabout.
+     *
+     * @return int The number of exits in the roundabout.
+     */
+    public int getExitsNumber() {
+        return this.exitNodes.size();
+    }
+
+    /**
+     * Returns how light vehicles choose their route.
+     *
+     * @return RoutingMode
+     */
+    public RoutingMode getRoutingMode() {
+        return this.routingMode;
+    }
+
+    /**
+     * Sets how light vehicles choose their route.
+     *
+     * @param routingMode The routing mode.
+     */
+    public void setRoutingMode(RoutingMode routingMode) {
+
+        // Start collecting waits as soon as routes depend on them
+        if (routingMode == RoutingMode.CONGESTION_AWARE) {
+            this.getRouter();
+        }
+
+        this.routingMode = routingMode;
+    }
+
+    /**
+     * Returns the congestion aware router, building it on first use.
+     * Building indexes the whole graph, so large loaded graphs start without it.
+     *
+     * @return CongestionRouter
+     */
+    private CongestionRouter getRouter() {
+
+        CongestionRouter router = this.router;
+        if (router == null) {
+
+            synchronized (this) {
+
+                router = this.router;
+                if (router == null) {
+
+                    router = new CongestionRouter(this.graph, this.exitNodes.values(), 2, 1, 250, this.clock);
+                    this.router = router;
+                }
+            }
+        }
+
+        return router;
+    }
+
+    /**
+     * Returns the number of alternative routes computed per entry and exit.
+     *
+     * @return int
+     */
+    public int getAlternativeRoutes() {
+        return this.alternativeRoutes;
+    }
+
+    /**
+     * Sets the number of alternative routes computed per entry and exit.
+     * Already computed routes are discarded.
+     *
+     * @param alternativeRoutes The number of routes.
+     */
+    public void setAlternativeRoutes(int alternativeRoutes) {
+
+        if (alternativeRoutes < 1) {
+            throw new IllegalArgumentException("At least one route is required!");
+        }
+
+        this.alternativeRoutes = alternativeRoutes;
+        this.routeCache.clear();
+    }
+
+    /**
+     * Returns how vehicles are spread across the alternative routes.
+     *
+     * @return RouteSelectionPolicy
+     */
+    public RouteSelectionPolicy getRouteSelectionPolicy() {
+        return this.routeSelectionPolicy;
+    }
+
+    /**
+     * Sets how vehicles are spread across the alternative routes.
+     *
+     * @param routeSelectionPolicy The route selection policy.
+     */
+    public void setRouteSelectionPolicy(RouteSelectionPolicy routeSelectionPolicy) {
+        this.routeSelectionPolicy = routeSelectionPolicy;
+    }
+
+    /**
+     * Records the time a vehicle waited to move into a vertex.
+     *
+     * @param vehicle The waiting vehicle.
+     * @param vertex  The vertex the vehicle waited for.
+     * @param millis  The number of milliseconds waited.
+     */
+    public void recordWait(Vehicle vehicle, Vertex<AtomicReference> vertex, long millis) {
+
+        // Waits only matter once congestion aware routing is used
+        CongestionRouter router = this.router;
+        if (router != null) {
+            router.recordWait(vertex.getKey(), millis);
+        }
+
+        for (OccupancyListener listener : this.listeners) {
+            listener.onBlocked(vehicle, vertex.getKey(), millis);
+        }
+    }
+
+    /**
+     * Returns whether a vehicle standing on the given vertex may re-plan its route.
+     *
+     * @param key The vertex key.
+     * @return boolean True on lane links when congestion aware routing is enabled.
+     */
+    public boolean isDecisionPoint(int key) {
+
+        return this.routingMode == RoutingMode.CONGESTION_AWARE && this.getRouter().isDecisionPoint(key);
+    }
+
+    /**
+     * Writes the cheapest route under current congestion from a vertex to an exit.
+     * The starting vertex is not written.
+     *
+     * @param from   The vertex key the vehicle stands on.
+     * @param exit   The exit the vehicle is taking.
+     * @param buffer The buffer to write the route to.
+     * @param offset The buffer index to start writing at.
+     * @return int The buffer index after the route or -1 if the exit is unreachable.
+     */
+    public int replanVehicleRoute(int from, int exit, int[] buffer, int offset) {
+
+        return this.getRouter().route(from, this.exitNodes.get(exit).getKey(), false, buffer, offset);
+    }
+
+    /**
+     * Writes the cheapest route around blocked vertices and edges from a vertex to an exit.
+     * The starting vertex is not written.
+     *
+     * @param from      The vertex key the vehicle stands on or enters from.
+     * @param exit      The exit the vehicle is taking.
+     * @param outerOnly Whether the vehicle is bound to the outer lane.
+     * @param buffer    The buffer to write the route to.
+     * @param offset    The buffer index to start writing at.
+     * @return int The buffer index after the route or -1 if the exit is unreachable.
+     */
+    public int detourVehicleRoute(int from, int exit, boolean outerOnly, int[] buffer, int offset) {
+
+        return this.getRouter().route(from, this.exitNodes.get(exit).getKey(), outerOnly, buffer, offset);
+    }
+
+    /**
+     * Returns the topology version, which changes whenever a vertex or edge is blocked or unblocked.
+     *
+     * @return int
+     */
+    public int getTopologyVersion() {
+        return this.topologyVersion.get();
+    }
+
+    /**
+     * Returns whether a vertex is blocked.
+     *
+     * @param key The vertex key.
+     * @return boolean
+     */
+    public boolean isBlocked(int key) {
+        return this.blockedVertices.get(key) != 0;
+    }
+
+    /**
+     * Returns whether an edge is blocked.
+     *
+     * @param from The source vertex key.
+     * @param to   The target vertex key.
+     * @return boolean
+     */
+    public boolean isBlocked(int from, int to) {
+        return !this.blockedEdges.isEmpty() && this.blockedEdges.contains(((long) from << 32) | to);
+    }
+
+    /**
+     * Returns the blocked edges.
+     *
+     * @return Set<Long> The edges as the source key shifted left 32 bits or'ed with the target key.
+     */
+    public Set<Long> getBlockedEdges() {
+        return Collections.unmodifiableSet(this.blockedEdges);
+    }
+
+    /**
+     * Returns whether a route crosses a blocked vertex or edge.
+     *
+     * @param from  The vertex key the route starts after.
+     * @param route The route vertex keys.
+     * @param start The index of the first route vertex to check.
+     * @param end   The index after the last route vertex to check.
+     * @return boolean
+     */
+    public boolean isBlocked(int from, int[] route, int start, int end) {
+
+        int previous = from;
+        for (int i = start; i < end; i++) {
+
+            if (this.isBlocked(route[i]) || this.isBlocked(previous, route[i])) {
+                return true;
+            }
+            previous = route[i];
+        }
+
+        return false;
+    }
+
+    /**
+     * Blocks a vertex, as a lane closure or an incident would.
+     * <p>
+     * The vertex closes at once when free, otherwise as soon as its vehicle leaves it.
+     * Cached routes through it are discarded and vehicles whose remaining route crosses
+     * it re-plan on their next step, while the simulation keeps running. Detours are
+     * planned by the congestion aware router, which is built on the first block.
+     *
+     * @param key The vertex key.
+     */
+    public synchronized void blockVertex(int key) {
+
+        Vertex<AtomicReference> vertex = this.vertexArray[key];
+        if (vertex.getWeight() == -1) {
+            throw new IllegalArgumentException("Entry vertices cannot be blocked!");
+        }
+        if (this.blockedVertices.getAndSet(key, 1) != 0) {
+            return;
+        }
+
+        // Close it now if free, otherwise the release of its holder does
+        vertex.getValue().compareAndSet(null, BLOCKED);
+
+        this.getRouter().setBlocked(key, true);
+        this.topologyChanged(true);
+    }
+
+    /**
+     * Unblocks a vertex. Every cached route is discarded so routes may use it again.
+     *
+     * @param key The vertex key.
+     */
+    public synchronized void unblockVertex(int key) {
+
+        if (this.blockedVertices.getAndSet(key, 0) == 0) {
+            return;
+        }
+
+        this.vertexArray[key].getValue().compareAndSet(BLOCKED, null);
+
+        this.getRouter().setBlocked(key, false);
+        this.topologyChanged(false);
+    }
+
+    /**
+     * Blocks an edge, so vehicles can no longer move from one vertex to the other.
+     * Cached routes along it are discarded and affected vehicles re-plan on their next step.
+     *
+     * @param from The source vertex key.
+     * @param to   The target vertex key.
+     */
+    public synchronized void blockEdge(int from, int to) {
+
+        if (!this.graph.getPredecessors(to).contains(this.vertexArray[from])) {
+            throw new IllegalArgumentException("No edge from " + from + " to " + to + "!");
+        }
+        if (!this.blockedEdges.add(((long) from << 32) | to)) {
+            return;
+        }
+
+        this.getRouter().setBlocked(from, to, true);
+        this.topologyChanged(true);
+    }
+
+    /**
+     * Unblocks an edge. Every cached route is discarded so routes may use it again.
+     *
+     * @param from The source vertex key.
+     * @param to   The target vertex key.
+     */
+    public synchronized void unblockEdge(int from, int to) {
+
+        if (!this.blockedEdges.remove(((long) from << 32) | to)) {
+            return;
+        }
+
+        this.getRouter().setBlocked(from, to, false);
+        this.topologyChanged(false);
+    }
+
+    /**
+     * Discards the cached routes a block or unblock affects and publishes a new topology version.
+     *
+     * @param blocked Whether something was blocked, only the routes crossing blocks are then discarded.
+     */
+    private void topologyChanged(boolean blocked) {
+
+        if (blocked) {
+            this.routeCache.entrySet().removeIf(e -> e.getValue().stream().anyMatch(route -> this.isBlocked(
+                    this.entryNodes.get((int) (e.getKey() >>> 32)).getKey(), route, 0, route.length)));
+        } else {
+            this.routeCache.clear();
+        }
+
+        this.topologyVersion.incrementAndGet();
+    }
+
+    /**
+     * Announces the route nodes of a priority vehicle, regular vehicles give way to them.
+     *
+     * @param route The route vertex keys.
+     * @param from  The index of the first announced node.
+     * @param to    The index after the last announced node.
+     */
+    public void announce(int[] route, int from, int to) {
+
+        for (int i = from; i < to; i++) {
+            this.announced.incrementAndGet(route[i]);
+        }
+
+        // Published after the nodes, so an active priority always has its nodes visible
+        this.announcements.addAndGet(to - from);
+    }
+
+    /**
+     * Withdraws route nodes announced by {@link #announce(int[], int, int)}.
+     *
+     * @param route The route vertex keys.
+     * @param from  The index of the first withdrawn node.
+     * @param to    The index after the last withdrawn node.
+     */
+    public void withdraw(int[] route, int from, int to) {
+
+        this.announcements.addAndGet(from - to);
+
+        for (int i = from; i < to; i++) {
+            this.announced.decrementAndGet(route[i]);
+        }
+    }
+
+    /**
+     * Returns whether a priority vehicle has announced its route.
+     * A single read, so regular traffic pays nothing more while no priority vehicle is active.
+     *
+     * @return boolean
+     */
+    public boolean hasPriority() {
+        return this.announcements.get() > 0;
+    }
+
+    /**
+     * Returns whether a vertex is on an announced priority route.
+     *
+     * @param key The vertex key.
+     * @return boolean
+     */
+    public boolean isAnnounced(int key) {
+        return this.announced.get(key) > 0;
+    }
+
+    /**
+     * Returns the metering signal of an entry.
+     *
+     * @param entry The entry.
+     * @return EntryMeter
+     */
+    public EntryMeter getEntryMeter(int entry) {
+        return this.entryMeters[entry - 1];
+    }
+
+    /**
+     * Sets how every entry is metered.
+     *
+     * @param mode The metering mode.
+     */
+    public void setMetering(MeteringMode mode) {
+
+        for (EntryMeter meter : this.entryMeters) {
+            meter.setMode(mode);
+        }
+    }
+
+    /**
+     * Sets the fixed cycle timing plan of every entry, with the cycles staggered evenly over the entries.
+     *
+     * @param greenMillis The green part of the cycle in milliseconds.
+     * @param cycleMillis The whole cycle in milliseconds.
+     */
+    public void setMeteringCycle(long greenMillis, long cycleMillis) {
+
+        for (int i = 0; i < this.entryMeters.length; i++) {
+            this.entryMeters[i].setCycle(greenMillis, cycleMillis, cycleMillis * i / this.entryMeters.length);
+        }
+    }
+
+    /**
+     * Sets the adaptive plan of every entry.
+     *
+     * @param window    The number of upstream outer lane vertices to look at.
+     * @param threshold The number of occupied upstream vertices from which an entry turns red.
+     */
+    public void setMeteringWindow(int window, int threshold) {
+
+        for (EntryMeter meter : this.entryMeters) {
+            meter.setWindow(window, threshold);
+        }
+    }
+
+    /**
+     * Returns the number of upstream outer lane vertices queue heads check for a gap before entering.
+     *
+     * @return int 0 when gap acceptance is disabled.
+     */
+    public int getGapWindow() {
+        return this.gapWindow;
+    }
+
+    /**
+     * Sets the number of upstream outer lane vertices queue heads check for a gap before entering.
+     * Each vehicle accepts the gap it needs, bounded by the window.
+     *
+     * @param gapWindow The number of vertices, 0 disables gap acceptance.
+     */
+    public void setGapWindow(int gapWindow) {
+
+        if (gapWindow < 0) {
+            throw new IllegalArgumentException("Gap window can not be negative!");
+        }
+
+        this.gapWindow = gapWindow;
+    }
+
+    /**
+     * Returns the vertex key of an entry.
+     *
+     * @param entry The entry.
+     * @return int
+     */
+    public int getEntryKey(int entry) {
+        return this.entryNodes.get(entry).getKey();
+    }
+
+    /**
+     * Returns the vertex key of an exit.
+     *
+     * @param exit The exit.
+     * @return int
+     */
+    public int getExitKey(int exit) {
+        return this.exitNodes.get(exit).getKey();
+    }
+
+    /**
+     * Returns the vertices a vertex leads to.
+     *
+     * @param key The vertex key.
+     * @return List<Vertex<AtomicReference>>
+     */
+    public List<Vertex<AtomicReference>> getAdjacentVertices(int key) {
+        return this.graph.getAdjacentVertices(key);
+    }
+
+    /**
+     * Check if vertex is entry.
+     *
+     * @param vertex The vertex to check.
+     * @return boolean
+     */
+    public boolean isEntry(Vertex<AtomicReference> vertex) {
+
+        return this.entryNodes.containsValue(vertex);
+    }
+
+    /**
+     * Check if vertex is exit.
+     *
+     * @param vertex The vertex to check.
+     * @return boolean
+     */
+    public boolean isExit(Vertex<AtomicReference> vertex) {
+
+        return this.exitNodes.containsValue(vertex);
+    }
+
+    /**
+     * Returns the vehicle queue of a certain entry.
+     *
+     * @param entry The entry.
+     * @return ConcurrentLinkedQueue<Vehicle> The queue.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLinkedQueue<Vehicle> getEntryQueue(int entry) {
+
+        return (ConcurrentLinkedQueue<Vehicle>) this.entryNodes.get(entry).getValue().get();
+    }
+
+    /**
+     * Queues the vehicle on a certain entry.
+     *
+     * @param v     The vehicle to be queued.
+     * @param entry The entry in which to be queued.
+     * @return ConcurrentLinkedQueue<Vehicle> The queue.
+     */
+    public ConcurrentLinkedQueue<Vehicle> queueOnEntry(Vehicle v, int entry) {
+
+        // Get the entry queue
+        ConcurrentLinkedQueue<Vehicle> queue = this.getEntryQueue(entry);
+
+        // Add vehicle to the entry queue
+        queue.add(v);
+
+        // Notify listeners
+        for (OccupancyListener listener : this.listeners) {
+            listener.onQueue(v, entry);
+        }
+
+        // Return the queue reference so the vehicle can peek
+        return queue;
+    }
+
+    /**
+     * Returns the vehicle route inside the roundabout graph as vertex keys.
+     * Static routes are shared between vehicles and must not be modified.
+     *
+     * @param entry The entry the vehicle is coming from.
+     * @param exit  The exit the vehicle is taking.
+     * @param heavy Whether the vehicle is bound to the outer lane.
+     * @return int[]
+     */
+    public int[] getVehicleRoute(int entry, int exit, boolean heavy) {
+
+        // Congestion aware route for light vehicles
+        if (!heavy && this.routingMode == RoutingMode.CONGESTION_AWARE) {
+
+            int[] route = this.getRouter().route(this.entryNodes.get(entry).getKey(), this.exitNodes.get(exit).getKey(), false);
+
+            if (route != null) {
+                return route;
+            }
+        }
+
+        // Pick one of the cached alternative routes
+        return this.selectRoute(this.getAlternativeRoutes(entry, exit, heavy));
+    }
+
+    /**
+     * Returns the alternative routes from an entry to an exit as vertex keys, shortest first.
+     * Routes are computed once per entry, exit and vehicle weight and then cached.
+     * Routes crossing blocked vertices or edges are left out, when all of them do the
+     * cheapest route around the blocks is used, and when there is none they are kept
+     * so vehicles wait for the blocks to clear.
+     *
+     * @param entry The entry the vehicle is coming from.
+     * @param exit  The exit the vehicle is taking.
+     * @param heavy Whether the vehicle is bound to the outer lane.
+     * @return List<int[]> The routes without the entry node.
+     */
+    public List<int[]> getAlternativeRoutes(int entry, int exit, boolean heavy) {
+
+        long key = ((long) entry << 32) | ((long) exit << 1) | (heavy ? 1 : 0);
+
+        return this.routeCache.computeIfAbsent(key, k -> {
+
+            // Get source and destination vertex
+            int origin = this.entryNodes.get(entry).getKey();
+            int destination = this.exitNodes.get(exit).getKey();
+
+            List<int[]> routes = new ArrayList<>();
+            for (Deque<Vertex> path : GraphAlgorithms.getKShortestPaths(this.graph, origin, destination,
+                    this.alternativeRoutes, heavy)) {
+
+                // Remove entry node and keep only the keys
+                path.removeFirst();
+                routes.add(path.stream().mapToInt(Vertex::getKey).toArray());
+            }
+
+            // Leave out the routes crossing blocks
+            if (this.topologyVersion.get() != 0) {
+
+                List<int[]> open = routes.stream()
+                        .filter(route -> !this.isBlocked(origin, route, 0, route.length))
+                        .collect(Collectors.toList());
+
+                if (open.isEmpty()) {
+
+                    int[] detour = this.getRouter().route(origin, destination, heavy);
+                    if (detour != null) {
+                        open.add(detour);
+                    }
+                }
+
+                if (!open.isEmpty()) {
+                    routes = open;
+                }
+            }
+
+            return Collections.unmodifiableList(routes);
+        });
+    }
+
+    /**
+     * Picks one of the alternative routes according to the route selection policy.
+     *
+     * @param routes The alternative routes, shortest first.
+     * @return int[]
+     */
+    private int[] selectRoute(List<int[]> routes) {
+
+        switch (this.routeSelectionPolicy) {
+
+            case ROUND_ROBIN:
+                return routes.get(Math.floorMod(this.routeCounter.getAndIncrement(), routes.size()));
+
+            case RANDOM:
+                return routes.get(ThreadLocalRandom.current().nextInt(routes.size()));
+
+            case LEAST_OCCUPIED:
+
+                // Count occupied vertices of each route
+                int[] best = routes.get(0);
+                int bestOccupied = Integer.MAX_VALUE;
+                for (int[] route : routes) {
+
+                    int occupied = 0;
+                    for (int key : route) {
+
+                        if (this.vertexArray[key].getValue().get() instanceof Vehicle) {
+                            occupied++;
+                        }
+                    }
+
+                    if (occupied < bestOccupied) {
+
+                        best = route;
+                        bestOccupied = occupied;
+                    }
+                }
+
+                return best;
+
+            default:
+                return routes.get(0);
+        }
     }
 
     @Override
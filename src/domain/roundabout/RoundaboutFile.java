@@ -0,0 +1,170 @@
+package domain.roundabout;
+
+import domain.vehicles.Vehicle;
+import graphv2.MappedGraph;
+import graphv2.Vertex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Saves a built roundabout to a versioned binary file and loads it back without rebuilding it.
+ * <p>
+ * Loading memory-maps the file and reads the graph in place through a {@link MappedGraph},
+ * so only the vertex objects are created and the adjacency is never copied. The little
+ * endian layout is:
+ * <pre>
+ * header: int magic, short version, short unused, int entries, int exits, int lanes,
+ *         double radius, double lane width, double vertex per meter, int unused
+ * then:   double perimeter per lane, int entry vertex key per entry, int exit vertex key per exit,
+ *         and the graph section described in {@link MappedGraph}
+ * </pre>
+ */
+public final class RoundaboutFile {
+
+    /**
+     * File magic number, "RBGF".
+     */
+    private static final int MAGIC = 0x52424746;
+
+    /**
+     * File format version.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * Header size in bytes, a multiple of 8 so the lane perimeters are aligned.
+     */
+    private static final int HEADER_BYTES = 4 + 2 + 2 + 4 + 4 + 4 + 8 + 8 + 8 + 4;
+
+    /**
+     * Non instantiable.
+     */
+    private RoundaboutFile() {
+    }
+
+    /**
+     * Saves a roundabout.
+     *
+     * @param roundabout The roundabout.
+     * @param file       The file, overwritten.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(Roundabout roundabout, Path file) throws IOException {
+
+        int entries = roundabout.getEntriesNumber();
+        int exits = roundabout.getExitsNumber();
+        int lanes = roundabout.getLanesNumber();
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 8 * lanes + 4 * (entries + exits)
+                + MappedGraph.sectionBytes(roundabout.getGraph())).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Header
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0)
+                .putInt(entries).putInt(exits).putInt(lanes)
+                .putDouble(roundabout.getRadius())
+                .putDouble(roundabout.getLaneWidth())
+                .putDouble(roundabout.getVertexPerMeterRatio())
+                .putInt(0);
+
+        // Lane perimeters, entries and exits
+        for (int lane = 0; lane < lanes; lane++) {
+            buffer.putDouble(roundabout.getLanePerimeterMap().get(lane));
+        }
+        for (int entry = 1; entry <= entries; entry++) {
+            buffer.putInt(roundabout.getEntryNode(entry).getKey());
+        }
+        for (int exit = 1; exit <= exits; exit++) {
+            buffer.putInt(roundabout.getExitNode(exit).getKey());
+        }
+
+        // Graph
+        MappedGraph.write(roundabout.getGraph(), buffer);
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    /**
+     * Loads a roundabout, setting the factory lane width and vertex per meter ratio to the file values.
+     *
+     * @param file The file.
+     * @return Roundabout
+     * @throws IOException If the file cannot be read or is not a roundabout file.
+     */
+    public static Roundabout load(Path file) throws IOException {
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        // Header
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a roundabout file: " + file);
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported roundabout file version " + version);
+        }
+        buffer.getShort();
+        int entries = buffer.getInt();
+        int exits = buffer.getInt();
+        int lanes = buffer.getInt();
+        double radius = buffer.getDouble();
+        double laneWidth = buffer.getDouble();
+        double vertexPerMeterRatio = buffer.getDouble();
+        buffer.getInt();
+
+        // Lane perimeters
+        Map<Integer, Double> lanePerimeterMap = new HashMap<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            lanePerimeterMap.put(lane, buffer.getDouble());
+        }
+
+        int[] entryKeys = new int[entries];
+        int[] exitKeys = new int[exits];
+        for (int i = 0; i < entries; i++) {
+            entryKeys[i] = buffer.getInt();
+        }
+        for (int i = 0; i < exits; i++) {
+            exitKeys[i] = buffer.getInt();
+        }
+
+        // Graph, entries hold their vehicle queue
+        MappedGraph<AtomicReference> graph = new MappedGraph<>(buffer,
+                weight -> new AtomicReference<>(weight == -1 ? new ConcurrentLinkedQueue<Vehicle>() : null));
+
+        Map<Integer, Vertex<AtomicReference>> entryNodes = new HashMap<>();
+        Map<Integer, Vertex<AtomicReference>> exitNodes = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            entryNodes.put(i + 1, graph.getVertex(entryKeys[i]));
+        }
+        for (int i = 0; i < exits; i++) {
+            exitNodes.put(i + 1, graph.getVertex(exitKeys[i]));
+        }
+
+        // Vehicles travel with the global vertex per meter ratio
+        Factory.getInstance().setLaneWidth(laneWidth);
+        Factory.getInstance().setVertexPerMeterRatio(vertexPerMeterRatio);
+
+        Roundabout roundabout = new Roundabout(graph, entryNodes, exitNodes, lanePerimeterMap);
+        roundabout.setBuildParameters(radius, laneWidth, vertexPerMeterRatio);
+
+        return roundabout;
+    }
+}
@@ -0,0 +1,27 @@
+package domain.roundabout;
+
+/**
+ * How spawned vehicles are spread across the alternative routes of their entry and exit.
+ */
+public enum RouteSelectionPolicy {
+
+    /**
+     * Always take the shortest route.
+     */
+    SHORTEST,
+
+    /**
+     * Take each alternative route in turn.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Take an alternative route at random.
+     */
+    RANDOM,
+
+    /**
+     * Take the alternative route with the fewest occupied vertices.
+     */
+    LEAST_OCCUPIED
+}
@@ -0,0 +1,17 @@
+package domain.roundabout;
+
+/**
+ * How light vehicles choose their route through the roundabout.
+ */
+public enum RoutingMode {
+
+    /**
+     * Shortest path computed once when the vehicle arrives.
+     */
+    STATIC,
+
+    /**
+     * Cheapest path under live congestion, re-planned at every lane link.
+     */
+    CONGESTION_AWARE
+}
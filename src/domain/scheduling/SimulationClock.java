@@ -0,0 +1,338 @@
+package domain.scheduling;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulated time which runs at a multiple of wall-clock time and can be paused.
+ * <p>
+ * Every vehicle delay is expressed in simulated milliseconds, the clock turns it into
+ * the matching wall-clock wait. Slowing the clock down shows rare events in detail,
+ * speeding it up runs long scenarios quickly, and neither changes the behaviour classes.
+ * While paused simulated time stands still, and single steps advance it by a fixed
+ * amount so the vehicles due within that window move.
+ * <p>
+ * Reading the time never locks and neither does waiting. Waiting threads park with
+ * nanosecond resolution in a slot of a fixed waiter table, which every clock change
+ * walks to wake them up, so a wait allocates nothing and shares no lock with other waits.
+ */
+public class SimulationClock {
+
+    /**
+     * The slowest supported time scale.
+     */
+    public static final double MIN_SCALE = 0.1;
+
+    /**
+     * The fastest supported time scale.
+     */
+    public static final double MAX_SCALE = 1000;
+
+    /**
+     * The number of threads which can wait in a slot of the waiter table.
+     */
+    private static final int WAITER_SLOTS = 4096;
+
+    /**
+     * Maximum number of wall-clock nanoseconds a thread without a waiter slot parks
+     * before checking the clock again.
+     */
+    private static final long UNREGISTERED_PARK = 1_000_000;
+
+    /**
+     * The clock state since the last change, replaced as a whole.
+     */
+    private volatile Epoch epoch;
+
+    /**
+     * The parked threads which are unparked whenever the epoch changes.
+     */
+    private final AtomicReferenceArray<Thread> waiters = new AtomicReferenceArray<>(WAITER_SLOTS);
+
+    /**
+     * Clock state between two changes.
+     */
+    private static final class Epoch {
+
+        /**
+         * The wall-clock nanoseconds when the epoch started.
+         */
+        final long real;
+
+        /**
+         * The simulated nanoseconds when the epoch started.
+         */
+        final long simulated;
+
+        /**
+         * Simulated nanoseconds per wall-clock nanosecond.
+         */
+        final double scale;
+
+        /**
+         * Whether simulated time stands still.
+         */
+        final boolean paused;
+
+        /**
+         * Epoch constructor.
+         *
+         * @param real      The wall-clock nanoseconds when the epoch started.
+         * @param simulated The simulated nanoseconds when the epoch started.
+         * @param scale     Simulated nanoseconds per wall-clock nanosecond.
+         * @param paused    Whether simulated time stands still.
+         */
+        Epoch(long real, long simulated, double scale, boolean paused) {
+
+            this.real = real;
+            this.simulated = simulated;
+            this.scale = scale;
+            this.paused = paused;
+        }
+
+        /**
+         * Returns the simulated time at a wall-clock time.
+         *
+         * @param now The wall-clock nanoseconds.
+         * @return long
+         */
+        long at(long now) {
+            return this.paused ? this.simulated : this.simulated + (long) ((now - this.real) * this.scale);
+        }
+    }
+
+    /**
+     * SimulationClock constructor, the clock starts running in real time.
+     */
+    public SimulationClock() {
+        this.epoch = new Epoch(System.nanoTime(), 0, 1, false);
+    }
+
+    /**
+     * Returns the simulated time.
+     *
+     * @return long The simulated nanoseconds since the clock was created.
+     */
+    public long nanoTime() {
+        return this.epoch.at(System.nanoTime());
+    }
+
+    /**
+     * Returns the simulated time.
+     *
+     * @return long The simulated milliseconds since the clock was created.
+     */
+    public long millis() {
+        return this.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * Returns the time scale.
+     *
+     * @return double Simulated seconds per wall-clock second.
+     */
+    public double getScale() {
+        return this.epoch.scale;
+    }
+
+    /**
+     * Returns whether the clock is paused.
+     *
+     * @return boolean
+     */
+    public boolean isPaused() {
+        return this.epoch.paused;
+    }
+
+    /**
+     * Sets the time scale, simulated time so far is kept.
+     *
+     * @param scale Simulated seconds per wall-clock second, between {@link #MIN_SCALE} and {@link #MAX_SCALE}.
+     */
+    public synchronized void setScale(double scale) {
+
+        if (!(scale >= MIN_SCALE && scale <= MAX_SCALE)) {
+            throw new IllegalArgumentException("Time scale must be between " + MIN_SCALE + " and " + MAX_SCALE + "!");
+        }
+
+        this.restart(this.epoch.paused, scale, 0);
+    }
+
+    /**
+     * Stops simulated time.
+     */
+    public synchronized void pause() {
+        this.restart(true, this.epoch.scale, 0);
+    }
+
+    /**
+     * Resumes simulated time at the current scale.
+     */
+    public synchronized void resume() {
+        this.restart(false, this.epoch.scale, 0);
+    }
+
+    /**
+     * Advances a paused clock, vehicles due within the step move and stop again.
+     *
+     * @param millis The number of simulated milliseconds to advance.
+     */
+    public synchronized void step(long millis) {
+
+        if (!this.epoch.paused) {
+            throw new IllegalStateException("Clock must be paused to step!");
+        }
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Step must be positive!");
+        }
+
+        this.restart(true, this.epoch.scale, millis * 1_000_000);
+    }
+
+    /**
+     * Moves the simulated time, used when resuming a run from a checkpoint.
+     *
+     * @param nanos The simulated nanoseconds.
+     */
+    public synchronized void setNanoTime(long nanos) {
+
+        this.epoch = new Epoch(System.nanoTime(), nanos, this.epoch.scale, this.epoch.paused);
+        this.wakeUp();
+    }
+
+    /**
+     * Starts a new epoch and wakes every waiting thread to recompute its wait.
+     *
+     * @param paused  Whether simulated time stands still.
+     * @param scale   Simulated nanoseconds per wall-clock nanosecond.
+     * @param advance Simulated nanoseconds to add.
+     */
+    private void restart(boolean paused, double scale, long advance) {
+
+        long now = System.nanoTime();
+
+        this.epoch = new Epoch(now, this.epoch.at(now) + advance, scale, paused);
+        this.wakeUp();
+    }
+
+    /**
+     * Unparks every thread in the waiter table, called after the epoch was replaced.
+     */
+    private void wakeUp() {
+
+        for (int i = 0; i < WAITER_SLOTS; i++) {
+
+            Thread waiter = this.waiters.get(i);
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /**
+     * Puts the current thread in a free slot of the waiter table.
+     *
+     * @param thread The current thread.
+     * @return int The slot index, or -1 when the table is full.
+     */
+    private int register(Thread thread) {
+
+        // Threads start probing at different slots so they rarely collide
+        int start = (System.identityHashCode(thread) & 0x7fffffff) % WAITER_SLOTS;
+
+        for (int i = 0; i < WAITER_SLOTS; i++) {
+
+            int slot = (start + i) % WAITER_SLOTS;
+            if (this.waiters.get(slot) == null && this.waiters.compareAndSet(slot, null, thread)) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Waits until the simulated time reaches a deadline.
+     *
+     * @param deadline The simulated nanoseconds to wait for.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void awaitNanos(long deadline) throws InterruptedException {
+        this.awaitNanos(deadline, Long.MAX_VALUE);
+    }
+
+    /**
+     * Waits until the simulated time reaches a deadline or a wall-clock timeout elapses,
+     * so callers can check other conditions while the clock is paused.
+     *
+     * @param deadline The simulated nanoseconds to wait for.
+     * @param timeout  The maximum number of wall-clock nanoseconds to wait.
+     * @return boolean Whether the deadline was reached.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitNanos(long deadline, long timeout) throws InterruptedException {
+
+        // Deadlines already passed need no slot
+        if (deadline - this.nanoTime() <= 0) {
+            return true;
+        }
+
+        // Wraps around for the longest timeouts, differences stay right
+        long end = System.nanoTime() + timeout;
+
+        Thread thread = Thread.currentThread();
+        int slot = this.register(thread);
+
+        try {
+
+            while (true) {
+
+                // Read after registering, so a change either shows here or unparks the thread
+                long now = System.nanoTime();
+                Epoch epoch = this.epoch;
+                long remaining = deadline - epoch.at(now);
+                if (remaining <= 0) {
+                    return true;
+                }
+                long left = end - now;
+                if (left <= 0) {
+                    return false;
+                }
+
+                // Paused clocks are woken by a resume or a step, any change recomputes the wait
+                long real = epoch.paused ? Long.MAX_VALUE : (long) Math.ceil(remaining / epoch.scale);
+                long park = Math.min(real, left);
+                if (slot < 0) {
+                    park = Math.min(park, UNREGISTERED_PARK);
+                }
+
+                LockSupport.parkNanos(this, park);
+
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+
+        } finally {
+
+            if (slot >= 0) {
+                this.waiters.set(slot, null);
+            }
+        }
+    }
+
+    /**
+     * Waits for a number of simulated milliseconds.
+     *
+     * @param millis The number of simulated milliseconds.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void sleep(long millis) throws InterruptedException {
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        this.awaitNanos(this.nanoTime() + millis * 1_000_000);
+    }
+}
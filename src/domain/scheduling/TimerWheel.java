@@ -0,0 +1,187 @@
+package domain.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timer wheel firing actions after a delay with tick granularity.
+ * <p>
+ * Scheduling is a lock-free append to a queue of new timeouts. A single thread
+ * advances the wheel one tick at a time, moves the new timeouts into the buckets of
+ * their deadline ticks and fires the due actions of the current bucket, so actions
+ * must be short and hand real work off elsewhere. Only that thread touches the
+ * buckets, so a timeout never lands in a bucket which was already walked.
+ */
+public class TimerWheel implements Runnable {
+
+    /**
+     * The tick duration in nanoseconds.
+     */
+    private final long tickNanos;
+
+    /**
+     * The clock the ticks follow.
+     */
+    private final SimulationClock clock;
+
+    /**
+     * The wheel buckets, a power of two in size, only touched by the wheel thread.
+     */
+    private final ArrayDeque<Timeout>[] buckets;
+
+    /**
+     * The timeouts scheduled since the last tick.
+     */
+    private final ConcurrentLinkedQueue<Timeout> scheduled;
+
+    /**
+     * The bucket index mask.
+     */
+    private final int mask;
+
+    /**
+     * The current tick.
+     */
+    private volatile long tick;
+
+    /**
+     * Whether the wheel is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * The thread advancing the wheel, null before it runs.
+     */
+    private volatile Thread thread;
+
+    /**
+     * A pending action.
+     */
+    private static class Timeout {
+
+        /**
+         * The tick at which the action fires.
+         */
+        final long deadline;
+
+        /**
+         * The action.
+         */
+        final Runnable action;
+
+        /**
+         * Timeout constructor.
+         *
+         * @param deadline The tick at which the action fires.
+         * @param action   The action.
+         */
+        Timeout(long deadline, Runnable action) {
+
+            this.deadline = deadline;
+            this.action = action;
+        }
+    }
+
+    /**
+     * TimerWheel constructor, ticks follow wall-clock time.
+     *
+     * @param tickMillis The tick duration in milliseconds.
+     * @param size       The minimum number of buckets, rounded up to a power of two.
+     */
+    public TimerWheel(long tickMillis, int size) {
+        this(tickMillis, size, new SimulationClock());
+    }
+
+    /**
+     * TimerWheel constructor.
+     *
+     * @param tickMillis The tick duration in simulated milliseconds.
+     * @param size       The minimum number of buckets, rounded up to a power of two.
+     * @param clock      The clock the ticks follow.
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int size, SimulationClock clock) {
+
+        int buckets = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+
+        this.tickNanos = tickMillis * 1_000_000;
+        this.clock = clock;
+        this.buckets = new ArrayDeque[buckets];
+        this.scheduled = new ConcurrentLinkedQueue<>();
+        this.mask = buckets - 1;
+        this.running = true;
+
+        for (int i = 0; i < buckets; i++) {
+            this.buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Schedules an action.
+     *
+     * @param delayMillis The delay in milliseconds.
+     * @param action      The action.
+     */
+    public void schedule(long delayMillis, Runnable action) {
+
+        // Fire at the next tick at the earliest, a deadline the wheel already passed fires on the next tick
+        long ticks = Math.max(1, (delayMillis * 1_000_000 + this.tickNanos - 1) / this.tickNanos);
+        long deadline = this.tick + ticks;
+
+        this.scheduled.add(new Timeout(deadline, action));
+    }
+
+    /**
+     * Stops the wheel, pending actions are dropped.
+     */
+    public void stop() {
+
+        this.running = false;
+
+        // A paused clock would keep the wheel waiting
+        Thread thread = this.thread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Advances the wheel one tick at a time until stopped.
+     */
+    @Override
+    public void run() {
+
+        this.thread = Thread.currentThread();
+        long next = this.clock.nanoTime() + this.tickNanos;
+
+        while (this.running) {
+
+            // Wait for the tick, ticks behind a fast clock fire back to back
+            try {
+                this.clock.awaitNanos(next);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            next += this.tickNanos;
+
+            long current = ++this.tick;
+
+            // Move new timeouts into their buckets, late ones into the current one
+            for (Timeout timeout = this.scheduled.poll(); timeout != null; timeout = this.scheduled.poll()) {
+                this.buckets[(int) (Math.max(timeout.deadline, current) & this.mask)].add(timeout);
+            }
+
+            // Fire due actions, later rounds go back into the bucket
+            ArrayDeque<Timeout> bucket = this.buckets[(int) (current & this.mask)];
+            for (int i = bucket.size(); i > 0; i--) {
+
+                Timeout timeout = bucket.poll();
+                if (timeout.deadline <= current) {
+                    timeout.action.run();
+                } else {
+                    bucket.add(timeout);
+                }
+            }
+        }
+    }
+}
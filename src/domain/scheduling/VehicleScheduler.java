@@ -0,0 +1,239 @@
+package domain.scheduling;
+
+import domain.roundabout.OccupancyListener;
+import domain.roundabout.Roundabout;
+import domain.vehicles.Vehicle;
+import domain.vehicles.VehicleState;
+import graphv2.Vertex;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs vehicles as state machines on a fixed number of worker threads.
+ * <p>
+ * Instead of sleeping in its own thread, a vehicle is stepped by a work-stealing pool.
+ * Timed waits (travelling, queueing) are parked on a timer wheel. A vehicle blocked on a
+ * node is parked on that node and stepped again as soon as the node is released, with
+ * its waitToTravel delay as a fallback. Any number of vehicles runs on exactly the
+ * given number of workers. Timed waits follow the roundabout simulation clock.
+ */
+public class VehicleScheduler implements OccupancyListener {
+
+    /**
+     * The roundabout the vehicles move in.
+     */
+    private final Roundabout roundabout;
+
+    /**
+     * The worker pool.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The timer wheel for timed waits.
+     */
+    private final TimerWheel timer;
+
+    /**
+     * The tasks blocked on each vertex, indexed by vertex key.
+     */
+    private final ConcurrentLinkedQueue<Task>[] waiters;
+
+    /**
+     * The number of vehicles submitted and not yet exited.
+     */
+    private final AtomicLong active;
+
+    /**
+     * The number of vehicles which exited.
+     */
+    private final AtomicLong completed;
+
+    /**
+     * A scheduled vehicle.
+     */
+    private final class Task implements Runnable {
+
+        /**
+         * The vehicle.
+         */
+        final Vehicle vehicle;
+
+        /**
+         * Whether the task is parked, whoever clears it runs the task next.
+         */
+        final AtomicBoolean parked;
+
+        /**
+         * The park generation, so timeouts of an earlier park are ignored.
+         */
+        volatile long generation;
+
+        /**
+         * The vertex key the task is blocked on, -1 when not blocked.
+         */
+        volatile int blockedOn;
+
+        /**
+         * Task constructor.
+         *
+         * @param vehicle The vehicle.
+         */
+        Task(Vehicle vehicle) {
+
+            this.vehicle = vehicle;
+            this.parked = new AtomicBoolean();
+            this.blockedOn = -1;
+        }
+
+        /**
+         * Resumes the task if it is still parked.
+         *
+         * @param generation The park generation of the wake up, -1 to ignore it.
+         */
+        void wake(long generation) {
+
+            if ((generation < 0 || generation == this.generation) && this.parked.compareAndSet(true, false)) {
+
+                try {
+                    VehicleScheduler.this.pool.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Scheduler was shut down, the vehicle is abandoned
+                }
+            }
+        }
+
+        /**
+         * Steps the vehicle once and parks it until its next step.
+         */
+        @Override
+        public void run() {
+
+            long delay = this.vehicle.step();
+
+            // Vehicle left the roundabout
+            if (delay < 0) {
+
+                VehicleScheduler.this.active.decrementAndGet();
+                VehicleScheduler.this.completed.incrementAndGet();
+                return;
+            }
+
+            // Park until the delay elapses
+            long generation = ++this.generation;
+            this.blockedOn = -1;
+            this.parked.set(true);
+            VehicleScheduler.this.timer.schedule(delay, () -> this.wake(generation));
+
+            // Blocked vehicles are also woken by the release of their node
+            VehicleState state = this.vehicle.getVehicleState();
+            Vertex<AtomicReference> target = this.vehicle.getWaitingFor();
+            if ((state == VehicleState.BLOCKED || state == VehicleState.ENTERING) && target != null) {
+
+                this.blockedOn = target.getKey();
+                VehicleScheduler.this.waiters[target.getKey()].add(this);
+
+                // The node may have been released before the task was added
+                if (target.getValue().get() == null) {
+                    this.wake(generation);
+                }
+            }
+        }
+    }
+
+    /**
+     * VehicleScheduler constructor.
+     *
+     * @param roundabout  The roundabout the vehicles move in.
+     * @param parallelism The number of worker threads.
+     */
+    @SuppressWarnings("unchecked")
+    public VehicleScheduler(Roundabout roundabout, int parallelism) {
+
+        this.roundabout = roundabout;
+        this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.timer = new TimerWheel(1, 4096, roundabout.getClock());
+        this.waiters = new ConcurrentLinkedQueue[roundabout.getVertexCount()];
+        this.active = new AtomicLong();
+        this.completed = new AtomicLong();
+
+        for (int i = 0; i < this.waiters.length; i++) {
+            this.waiters[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        // Start timer and listen to node releases
+        Thread timerThread = new Thread(this.timer, "vehicle-scheduler-timer");
+        timerThread.setDaemon(true);
+        timerThread.start();
+        roundabout.addOccupancyListener(this);
+    }
+
+    /**
+     * Submits a vehicle, which must not have been started as a thread.
+     *
+     * @param vehicle The vehicle.
+     */
+    public void submit(Vehicle vehicle) {
+
+        this.active.incrementAndGet();
+        this.pool.execute(new Task(vehicle));
+    }
+
+    /**
+     * Returns the number of vehicles submitted and not yet exited.
+     *
+     * @return long
+     */
+    public long getActive() {
+        return this.active.get();
+    }
+
+    /**
+     * Returns the number of vehicles which exited.
+     *
+     * @return long
+     */
+    public long getCompleted() {
+        return this.completed.get();
+    }
+
+    /**
+     * Wakes the tasks blocked on a released vertex.
+     *
+     * @param vehicle The vehicle which released the vertex.
+     * @param key     The vertex key.
+     */
+    @Override
+    public void onRelease(Vehicle vehicle, int key) {
+
+        ConcurrentLinkedQueue<Task> blocked = this.waiters[key];
+
+        for (Task task = blocked.poll(); task != null; task = blocked.poll()) {
+
+            // Ignore tasks which are no longer blocked on this vertex
+            if (task.blockedOn == key) {
+                task.wake(-1);
+            }
+        }
+    }
+
+    /**
+     * Stops the scheduler, vehicles still on the roundabout are abandoned.
+     *
+     * @param timeoutMillis The number of milliseconds to wait for running steps.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+
+        this.roundabout.removeOccupancyListener(this);
+        this.timer.stop();
+        this.pool.shutdown();
+        this.pool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -1,11 +1,8 @@
 package domain.vehicles;
 
 import domain.roundabout.Roundabout;
-import graphv2.Vertex;
 
 import java.awt.*;
-import java.util.Deque;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represent a vehicle which is always attempting to move to the next point fast.
@@ -15,14 +12,21 @@ public class AggressiveBehaviourLight extends Vehicle {
 
 
     public AggressiveBehaviourLight(Color color, int source, int destination, Roundabout roundabout) {
-        super(color, source, destination, 10, 60, roundabout);
+        super(color, source, destination, VehicleType.LIGHT_AGGRESSIVE.getAcceleration(),
+                VehicleType.LIGHT_AGGRESSIVE.getMaxSpeed(), roundabout);
     }
 
     @Override
-    protected Deque<Vertex<AtomicReference>> getVehicleRoute(int entry, int exit) {
+    protected int[] getVehicleRoute(int entry, int exit) {
         return this.roundabout.getVehicleRoute(entry, exit, false);
     }
 
+    @Override
+    protected int acceptedGap() {
+
+        return 1;
+    }
+
     @Override
     protected float accelerate(float currentSpeed) {
 
@@ -1,24 +1,44 @@
 package domain.vehicles;
 
+import domain.roundabout.Factory;
 import domain.roundabout.Roundabout;
-import graphv2.Vertex;
 
 import java.awt.*;
-import java.util.Deque;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class DefaultBehaviourHeavy extends Vehicle {
 
+    /**
+     * The vehicle length in meters.
+     */
+    private static final double LENGTH = 12;
 
     public DefaultBehaviourHeavy(Color color, int source, int destination, Roundabout roundabout) {
-        super(color, source, destination, 4, 30, roundabout);
+        super(color, source, destination, VehicleType.HEAVY_DEFAULT.getAcceleration(),
+                VehicleType.HEAVY_DEFAULT.getMaxSpeed(), roundabout);
     }
 
     @Override
-    protected Deque<Vertex<AtomicReference>> getVehicleRoute(int entry, int exit) {
+    protected int[] getVehicleRoute(int entry, int exit) {
         return this.roundabout.getVehicleRoute(entry, exit, true);
     }
 
+    @Override
+    protected boolean isReroutable() {
+        return false;
+    }
+
+    @Override
+    protected int length() {
+
+        return Math.max(1, (int) Math.round(LENGTH * Factory.VERTEX_PER_METER_RATIO));
+    }
+
+    @Override
+    protected int acceptedGap() {
+
+        return 4;
+    }
+
     @Override
     protected float accelerate(float currentSpeed) {
 
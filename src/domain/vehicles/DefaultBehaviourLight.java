@@ -1,24 +1,28 @@
 package domain.vehicles;
 
 import domain.roundabout.Roundabout;
-import graphv2.Vertex;
 
 import java.awt.*;
-import java.util.Deque;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class DefaultBehaviourLight extends Vehicle {
 
 
     public DefaultBehaviourLight(Color color, int source, int destination, Roundabout roundabout) {
-        super(color, source, destination, 5, 40, roundabout);
+        super(color, source, destination, VehicleType.LIGHT_DEFAULT.getAcceleration(),
+                VehicleType.LIGHT_DEFAULT.getMaxSpeed(), roundabout);
     }
 
     @Override
-    protected Deque<Vertex<AtomicReference>> getVehicleRoute(int entry, int exit) {
+    protected int[] getVehicleRoute(int entry, int exit) {
         return this.roundabout.getVehicleRoute(entry, exit, false);
     }
 
+    @Override
+    protected int acceptedGap() {
+
+        return 3;
+    }
+
     @Override
     protected float accelerate(float currentSpeed) {
 
@@ -34,14 +38,12 @@ public class DefaultBehaviourLight extends Vehicle {
     @Override
     protected long waitOnQueue() {
 
-        System.out.println(this.label + ": Waiting on entry queue.");
         return 1000;
     }
 
     @Override
     protected long waitToTravel() {
 
-        System.out.println(this.label + ": Waiting on entry queue.");
         return 1000;
     }
 }
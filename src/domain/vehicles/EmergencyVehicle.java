@@ -0,0 +1,58 @@
+package domain.vehicles;
+
+import domain.roundabout.Roundabout;
+
+import java.awt.*;
+
+/**
+ * Represent an emergency vehicle which has priority over every other vehicle.
+ * Its route is announced once it reaches the head of its entry queue, regular vehicles then
+ * give way to the announced nodes and the other entries hold until it left.
+ */
+public class EmergencyVehicle extends Vehicle {
+
+
+    public EmergencyVehicle(Color color, int source, int destination, Roundabout roundabout) {
+        super(color, source, destination, VehicleType.EMERGENCY.getAcceleration(),
+                VehicleType.EMERGENCY.getMaxSpeed(), roundabout);
+    }
+
+    @Override
+    protected int[] getVehicleRoute(int entry, int exit) {
+        return this.roundabout.getVehicleRoute(entry, exit, false);
+    }
+
+    @Override
+    protected boolean isReroutable() {
+        return false;
+    }
+
+    @Override
+    protected boolean isPriority() {
+        return true;
+    }
+
+    @Override
+    protected float accelerate(float currentSpeed) {
+
+        return currentSpeed + this.acceleration;
+    }
+
+    @Override
+    protected float decelerate(float currentSpeed) {
+
+        return currentSpeed - this.acceleration;
+    }
+
+    @Override
+    protected long waitOnQueue() {
+
+        return 50;
+    }
+
+    @Override
+    protected long waitToTravel() {
+
+        return 50;
+    }
+}
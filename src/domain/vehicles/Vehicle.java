@@ -1,11 +1,13 @@
 package domain.vehicles;
 
+import domain.metrics.SimulationMetrics;
 import domain.roundabout.Factory;
 import domain.roundabout.Roundabout;
 import graphv2.Vertex;
 
 import java.awt.*;
-import java.util.Deque;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -48,6 +50,64 @@ public abstract class Vehicle extends Thread {
      * The vehicle's maximum speed.
      */
     private float maxSpeed;
+    /**
+     * The vertex the vehicle is currently waiting to move to, null when not waiting.
+     */
+    private volatile Vertex<AtomicReference> waitingFor;
+    /**
+     * Whether the vehicle has been removed from the roundabout.
+     */
+    private volatile boolean evicted;
+    /**
+     * Whether the vehicle is inside a step.
+     */
+    private volatile boolean stepping;
+    /**
+     * The vertex keys of the vehicle route.
+     */
+    private int[] route;
+    /**
+     * The number of vertex keys in the route.
+     */
+    private int routeLength;
+    /**
+     * Route buffers owned by the vehicle, allocated on the first re-plan and then swapped.
+     */
+    private int[] routeBuffer;
+    private int[] spareRouteBuffer;
+    /**
+     * The current stage of the vehicle.
+     */
+    private volatile VehicleState state;
+    /**
+     * The index of the current route node.
+     */
+    private int position;
+    /**
+     * The first held route node index, held nodes are route[held, claimed).
+     */
+    private int held;
+    /**
+     * The index after the last claimed route node.
+     */
+    private int claimed;
+
+    /**
+     * The roundabout topology version the route was last checked against.
+     */
+    private int topologyVersion;
+    /**
+     * Whether the route nodes from the first held one on are announced, priority vehicles only.
+     */
+    private boolean announced;
+    /**
+     * The simulated time of the first step in nanoseconds.
+     */
+    private long spawnNanos;
+    /**
+     * The entry queue the vehicle waits in.
+     */
+    private ConcurrentLinkedQueue<Vehicle> entry;
 
     /**
      * Vehicle empty constructor.
@@ -59,6 +119,7 @@ public abstract class Vehicle extends Thread {
         this.destination = 0;
         this.speed = 0;
         this.acceleration = 0;
+        this.state = VehicleState.NEW;
     }
 
     /**
@@ -80,6 +141,7 @@ public abstract class Vehicle extends Thread {
         this.acceleration = acceleration;
         this.maxSpeed = maxSpeed;
         this.roundabout = roundabout;
+        this.state = VehicleState.NEW;
     }
 
     /**
@@ -102,6 +164,7 @@ public abstract class Vehicle extends Thread {
         this.acceleration = acceleration;
         this.maxSpeed = maxSpeed;
         this.roundabout = roundabout;
+        this.state = VehicleState.NEW;
     }
 
     /**
@@ -113,16 +176,93 @@ public abstract class Vehicle extends Thread {
         return this.color;
     }
 
+    /**
+     * Returns the vehicle label.
+     *
+     * @return String
+     */
+    public String getLabel() {
+        return this.label != null ? this.label : "Vehicle_" + this.getId();
+    }
+
+    /**
+     * Returns the roundabout entry from which the vehicle is coming.
+     *
+     * @return int
+     */
+    public int getSource() {
+        return this.source;
+    }
+
+    /**
+     * Returns the roundabout exit which the vehicle is taking.
+     *
+     * @return int
+     */
+    public int getDestination() {
+        return this.destination;
+    }
+
+    /**
+     * Returns the current stage of the vehicle.
+     *
+     * @return VehicleState
+     */
+    public VehicleState getVehicleState() {
+        return this.state;
+    }
+
+    /**
+     * Returns the vertex the vehicle is waiting to move to.
+     *
+     * @return Vertex<AtomicReference> The vertex or null if the vehicle is not waiting.
+     */
+    public Vertex<AtomicReference> getWaitingFor() {
+        return this.waitingFor;
+    }
+
+    /**
+     * Returns whether the vehicle has been removed from the roundabout.
+     *
+     * @return boolean
+     */
+    public boolean isEvicted() {
+        return this.evicted;
+    }
+
+    /**
+     * Returns whether the vehicle is inside a step.
+     *
+     * @return boolean
+     */
+    public boolean isStepping() {
+        return this.stepping;
+    }
+
+    /**
+     * Removes the vehicle from the roundabout.
+     * The vehicle releases its nodes and stops the next time it waits to move.
+     */
+    public void evict() {
+
+        this.evicted = true;
+        this.interrupt();
+    }
+
     /**
      * Function defined for simpler code reading on run method.
      *
-     * @param l The number of milliseconds to sleep.
+     * @param l The number of simulated milliseconds to sleep.
      */
     private void vehicleSleep(long l) {
         try {
-            Thread.sleep(l);
+            this.roundabout.getClock().sleep(l);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+
+            // Eviction interrupts the vehicle on purpose
+            if (!this.evicted) {
+                e.printStackTrace();
+            }
         }
     }
 
@@ -131,9 +271,52 @@ public abstract class Vehicle extends Thread {
      *
      * @param entry The entry the vehicle is approaching.
      * @param exit  The exit the vehicle intends to take.
-     * @return Deque<Vertex < AtomicReference>> The vehicle route in the roundabout
+     * @return int[] The vertex keys of the vehicle route in the roundabout, shared and read only
      */
-    protected abstract Deque<Vertex<AtomicReference>> getVehicleRoute(int entry, int exit);
+    protected abstract int[] getVehicleRoute(int entry, int exit);
+
+    /**
+     * Returns whether the vehicle may change its route while inside the roundabout.
+     * Heavy vehicles are bound to the outer lane and keep their route.
+     *
+     * @return boolean
+     */
+    protected boolean isReroutable() {
+
+        return true;
+    }
+
+    /**
+     * Returns the vehicle length.
+     * A vehicle holds the nodes its body covers and releases its tail as it advances.
+     *
+     * @return int The number of nodes, at least 1.
+     */
+    protected int length() {
+
+        return 1;
+    }
+
+    /**
+     * Returns the number of free outer lane vertices upstream of the entry the vehicle needs before entering.
+     *
+     * @return int
+     */
+    protected int acceptedGap() {
+
+        return 1;
+    }
+
+    /**
+     * Returns whether the vehicle has priority over regular traffic.
+     * Priority vehicles announce their route, which regular vehicles then give way to.
+     *
+     * @return boolean
+     */
+    protected boolean isPriority() {
+
+        return false;
+    }
 
     /**
      * Accelerates the vehicle.
@@ -176,71 +359,623 @@ public abstract class Vehicle extends Thread {
     }
 
     /**
-     * This will run in a separate thread.
+     * Returns the number of nodes to reserve ahead of the current position.
+     * <p>
+     * The vehicle reserves the nodes it needs to come to a full stop at its current
+     * speed, bounded by the roundabout look-ahead.
+     *
+     * @return int The number of nodes, 0 when reservations are disabled.
+     */
+    protected int lookAhead() {
+
+        int max = this.roundabout.getLookAhead();
+        if (max == 0) {
+            return 0;
+        }
+
+        // Nodes needed to decelerate to a stop
+        int braking = (int) Math.ceil(this.speed / this.acceleration);
+
+        return Math.max(1, Math.min(max, braking));
+    }
+
+    /**
+     * Releases the route nodes held by the vehicle.
+     *
+     * @param from The first held node index.
+     * @param to   The index after the last held node.
+     */
+    private void release(int from, int to) {
+
+        for (int i = from; i < to; i++) {
+            this.roundabout.release(this, this.route[i]);
+        }
+    }
+
+    /**
+     * Claims a contiguous run of route nodes, all or nothing.
      * <p>
-     * The method replicates the driver behaviour.
-     * 1. Waits in queue for its turn.
-     * 2. Asks which path should it follow to the roundabout object.
-     * 3. Attempts to lock the AtomicReference for each of the nodes
-     * in its path. Note that only after locking the next reference
-     * does it unlock the previously locked reference. This assures
-     * no vehicle will be in the same spot at the same time.
+     * The nodes are read before any is claimed, so a contended run usually fails without
+     * touching shared state. A run lost half way is released at once, so a vehicle never
+     * waits while holding part of a run and long vehicles cannot deadlock each other on it.
+     *
+     * @param from The index of the first node.
+     * @param to   The index after the last node.
+     * @return int -1 when every node was claimed, otherwise the index of a node which was taken.
      */
-    @Override
-    public void run() {
+    private int claimRun(int from, int to) {
+
+        // Give up early on a taken node
+        for (int i = from; i < to; i++) {
+
+            if (this.roundabout.getVertex(this.route[i]).getValue().get() != null) {
+                return i;
+            }
+        }
+
+        for (int i = from; i < to; i++) {
+
+            if (!this.roundabout.getVertex(this.route[i]).getValue().compareAndSet(null, this)) {
+
+                // Roll back the part already claimed
+                this.release(from, i);
+                return i;
+            }
+            this.roundabout.notifyClaim(this, this.route[i]);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the first of a run of route nodes which is entered through a blocked edge.
+     * Such a node counts as taken, so the vehicle waits for the edge as it does for a blocked node.
+     *
+     * @param from The index of the first node.
+     * @param to   The index after the last node.
+     * @return int The index of the node, -1 when no edge into the run is blocked.
+     */
+    private int blockedEdge(int from, int to) {
+
+        int previous = from > 0 ? this.route[from - 1] : this.roundabout.getEntryKey(this.source);
+        for (int i = from; i < to; i++) {
+
+            if (this.roundabout.isBlocked(previous, this.route[i])) {
+                return i;
+            }
+            previous = this.route[i];
+        }
+
+        return -1;
+    }
+
+    /**
+     * Announces or withdraws the route nodes from the first held one on, priority vehicles only.
+     *
+     * @param announced Whether the nodes are announced.
+     */
+    private void setAnnounced(boolean announced) {
+
+        if (!this.isPriority() || this.announced == announced) {
+            return;
+        }
+
+        this.announced = announced;
+        if (announced) {
+            this.roundabout.announce(this.route, this.held, this.routeLength);
+        } else {
+            this.roundabout.withdraw(this.route, this.held, this.routeLength);
+        }
+    }
+
+    /**
+     * Returns whether the vehicle has to give way to a priority vehicle before taking route nodes.
+     * Vehicles already on an announced node clear the way instead.
+     *
+     * @param from The index of the first node to take.
+     * @param to   The index after the last node to take.
+     * @return boolean
+     */
+    private boolean givesWay(int from, int to) {
+
+        if (!this.roundabout.hasPriority() || this.isPriority()) {
+            return false;
+        }
+
+        for (int i = this.held; i < this.position; i++) {
+
+            if (this.roundabout.isAnnounced(this.route[i])) {
+                return false;
+            }
+        }
+        for (int i = from; i < to; i++) {
+
+            if (this.roundabout.isAnnounced(this.route[i])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Re-plans the rest of the route when standing on a lane link.
+     * The held nodes are moved to the front of the new route.
+     *
+     * @param position The index of the route node the vehicle stands on.
+     * @param held     The first held node index.
+     * @return boolean Whether the route was re-planned, route indexes then start at the first held node.
+     */
+    private boolean replan(int position, int held) {
+
+        int current = this.route[position];
+        if (!this.isReroutable() || !this.roundabout.isDecisionPoint(current)) {
+            return false;
+        }
 
-        // Define vehicle label if undefined
-        if (this.label == null) {
-            this.label = "Vehicle_" + this.getId();
+        // Allocate own buffers on first re-plan, never write into a shared route
+        if (this.routeBuffer == null) {
+
+            this.routeBuffer = new int[this.roundabout.getVertexCount() + 2];
+            this.spareRouteBuffer = new int[this.roundabout.getVertexCount() + 2];
+        }
+        int[] target = this.route == this.routeBuffer ? this.spareRouteBuffer : this.routeBuffer;
+
+        // Keep the held nodes and append the new route
+        int kept = position - held + 1;
+        System.arraycopy(this.route, held, target, 0, kept);
+        int length = this.roundabout.replanVehicleRoute(current, this.destination, target, kept);
+        if (length < 0) {
+            return false;
         }
 
-        // Ask roundabout object for path
-        Deque<Vertex<AtomicReference>> path = this.getVehicleRoute(this.source, this.destination);
-        Vertex<AtomicReference> last = null;
+        this.route = target;
+        this.routeLength = length;
 
-        // Get entry queue
-        ConcurrentLinkedQueue<Vehicle> entry = this.roundabout.queueOnEntry(this, this.source);
+        return true;
+    }
 
-        // Wait for first in queue
-        while (entry.peek() != this) this.vehicleSleep(waitOnQueue());
+    /**
+     * Re-plans the rest of the route around blocked vertices and edges.
+     * Reserved nodes are released, the held nodes are moved to the front of the new route
+     * and route indexes then start at the first held node. Without a way around, the
+     * route is kept and the vehicle waits for the block to clear.
+     */
+    private void detour() {
 
-        // Traverse Path
-        for (Vertex<AtomicReference> v : path) {
+        // Drop the reservations, they may lie on the blocked part
+        this.release(this.position, this.claimed);
+        this.claimed = this.position;
 
-            // Accelerate between path nodes
-            if (this.speed < this.maxSpeed) this.speed = accelerate(this.speed);
+        if (this.routeBuffer == null) {
+
+            this.routeBuffer = new int[this.roundabout.getVertexCount() + 2];
+            this.spareRouteBuffer = new int[this.roundabout.getVertexCount() + 2];
+        }
+        int[] target = this.route == this.routeBuffer ? this.spareRouteBuffer : this.routeBuffer;
+
+        // Keep the held nodes and append the new route
+        int from = this.position > 0 ? this.route[this.position - 1] : this.roundabout.getEntryKey(this.source);
+        int kept = this.position - this.held;
+        System.arraycopy(this.route, this.held, target, 0, kept);
+        int length = this.roundabout.detourVehicleRoute(from, this.destination, !this.isReroutable(), target, kept);
+        if (length < 0) {
+            return;
+        }
+
+        // Announce the detour in place of the old route
+        boolean announced = this.announced;
+        this.setAnnounced(false);
+
+        this.route = target;
+        this.routeLength = length;
+        this.position -= this.held;
+        this.claimed = this.position;
+        this.held = 0;
+
+        this.setAnnounced(announced);
+    }
+
+    /**
+     * Advances the vehicle by one stage without ever blocking.
+     * <p>
+     * The method replicates the driver behaviour as a state machine.
+     * 1. Asks which path should it follow to the roundabout object and queues on its entry.
+     * 2. Waits in queue for its turn.
+     * 3. Attempts to lock the AtomicReference of the next node in its path.
+     * Note that only after locking the next reference does it unlock the
+     * previously locked reference. This assures no vehicle will be in the
+     * same spot at the same time.
+     * 4. When reservations are enabled, also locks the nodes it would need
+     * to stop ahead of the next one, so it does not have to fight for them later.
+     * <p>
+     * Once the route is known a step allocates nothing. Steps wait while the roundabout
+     * is halted, so a halted roundabout never has a vehicle half way through a step.
+     *
+     * @return long The number of milliseconds until the next step, -1 once the vehicle exited.
+     */
+    public long step() {
+
+        // Register on the first step and wait while the roundabout is halted
+        if (this.state == VehicleState.NEW) {
+            this.roundabout.register(this);
+        }
+        this.stepping = true;
+        while (this.roundabout.isHalted()) {
+
+            this.stepping = false;
+            this.roundabout.awaitResume();
+            this.stepping = true;
+        }
+
+        try {
+
+            long delay = this.advance();
+            if (delay < 0) {
+                this.roundabout.unregister(this);
+            }
 
-            // Move to node
-            while (!v.getValue().compareAndSet(null, this)) {
+            return delay;
+
+        } finally {
+            this.stepping = false;
+        }
+    }
+
+    /**
+     * Advances the vehicle state machine by one stage.
+     *
+     * @return long The number of milliseconds until the next step, -1 once the vehicle exited.
+     */
+    @SuppressWarnings("fallthrough")
+    private long advance() {
+
+        switch (this.state) {
+
+            case NEW:
+
+                // Define vehicle label if undefined
+                if (this.label == null) {
+                    this.label = "Vehicle_" + this.getId();
+                }
+
+                this.spawnNanos = this.roundabout.getClock().nanoTime();
+
+                // Ask roundabout object for path
+                this.route = this.getVehicleRoute(this.source, this.destination);
+                this.routeLength = this.route.length;
+
+                // Get entry queue
+                this.entry = this.roundabout.queueOnEntry(this, this.source);
+                this.state = VehicleState.QUEUED;
+
+                // Fall through, a new vehicle checks its queue right away
+
+            case QUEUED:
+
+                // Wait for first in queue
+                if (this.entry.peek() != this) {
+                    return waitOnQueue();
+                }
+
+                if (this.isPriority()) {
+
+                    // The queue ahead has left, clear the way from here
+                    this.setAnnounced(true);
+
+                } else {
+
+                    // Hold while a priority vehicle crosses
+                    if (this.roundabout.hasPriority()) {
+                        return waitOnQueue();
+                    }
+
+                    // Wait for the entry signal
+                    long hold = this.roundabout.getEntryMeter(this.source).holdMillis();
+                    if (hold > 0) {
+                        return hold;
+                    }
+                }
+
+                // Accelerate towards the first node
+                this.position = 0;
+                if (this.speed < this.maxSpeed) this.speed = accelerate(this.speed);
+                this.state = VehicleState.ENTERING;
+
+                return this.tryMove();
+
+            case ENTERING:
+            case BLOCKED:
+                return this.tryMove();
+
+            case MOVING:
+
+                this.finishMove();
+
+                // End of route
+                if (this.position == this.routeLength) {
+
+                    this.release(this.held, this.claimed);
+                    this.roundabout.getMetrics().recordExited();
+
+                    // Priority latency is kept apart from the regular traffic
+                    long latency = this.roundabout.getClock().nanoTime() - this.spawnNanos;
+                    if (this.isPriority()) {
+
+                        this.setAnnounced(false);
+                        this.roundabout.getMetrics().recordPriorityTrip(latency);
+                    } else {
+                        this.roundabout.getMetrics().recordTrip(latency);
+                    }
+                    this.state = VehicleState.EXITED;
+                    this.roundabout.notifyExit(this);
+
+                    return -1;
+                }
+
+                // Accelerate between path nodes
+                if (this.speed < this.maxSpeed) this.speed = accelerate(this.speed);
+
+                return this.tryMove();
+
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Attempts to move into the current route node.
+     *
+     * @return long The number of milliseconds until the next step, -1 if the vehicle was evicted.
+     */
+    private long tryMove() {
+
+        SimulationMetrics metrics = this.roundabout.getMetrics();
+
+        // Follow blocks and unblocks made since the route was last checked
+        int version = this.roundabout.getTopologyVersion();
+        if (version != this.topologyVersion) {
+
+            this.topologyVersion = version;
+            int from = this.position > 0 ? this.route[this.position - 1] : this.roundabout.getEntryKey(this.source);
+
+            // Not entered yet, take the route a new vehicle would take
+            if (this.claimed == 0) {
+
+                boolean announced = this.announced;
+                this.setAnnounced(false);
+                this.route = this.getVehicleRoute(this.source, this.destination);
+                this.routeLength = this.route.length;
+                this.setAnnounced(announced);
+
+            } else if (this.roundabout.isBlocked(from, this.route, this.position, this.routeLength)) {
+                this.detour();
+            }
+        }
+
+        Vertex<AtomicReference> v = this.roundabout.getVertex(this.route[this.position]);
+
+        // Move to node unless it is already reserved
+        if (this.claimed == this.position) {
+
+            // Enter only into a sufficient gap of the outer lane
+            int gapWindow = this.roundabout.getGapWindow();
+            if (this.position == 0 && gapWindow > 0
+                    && this.roundabout.getEntryMeter(this.source).getGap(gapWindow) < Math.min(gapWindow, this.acceptedGap())) {
+
+                // Not waiting for a node, so it is not woken by node releases
+                this.waitingFor = null;
+                metrics.recordGapRejection();
+                while (this.speed > 0) this.speed = decelerate(this.speed);
+
+                return waitToTravel();
+            }
+
+            // Long vehicles enter only with room for their whole body
+            int end = this.position == 0 ? Math.min(this.routeLength, this.length()) : this.position + 1;
+            int taken = -1;
+
+            // Give way to a priority vehicle, not waiting for a node so not woken by node releases
+            if (this.givesWay(this.position, end)) {
+
+                this.waitingFor = null;
+                metrics.recordPriorityYield();
+                while (this.speed > 0) this.speed = decelerate(this.speed);
+
+                if (this.state != VehicleState.ENTERING) {
+                    this.state = VehicleState.BLOCKED;
+                }
+
+                return waitToTravel();
+            }
+
+            this.waitingFor = v;
+            int closed = this.blockedEdge(this.position, end);
+            if (closed >= 0) {
+                taken = closed;
+
+            } else if (end == this.position + 1) {
+
+                if (!v.getValue().compareAndSet(null, this)) {
+                    taken = this.position;
+                }
+
+            } else {
+                taken = this.claimRun(this.position, end);
+            }
+
+            if (taken >= 0) {
+
+                // A blocked edge is never released, so only a taken node wakes the vehicle
+                v = this.roundabout.getVertex(this.route[taken]);
+                this.waitingFor = closed >= 0 ? null : v;
+                metrics.recordClaim(false);
+
+                // Leave the roundabout when evicted
+                if (this.evicted) {
+
+                    this.waitingFor = null;
+                    this.entry.remove(this);
+                    this.setAnnounced(false);
+                    this.release(this.held, this.claimed);
+                    this.state = VehicleState.EXITED;
+                    this.roundabout.notifyExit(this);
+
+                    return -1;
+                }
 
                 // Decelerate to not crash into another vehicle
                 while (this.speed > 0) this.speed = decelerate(this.speed);
 
-                System.out.println(this.label + ": Waiting for next node " + v.getKey());
+                if (this.state != VehicleState.ENTERING) {
+                    this.state = VehicleState.BLOCKED;
+                }
 
                 // Wait
-                this.vehicleSleep(waitToTravel());
+                long wait = waitToTravel();
+                this.roundabout.recordWait(this, v, wait);
+
+                return wait;
+            }
+            metrics.recordClaim(true);
+            if (end == this.position + 1) {
+                this.roundabout.notifyClaim(this, this.route[this.claimed]);
             }
+            this.waitingFor = null;
+            this.claimed = end;
+        }
+
+        // Re-plan at lane links when nothing ahead is reserved
+        if (this.claimed == this.position + 1 && this.replan(this.position, this.held)) {
 
-            // Accelerate for next in case it has stopped
-            while (this.speed <= 0) this.speed = accelerate(this.speed);
+            this.position -= this.held;
+            this.claimed -= this.held;
+            this.held = 0;
+        }
+
+        // Reserve the next nodes while they are free
+        int reserveUntil = Math.min(this.routeLength, this.position + 1 + this.lookAhead());
+        while (this.claimed < reserveUntil && !this.givesWay(this.claimed, this.claimed + 1)
+                && !this.roundabout.isBlocked(this.route[this.claimed - 1], this.route[this.claimed])
+                && this.roundabout.getVertex(this.route[this.claimed]).getValue().compareAndSet(null, this)) {
+
+            metrics.recordReservation();
+            this.roundabout.notifyClaim(this, this.route[this.claimed]);
+            this.claimed++;
+        }
+
+        // Accelerate for next in case it has stopped
+        while (this.speed <= 0) this.speed = accelerate(this.speed);
 
-            System.out.println(this.label + ": Moving to node " + v.getKey() + " for " + travel());
+        // Moving from node to node
+        this.state = VehicleState.MOVING;
+
+        return travel();
+    }
+
+    /**
+     * Completes the move into the current route node.
+     */
+    private void finishMove() {
+
+        // Remove myself from queue only after locking the first node
+        if (this.position == 0) {
+
+            this.roundabout.notifyEnter(this);
+            this.entry.remove(this);
+            this.roundabout.getMetrics().recordEntered();
+        }
+
+        // Release the nodes the tail left
+        int tail = Math.max(this.held, this.position + 1 - this.length());
+        this.release(this.held, tail);
+        if (this.announced) {
+            this.roundabout.withdraw(this.route, this.held, tail);
+        }
+        this.held = tail;
+        this.position++;
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeState(ByteBuffer)} writes.
+     *
+     * @return int
+     */
+    public int getStateBytes() {
+        return 2 + this.getLabel().length() * 3 + 1 + 4 + 1 + 8 + 4 * 4 + 4 * this.routeLength;
+    }
 
-            // Moving from node to node
-            this.vehicleSleep(travel());
+    /**
+     * Writes the label, stage, speed, spawn time and route progress of the vehicle.
+     * Only consistent while the vehicle is not stepping.
+     *
+     * @param buffer The output buffer.
+     */
+    public void writeState(ByteBuffer buffer) {
+
+        byte[] label = this.getLabel().getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) label.length).put(label);
+
+        buffer.put((byte) this.state.ordinal())
+                .putFloat(this.speed)
+                .put((byte) (this.evicted ? 1 : 0))
+                .putLong(this.spawnNanos)
+                .putInt(this.position)
+                .putInt(this.held)
+                .putInt(this.claimed)
+                .putInt(this.routeLength);
+
+        for (int i = 0; i < this.routeLength; i++) {
+            buffer.putInt(this.route[i]);
+        }
+    }
 
-            // Remove myself from queue only after locking the first node
-            if (path.peekFirst() == v) entry.remove(this);
+    /**
+     * Restores a vehicle written by {@link #writeState(ByteBuffer)}, before it is started.
+     * The vehicle is put back in its entry queue by the caller, held nodes are set by the caller.
+     * The spawn time is simulated, so trip latencies stay right once the clock is restored.
+     *
+     * @param buffer The input buffer.
+     */
+    public void readState(ByteBuffer buffer) {
+
+        byte[] label = new byte[buffer.getShort()];
+        buffer.get(label);
+        this.label = new String(label, StandardCharsets.UTF_8);
+
+        this.state = VehicleState.values()[buffer.get()];
+        this.speed = buffer.getFloat();
+        this.evicted = buffer.get() == 1;
+        this.spawnNanos = buffer.getLong();
+        this.position = buffer.getInt();
+        this.held = buffer.getInt();
+        this.claimed = buffer.getInt();
+        this.routeLength = buffer.getInt();
+
+        this.route = new int[this.routeLength];
+        for (int i = 0; i < this.routeLength; i++) {
+            this.route[i] = buffer.getInt();
+        }
 
-            // Release last node
-            while (last != null && !last.getValue().compareAndSet(this, null)) ;
+        // Vehicles past their first step know their entry queue
+        if (this.state != VehicleState.NEW) {
+            this.entry = this.roundabout.getEntryQueue(this.source);
+        }
 
-            // Assign v as the last node which it travelled to
-            last = v;
+        // Priority vehicles past their queue announce the rest of their route again
+        if (this.state != VehicleState.NEW && this.state != VehicleState.QUEUED && this.state != VehicleState.EXITED) {
+            this.setAnnounced(true);
         }
+    }
 
-        // Release last node
-        while (!last.getValue().compareAndSet(this, null)) ;
+    /**
+     * This will run in a separate thread, sleeping between the vehicle steps.
+     */
+    @Override
+    public void run() {
+
+        for (long delay = this.step(); delay >= 0; delay = this.step()) {
+            this.vehicleSleep(delay);
+        }
     }
 }
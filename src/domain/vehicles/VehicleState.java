@@ -0,0 +1,37 @@
+package domain.vehicles;
+
+/**
+ * The stages a vehicle goes through on its way across the roundabout.
+ */
+public enum VehicleState {
+
+    /**
+     * Created but not yet queued on its entry.
+     */
+    NEW,
+
+    /**
+     * Waiting in the entry queue for its turn.
+     */
+    QUEUED,
+
+    /**
+     * First in the entry queue, waiting for the first route node.
+     */
+    ENTERING,
+
+    /**
+     * Travelling into the current route node.
+     */
+    MOVING,
+
+    /**
+     * Waiting for the current route node to be released.
+     */
+    BLOCKED,
+
+    /**
+     * Left the roundabout.
+     */
+    EXITED
+}
@@ -0,0 +1,176 @@
+package domain.vehicles;
+
+import domain.roundabout.Roundabout;
+
+import java.awt.*;
+
+/**
+ * The vehicle/driver combinations which can be spawned into a roundabout.
+ */
+public enum VehicleType {
+
+    HEAVY_DEFAULT("heavy:default", 4, 30, new Color(0x8E44AD)),
+    LIGHT_DEFAULT("light:default", 5, 40, new Color(0x2E86C1)),
+    LIGHT_AGGRESSIVE("light:aggressive", 10, 60, new Color(0xE67E22)),
+    EMERGENCY("emergency", 12, 70, new Color(0xE74C3C));
+
+    /**
+     * The vehicle type label as shown to the user.
+     */
+    private final String label;
+
+    /**
+     * The vehicle acceleration.
+     */
+    private final float acceleration;
+
+    /**
+     * The vehicle maximum speed in km/h.
+     */
+    private final float maxSpeed;
+
+    /**
+     * The color vehicles of this type are drawn with.
+     */
+    private final Color color;
+
+    /**
+     * VehicleType constructor.
+     *
+     * @param label        The vehicle type label.
+     * @param acceleration The vehicle acceleration.
+     * @param maxSpeed     The vehicle maximum speed in km/h.
+     * @param color        The color vehicles of this type are drawn with.
+     */
+    VehicleType(String label, float acceleration, float maxSpeed, Color color) {
+
+        this.label = label;
+        this.acceleration = acceleration;
+        this.maxSpeed = maxSpeed;
+        this.color = color;
+    }
+
+    /**
+     * Returns the vehicle acceleration.
+     *
+     * @return float
+     */
+    public float getAcceleration() {
+
+        return this.acceleration;
+    }
+
+    /**
+     * Returns the vehicle maximum speed in km/h.
+     *
+     * @return float
+     */
+    public float getMaxSpeed() {
+
+        return this.maxSpeed;
+    }
+
+    /**
+     * Returns the color vehicles of this type are drawn with.
+     *
+     * @return Color
+     */
+    public Color getColor() {
+
+        return this.color;
+    }
+
+    /**
+     * Returns the vehicle type label.
+     *
+     * @return String
+     */
+    public String getLabel() {
+
+        return this.label;
+    }
+
+    /**
+     * Returns the vehicle type with the given label.
+     *
+     * @param label The vehicle type label.
+     * @return VehicleType
+     */
+    public static VehicleType fromLabel(String label) {
+
+        for (VehicleType type : values()) {
+
+            if (type.label.equals(label)) {
+                return type;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown vehicle type: " + label);
+    }
+
+    /**
+     * Returns the type of a vehicle.
+     *
+     * @param vehicle The vehicle.
+     * @return VehicleType The type or null if the vehicle is not of a known type.
+     */
+    public static VehicleType of(Vehicle vehicle) {
+
+        if (vehicle instanceof DefaultBehaviourHeavy) {
+            return HEAVY_DEFAULT;
+        } else if (vehicle instanceof DefaultBehaviourLight) {
+            return LIGHT_DEFAULT;
+        } else if (vehicle instanceof AggressiveBehaviourLight) {
+            return LIGHT_AGGRESSIVE;
+        } else if (vehicle instanceof EmergencyVehicle) {
+            return EMERGENCY;
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a vehicle of this type. The vehicle is not started.
+     *
+     * @param color       The vehicle color.
+     * @param source      The roundabout entry from which the vehicle is coming.
+     * @param destination The roundabout exit which the vehicle is taking.
+     * @param roundabout  The roundabout data structure.
+     * @return Vehicle
+     */
+    public Vehicle create(Color color, int source, int destination, Roundabout roundabout) {
+
+        switch (this) {
+
+            case HEAVY_DEFAULT:
+                return new DefaultBehaviourHeavy(color, source, destination, roundabout);
+
+            case LIGHT_DEFAULT:
+                return new DefaultBehaviourLight(color, source, destination, roundabout);
+
+            case EMERGENCY:
+                return new EmergencyVehicle(color, source, destination, roundabout);
+
+            default:
+                return new AggressiveBehaviourLight(color, source, destination, roundabout);
+        }
+    }
+
+    /**
+     * Creates a vehicle of this type drawn with the type color. The vehicle is not started.
+     *
+     * @param source      The roundabout entry from which the vehicle is coming.
+     * @param destination The roundabout exit which the vehicle is taking.
+     * @param roundabout  The roundabout data structure.
+     * @return Vehicle
+     */
+    public Vehicle create(int source, int destination, Roundabout roundabout) {
+
+        return this.create(this.color, source, destination, roundabout);
+    }
+
+    @Override
+    public String toString() {
+        return this.label;
+    }
+}
@@ -0,0 +1,17 @@
+package domain.workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * An inter-arrival time distribution for vehicles approaching an entry.
+ */
+public interface ArrivalDistribution {
+
+    /**
+     * Samples the time until the next arrival.
+     *
+     * @param random The random number generator to sample with.
+     * @return long The inter-arrival time in nanoseconds.
+     */
+    long nextInterArrival(SplittableRandom random);
+}
@@ -0,0 +1,49 @@
+package domain.workload;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Empirical arrival process, inter-arrival times are sampled from observed values.
+ * <p>
+ * Samples are drawn from the empirical distribution function with linear
+ * interpolation between consecutive order statistics.
+ */
+public class EmpiricalArrivals implements ArrivalDistribution {
+
+    /**
+     * The observed inter-arrival times in nanoseconds, sorted.
+     */
+    private final long[] observations;
+
+    /**
+     * EmpiricalArrivals constructor.
+     *
+     * @param observations The observed inter-arrival times in nanoseconds.
+     */
+    public EmpiricalArrivals(long[] observations) {
+
+        if (observations.length == 0) {
+            throw new IllegalArgumentException("At least one observation is required!");
+        }
+
+        this.observations = observations.clone();
+        Arrays.sort(this.observations);
+    }
+
+    @Override
+    public long nextInterArrival(SplittableRandom random) {
+
+        // Single observation means a deterministic process
+        if (this.observations.length == 1) {
+            return this.observations[0];
+        }
+
+        // Position on the interpolated inverse CDF
+        double position = random.nextDouble() * (this.observations.length - 1);
+        int index = (int) position;
+        double fraction = position - index;
+
+        return Math.round(this.observations[index] + fraction * (this.observations[index + 1] - this.observations[index]));
+    }
+}
@@ -0,0 +1,90 @@
+package domain.workload;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Origin-destination matrix over the roundabout entries and exits.
+ * <p>
+ * Each row holds the relative demand from one entry to every exit.
+ * Entries and exits are numbered from 1 as in the roundabout.
+ */
+public class ODMatrix {
+
+    /**
+     * The exit choice for each entry.
+     */
+    private final WeightedChoice[] exitChoices;
+
+    /**
+     * The number of exits.
+     */
+    private final int nExits;
+
+    /**
+     * ODMatrix constructor.
+     *
+     * @param demand The relative demand matrix indexed as [entry - 1][exit - 1].
+     */
+    public ODMatrix(double[][] demand) {
+
+        this.exitChoices = new WeightedChoice[demand.length];
+        this.nExits = demand.length > 0 ? demand[0].length : 0;
+
+        for (int i = 0; i < demand.length; i++) {
+
+            if (demand[i].length != this.nExits) {
+                throw new IllegalArgumentException("All matrix rows must have the same number of exits!");
+            }
+
+            this.exitChoices[i] = new WeightedChoice(demand[i]);
+        }
+    }
+
+    /**
+     * Returns a matrix in which every exit is equally likely from every entry.
+     *
+     * @param nEntries The number of entries.
+     * @param nExits   The number of exits.
+     * @return ODMatrix
+     */
+    public static ODMatrix uniform(int nEntries, int nExits) {
+
+        double[][] demand = new double[nEntries][nExits];
+        for (double[] row : demand) {
+            Arrays.fill(row, 1);
+        }
+
+        return new ODMatrix(demand);
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return int
+     */
+    public int getEntriesNumber() {
+        return this.exitChoices.length;
+    }
+
+    /**
+     * Returns the number of exits.
+     *
+     * @return int
+     */
+    public int getExitsNumber() {
+        return this.nExits;
+    }
+
+    /**
+     * Samples the exit taken by a vehicle arriving at the given entry.
+     *
+     * @param entry  The entry number.
+     * @param random The random number generator to sample with.
+     * @return int The exit number.
+     */
+    public int sampleExit(int entry, SplittableRandom random) {
+
+        return this.exitChoices[entry - 1].sample(random) + 1;
+    }
+}
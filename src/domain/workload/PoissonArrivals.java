@@ -0,0 +1,35 @@
+package domain.workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * Poisson arrival process, inter-arrival times are exponentially distributed.
+ */
+public class PoissonArrivals implements ArrivalDistribution {
+
+    /**
+     * The mean inter-arrival time in nanoseconds.
+     */
+    private final double meanInterArrival;
+
+    /**
+     * PoissonArrivals constructor.
+     *
+     * @param ratePerSecond The mean number of arrivals per second.
+     */
+    public PoissonArrivals(double ratePerSecond) {
+
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Arrival rate must be positive!");
+        }
+
+        this.meanInterArrival = 1_000_000_000d / ratePerSecond;
+    }
+
+    @Override
+    public long nextInterArrival(SplittableRandom random) {
+
+        // Inverse transform sampling, 1 - u avoids log(0)
+        return Math.round(-Math.log(1 - random.nextDouble()) * this.meanInterArrival);
+    }
+}
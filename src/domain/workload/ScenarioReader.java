@@ -0,0 +1,442 @@
+package domain.workload;
+
+import domain.roundabout.Factory;
+import domain.roundabout.MeteringMode;
+import domain.roundabout.Roundabout;
+import domain.roundabout.RoundaboutFile;
+import domain.vehicles.VehicleType;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * Streams a declarative scenario file.
+ * <p>
+ * A scenario is a line based text file, '#' starts a comment. Settings come first, one
+ * name and value per line, then a line with the word spawns and one spawn per line:
+ * <pre>
+ * radius 15
+ * lane-width 3
+ * vertex-per-meter 0.25
+ * lanes 2
+ * entries 4
+ * exits 4
+ * look-ahead 0
+ * scale 1
+ * duration 600
+ * metering fixed
+ * metering-green 2
+ * metering-cycle 4
+ * gap-window 4
+ * spawns
+ * 0.0 heavy:default 1 3
+ * 1.5 light:aggressive 2 4
+ * </pre>
+ * Spawn times are simulated seconds since the start of the run and must not decrease.
+ * A duration of 0, the default, runs until every vehicle spawned and left. Metering is
+ * off, fixed or adaptive, with the green and cycle times in seconds for fixed metering
+ * and metering-window and metering-threshold in vertices for adaptive metering. The gap
+ * window is the number of upstream vertices queue heads check for a gap, 0 by default. Omitted
+ * settings keep the defaults of the build panel and the entry meters.
+ * <p>
+ * Instead of the geometry settings a scenario can name a roundabout file saved with
+ * {@link RoundaboutFile}, relative to the scenario file:
+ * <pre>
+ * graph city-ring.rbg
+ * </pre>
+ * The file is loaded when the reader is opened, without rebuilding the graph, and its
+ * geometry replaces the radius, lane width, vertex per meter, lanes, entries and exits.
+ * <p>
+ * The settings are read when the reader is opened, spawns are read one at a time with
+ * {@link #next()}, so a scenario of any length is never held in memory.
+ */
+public class ScenarioReader implements Closeable {
+
+    /**
+     * Separates the fields of a line.
+     */
+    private static final Pattern FIELDS = Pattern.compile("\\s+");
+
+    /**
+     * The scenario file.
+     */
+    private final BufferedReader reader;
+
+    /**
+     * The roundabout geometry.
+     */
+    private double radius;
+    private double laneWidth;
+    private double vertexPerMeterRatio;
+    private int lanes;
+    private int entries;
+    private int exits;
+
+    /**
+     * The roundabout loaded from the graph file, null to build one from the geometry.
+     */
+    private Roundabout loaded;
+
+    /**
+     * The maximum number of nodes a vehicle reserves ahead of its position.
+     */
+    private int lookAhead;
+
+    /**
+     * The simulation clock time scale.
+     */
+    private double scale;
+
+    /**
+     * The run duration in simulated nanoseconds, 0 to run until every vehicle left.
+     */
+    private long duration;
+
+    /**
+     * How the entries are metered.
+     */
+    private MeteringMode metering;
+
+    /**
+     * The fixed cycle green and whole cycle times in milliseconds, 0 for the meter default.
+     */
+    private long meteringGreen;
+    private long meteringCycle;
+
+    /**
+     * The adaptive window and threshold in vertices, 0 for the meter default.
+     */
+    private int meteringWindow;
+    private int meteringThreshold;
+
+    /**
+     * The number of upstream vertices queue heads check for a gap, 0 disables gap acceptance.
+     */
+    private int gapWindow;
+
+    /**
+     * The number of the last line read.
+     */
+    private long line;
+
+    /**
+     * The current spawn.
+     */
+    private long time;
+    private VehicleType type;
+    private int entry;
+    private int exit;
+
+    /**
+     * ScenarioReader constructor, reads the settings.
+     *
+     * @param file The scenario file.
+     * @throws IOException If the file cannot be read or its settings are invalid.
+     */
+    public ScenarioReader(Path file) throws IOException {
+
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        this.radius = 15;
+        this.laneWidth = Factory.LANE_WIDTH;
+        this.vertexPerMeterRatio = Factory.VERTEX_PER_METER_RATIO;
+        this.lanes = 2;
+        this.entries = 4;
+        this.exits = 4;
+        this.scale = 1;
+        this.metering = MeteringMode.OFF;
+
+        try {
+            this.readSettings(file);
+
+        } catch (IOException | RuntimeException e) {
+
+            this.reader.close();
+            throw e instanceof IOException ? (IOException) e : this.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the settings up to the spawns line.
+     *
+     * @param file The scenario file, graph files are relative to it.
+     * @throws IOException If the file cannot be read or a setting is invalid.
+     */
+    private void readSettings(Path file) throws IOException {
+
+        for (String[] fields = this.nextFields(); fields != null; fields = this.nextFields()) {
+
+            if (fields[0].equals("spawns")) {
+                break;
+            }
+            if (fields.length != 2) {
+                throw this.error("Expected a setting name and value");
+            }
+
+            String value = fields[1];
+            switch (fields[0]) {
+
+                case "radius":
+                    this.radius = Double.parseDouble(value);
+                    break;
+
+                case "lane-width":
+                    this.laneWidth = Double.parseDouble(value);
+                    break;
+
+                case "vertex-per-meter":
+                    this.vertexPerMeterRatio = Double.parseDouble(value);
+                    break;
+
+                case "lanes":
+                    this.lanes = Integer.parseInt(value);
+                    break;
+
+                case "entries":
+                    this.entries = Integer.parseInt(value);
+                    break;
+
+                case "exits":
+                    this.exits = Integer.parseInt(value);
+                    break;
+
+                case "look-ahead":
+                    this.lookAhead = Integer.parseInt(value);
+                    break;
+
+                case "scale":
+                    this.scale = Double.parseDouble(value);
+                    break;
+
+                case "duration":
+                    this.duration = Math.round(Double.parseDouble(value) * 1e9);
+                    break;
+
+                case "metering":
+                    this.metering = value.equals("fixed") ? MeteringMode.FIXED_CYCLE : MeteringMode.valueOf(value.toUpperCase());
+                    break;
+
+                case "metering-green":
+                    this.meteringGreen = Math.round(Double.parseDouble(value) * 1000);
+                    break;
+
+                case "metering-cycle":
+                    this.meteringCycle = Math.round(Double.parseDouble(value) * 1000);
+                    break;
+
+                case "metering-window":
+                    this.meteringWindow = Integer.parseInt(value);
+                    break;
+
+                case "metering-threshold":
+                    this.meteringThreshold = Integer.parseInt(value);
+                    break;
+
+                case "gap-window":
+                    this.gapWindow = Integer.parseInt(value);
+                    break;
+
+                case "graph":
+                    try {
+                        this.loaded = RoundaboutFile.load(file.resolveSibling(value));
+                    } catch (IOException e) {
+                        throw this.error("Could not load graph " + value + ": " + e.getMessage());
+                    }
+                    break;
+
+                default:
+                    throw this.error("Unknown setting " + fields[0]);
+            }
+        }
+
+        // Spawns are checked against the loaded entries and exits
+        if (this.loaded != null) {
+
+            this.entries = this.loaded.getEntriesNumber();
+            this.exits = this.loaded.getExitsNumber();
+        }
+    }
+
+    /**
+     * Returns the fields of the next line which is not blank or a comment.
+     *
+     * @return String[] The fields or null at the end of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    private String[] nextFields() throws IOException {
+
+        for (String text = this.reader.readLine(); text != null; text = this.reader.readLine()) {
+
+            this.line++;
+
+            // Strip comments
+            int comment = text.indexOf('#');
+            if (comment >= 0) {
+                text = text.substring(0, comment);
+            }
+
+            text = text.trim();
+            if (!text.isEmpty()) {
+                return FIELDS.split(text);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns a parse error at the current line.
+     *
+     * @param message The error message.
+     * @return IOException
+     */
+    private IOException error(String message) {
+        return new IOException("Scenario line " + this.line + ": " + message);
+    }
+
+    /**
+     * Reads the next spawn.
+     *
+     * @return boolean Whether a spawn was read, false at the end of the file.
+     * @throws IOException If the file cannot be read or the spawn is invalid.
+     */
+    public boolean next() throws IOException {
+
+        String[] fields = this.nextFields();
+        if (fields == null) {
+            return false;
+        }
+        if (fields.length != 4) {
+            throw this.error("Expected time, vehicle type, entry and exit");
+        }
+
+        try {
+
+            long time = Math.round(Double.parseDouble(fields[0]) * 1e9);
+            if (time < this.time) {
+                throw this.error("Spawn times must not decrease");
+            }
+
+            this.time = time;
+            this.type = VehicleType.fromLabel(fields[1]);
+            this.entry = Integer.parseInt(fields[2]);
+            this.exit = Integer.parseInt(fields[3]);
+
+        } catch (IllegalArgumentException e) {
+            throw this.error(e.getMessage());
+        }
+
+        if (this.entry < 1 || this.entry > this.entries || this.exit < 1 || this.exit > this.exits) {
+            throw this.error("Entry or exit out of range");
+        }
+
+        return true;
+    }
+
+    /**
+     * Builds the scenario roundabout, setting the factory lane width and vertex per meter ratio.
+     * With a graph file the roundabout loaded when the reader was opened is returned instead.
+     *
+     * @return Roundabout
+     */
+    public Roundabout buildRoundabout() {
+
+        Roundabout roundabout;
+        if (this.loaded != null) {
+
+            roundabout = this.loaded;
+            Factory.getInstance().setLaneWidth(roundabout.getLaneWidth());
+            Factory.getInstance().setVertexPerMeterRatio(roundabout.getVertexPerMeterRatio());
+
+        } else {
+
+            Factory.getInstance().setLaneWidth(this.laneWidth);
+            Factory.getInstance().setVertexPerMeterRatio(this.vertexPerMeterRatio);
+            roundabout = Factory.getInstance().buildRoundabout(this.radius, this.lanes, this.entries, this.exits);
+        }
+
+        roundabout.setLookAhead(this.lookAhead);
+        roundabout.getClock().setScale(this.scale);
+        roundabout.setGapWindow(this.gapWindow);
+
+        // Meter defaults fill in the timings which were not given
+        roundabout.setMetering(this.metering);
+        if (this.meteringGreen > 0 || this.meteringCycle > 0) {
+
+            long green = this.meteringGreen > 0 ? this.meteringGreen : roundabout.getEntryMeter(1).getGreenMillis();
+            long cycle = this.meteringCycle > 0 ? this.meteringCycle : Math.max(green, roundabout.getEntryMeter(1).getCycleMillis());
+            roundabout.setMeteringCycle(green, cycle);
+        }
+        if (this.meteringWindow > 0 || this.meteringThreshold > 0) {
+
+            roundabout.setMeteringWindow(
+                    this.meteringWindow > 0 ? this.meteringWindow : roundabout.getEntryMeter(1).getWindow(),
+                    this.meteringThreshold > 0 ? this.meteringThreshold : roundabout.getEntryMeter(1).getThreshold());
+        }
+
+        return roundabout;
+    }
+
+    /**
+     * Returns how the entries are metered.
+     *
+     * @return MeteringMode
+     */
+    public MeteringMode getMetering() {
+        return this.metering;
+    }
+
+    /**
+     * Returns the run duration.
+     *
+     * @return long The duration in simulated nanoseconds, 0 to run until every vehicle left.
+     */
+    public long getDuration() {
+        return this.duration;
+    }
+
+    /**
+     * Returns the time of the current spawn.
+     *
+     * @return long The simulated nanoseconds since the start of the run.
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * Returns the vehicle type of the current spawn.
+     *
+     * @return VehicleType
+     */
+    public VehicleType getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the entry of the current spawn.
+     *
+     * @return int
+     */
+    public int getEntry() {
+        return this.entry;
+    }
+
+    /**
+     * Returns the exit of the current spawn.
+     *
+     * @return int
+     */
+    public int getExit() {
+        return this.exit;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
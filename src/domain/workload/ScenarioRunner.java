@@ -0,0 +1,142 @@
+package domain.workload;
+
+import domain.roundabout.Roundabout;
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Plays the spawn schedule of a scenario on the roundabout simulation clock.
+ * <p>
+ * Spawns are read from the scenario one at a time just before they are due and handed
+ * to a sink, usually the roundabout admission controller. The runner finishes when the
+ * schedule ends, or when the scenario duration elapses if it has one.
+ */
+public class ScenarioRunner implements Runnable {
+
+    /**
+     * The scenario being played.
+     */
+    private final ScenarioReader scenario;
+
+    /**
+     * The roundabout in which vehicles are spawned.
+     */
+    private final Roundabout roundabout;
+
+    /**
+     * Receives every spawned vehicle.
+     */
+    private final Consumer<Vehicle> sink;
+
+    /**
+     * The number of vehicles spawned so far.
+     */
+    private final AtomicLong spawned;
+
+    /**
+     * The read failure, null when none happened.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Whether the runner is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * ScenarioRunner constructor.
+     *
+     * @param scenario   The scenario, positioned before its first spawn.
+     * @param roundabout The roundabout in which vehicles are spawned.
+     * @param sink       Receives every spawned vehicle.
+     */
+    public ScenarioRunner(ScenarioReader scenario, Roundabout roundabout, Consumer<Vehicle> sink) {
+
+        this.scenario = scenario;
+        this.roundabout = roundabout;
+        this.sink = sink;
+        this.spawned = new AtomicLong();
+        this.running = true;
+    }
+
+    /**
+     * Returns the number of vehicles spawned so far.
+     *
+     * @return long
+     */
+    public long getSpawned() {
+        return this.spawned.get();
+    }
+
+    /**
+     * Returns the read failure.
+     *
+     * @return IOException The failure or null if reading succeeded so far.
+     */
+    public IOException getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Returns whether the runner is running, from its creation until it is stopped or done.
+     *
+     * @return boolean
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Stops the runner before its next spawn.
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Spawns every scheduled vehicle when it is due, then waits for the end of the duration.
+     * The scenario is closed when the runner finishes.
+     */
+    @Override
+    public void run() {
+
+        SimulationClock clock = this.roundabout.getClock();
+        long start = clock.nanoTime();
+        long duration = this.scenario.getDuration();
+
+        try (ScenarioReader scenario = this.scenario) {
+
+            while (this.running && scenario.next()) {
+
+                // Spawns past the duration never happen
+                if (duration > 0 && scenario.getTime() >= duration) {
+                    break;
+                }
+
+                clock.awaitNanos(start + scenario.getTime());
+                if (!this.running) {
+                    break;
+                }
+
+                this.sink.accept(scenario.getType().create(scenario.getEntry(), scenario.getExit(), this.roundabout));
+                this.spawned.incrementAndGet();
+            }
+
+            // Run for the whole duration
+            if (this.running && duration > 0) {
+                clock.awaitNanos(start + duration);
+            }
+
+        } catch (IOException e) {
+            this.failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.running = false;
+    }
+}
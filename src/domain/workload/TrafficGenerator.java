@@ -0,0 +1,272 @@
+package domain.workload;
+
+import domain.roundabout.Roundabout;
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+import domain.vehicles.VehicleType;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Generates stochastic vehicle arrivals on every entry of a roundabout.
+ * <p>
+ * Each entry has its own arrival process and its own random stream, so a seeded
+ * generator always produces the same spawn sequence for every entry regardless
+ * of how the arrivals of different entries interleave in time.
+ * <p>
+ * The generator only creates vehicles and hands them to a sink, route computation
+ * and the vehicle lifecycle happen elsewhere so the generator is never the bottleneck.
+ */
+public class TrafficGenerator implements Runnable {
+
+    /**
+     * Arrivals due within this many simulated nanoseconds are spun for instead of waited for.
+     */
+    private static final long SPIN_THRESHOLD = 50_000;
+
+    /**
+     * The roundabout in which vehicles are spawned.
+     */
+    private final Roundabout roundabout;
+
+    /**
+     * The arrival process of each entry, indexed by entry - 1.
+     */
+    private final ArrivalDistribution[] arrivals;
+
+    /**
+     * The origin-destination matrix.
+     */
+    private final ODMatrix odMatrix;
+
+    /**
+     * The vehicle type mix.
+     */
+    private final VehicleMix mix;
+
+    /**
+     * Receives every spawned vehicle, by default it just starts the vehicle.
+     */
+    private final Consumer<Vehicle> sink;
+
+    /**
+     * The random stream of each entry.
+     */
+    private final SplittableRandom[] randoms;
+
+    /**
+     * The next arrival time of each entry in simulated nanoseconds since the generator started.
+     */
+    private final long[] nextArrival;
+
+    /**
+     * The number of vehicles spawned so far.
+     */
+    private final AtomicLong spawned;
+
+    /**
+     * The maximum number of vehicles to spawn.
+     */
+    private long maxSpawns;
+
+    /**
+     * Whether the generator is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * TrafficGenerator constructor, vehicles are started as soon as they arrive.
+     *
+     * @param roundabout The roundabout in which vehicles are spawned.
+     * @param arrivals   The arrival process of each entry.
+     * @param odMatrix   The origin-destination matrix.
+     * @param mix        The vehicle type mix.
+     */
+    public TrafficGenerator(Roundabout roundabout, ArrivalDistribution[] arrivals, ODMatrix odMatrix, VehicleMix mix) {
+
+        this(roundabout, arrivals, odMatrix, mix, Vehicle::start, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Seeded TrafficGenerator constructor.
+     *
+     * @param roundabout The roundabout in which vehicles are spawned.
+     * @param arrivals   The arrival process of each entry.
+     * @param odMatrix   The origin-destination matrix.
+     * @param mix        The vehicle type mix.
+     * @param sink       Receives every spawned vehicle.
+     * @param seed       The seed from which every entry random stream is derived.
+     */
+    public TrafficGenerator(Roundabout roundabout, ArrivalDistribution[] arrivals, ODMatrix odMatrix, VehicleMix mix,
+                            Consumer<Vehicle> sink, long seed) {
+
+        // Check dimensions
+        if (arrivals.length != odMatrix.getEntriesNumber()) {
+            throw new IllegalArgumentException("One arrival process is required for each entry!");
+        }
+
+        if (odMatrix.getEntriesNumber() > roundabout.getEntriesNumber()
+                || odMatrix.getExitsNumber() > roundabout.getExitsNumber()) {
+            throw new IllegalArgumentException("OD matrix does not fit the roundabout!");
+        }
+
+        this.roundabout = roundabout;
+        this.arrivals = arrivals.clone();
+        this.odMatrix = odMatrix;
+        this.mix = mix;
+        this.sink = sink;
+        this.spawned = new AtomicLong();
+        this.maxSpawns = Long.MAX_VALUE;
+        this.running = true;
+
+        // Derive an independent stream for each entry
+        SplittableRandom root = new SplittableRandom(seed);
+        this.randoms = new SplittableRandom[arrivals.length];
+        for (int i = 0; i < arrivals.length; i++) {
+            this.randoms[i] = root.split();
+        }
+
+        // Schedule first arrival of each entry
+        this.nextArrival = new long[arrivals.length];
+        for (int i = 0; i < arrivals.length; i++) {
+            this.nextArrival[i] = this.arrivals[i].nextInterArrival(this.randoms[i]);
+        }
+    }
+
+    /**
+     * Returns an arrival process array with the same process on every entry.
+     *
+     * @param arrival  The arrival process.
+     * @param nEntries The number of entries.
+     * @return ArrivalDistribution[]
+     */
+    public static ArrivalDistribution[] sameOnEveryEntry(ArrivalDistribution arrival, int nEntries) {
+
+        ArrivalDistribution[] arrivals = new ArrivalDistribution[nEntries];
+        Arrays.fill(arrivals, arrival);
+
+        return arrivals;
+    }
+
+    /**
+     * Sets the maximum number of vehicles to spawn before the generator stops.
+     *
+     * @param maxSpawns The maximum number of vehicles.
+     */
+    public void setMaxSpawns(long maxSpawns) {
+
+        this.maxSpawns = maxSpawns;
+    }
+
+    /**
+     * Returns the number of vehicles spawned so far.
+     *
+     * @return long
+     */
+    public long getSpawned() {
+
+        return this.spawned.get();
+    }
+
+    /**
+     * Returns whether the generator is running, from its creation until it is stopped or done.
+     *
+     * @return boolean
+     */
+    public boolean isRunning() {
+
+        return this.running;
+    }
+
+    /**
+     * Stops the generator.
+     */
+    public void stop() {
+
+        this.running = false;
+    }
+
+    /**
+     * Returns the entry with the earliest pending arrival.
+     *
+     * @return int The entry index.
+     */
+    private int nextEntry() {
+
+        int next = 0;
+        for (int i = 1; i < this.nextArrival.length; i++) {
+
+            if (this.nextArrival[i] < this.nextArrival[next]) {
+                next = i;
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * Creates the vehicle arriving at the given entry and schedules the entry next arrival.
+     *
+     * @param index The entry index.
+     * @return Vehicle
+     */
+    private Vehicle arrive(int index) {
+
+        SplittableRandom random = this.randoms[index];
+
+        // Sample destination and type
+        int exit = this.odMatrix.sampleExit(index + 1, random);
+        VehicleType type = this.mix.sample(random);
+
+        // Schedule the entry next arrival
+        this.nextArrival[index] += this.arrivals[index].nextInterArrival(random);
+
+        return type.create(index + 1, exit, this.roundabout);
+    }
+
+    /**
+     * Generates arrivals on the roundabout simulation clock until stopped or the maximum
+     * number of spawns is reached. Arrivals which are already due are dispatched back to
+     * back without waiting.
+     */
+    @Override
+    public void run() {
+
+        SimulationClock clock = this.roundabout.getClock();
+        long start = clock.nanoTime();
+
+        while (this.running && this.spawned.get() < this.maxSpawns) {
+
+            // Find the earliest arrival
+            int index = this.nextEntry();
+            long remaining = start + this.nextArrival[index] - clock.nanoTime();
+
+            // Wait on the clock while the arrival is far away or paused, spin when it is close
+            if (remaining > SPIN_THRESHOLD || (remaining > 0 && clock.isPaused())) {
+
+                try {
+                    clock.awaitNanos(start + this.nextArrival[index] - (clock.isPaused() ? 0 : SPIN_THRESHOLD));
+                } catch (InterruptedException e) {
+                    break;
+                }
+                continue;
+            }
+
+            while (clock.nanoTime() - start < this.nextArrival[index] && !clock.isPaused()) {
+                Thread.onSpinWait();
+            }
+            if (clock.nanoTime() - start < this.nextArrival[index]) {
+                continue;
+            }
+
+            // Spawn vehicle
+            this.sink.accept(this.arrive(index));
+            this.spawned.incrementAndGet();
+        }
+
+        this.running = false;
+    }
+}
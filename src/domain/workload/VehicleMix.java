@@ -0,0 +1,49 @@
+package domain.workload;
+
+import domain.vehicles.VehicleType;
+
+import java.util.SplittableRandom;
+
+/**
+ * The proportion of each vehicle type in the generated traffic.
+ */
+public class VehicleMix {
+
+    /**
+     * The vehicle types.
+     */
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    /**
+     * The vehicle type choice.
+     */
+    private final WeightedChoice choice;
+
+    /**
+     * VehicleMix constructor.
+     *
+     * @param heavyDefault    Relative share of heavy vehicles with default behaviour.
+     * @param lightDefault    Relative share of light vehicles with default behaviour.
+     * @param lightAggressive Relative share of light vehicles with aggressive behaviour.
+     */
+    public VehicleMix(double heavyDefault, double lightDefault, double lightAggressive) {
+
+        double[] weights = new double[TYPES.length];
+        weights[VehicleType.HEAVY_DEFAULT.ordinal()] = heavyDefault;
+        weights[VehicleType.LIGHT_DEFAULT.ordinal()] = lightDefault;
+        weights[VehicleType.LIGHT_AGGRESSIVE.ordinal()] = lightAggressive;
+
+        this.choice = new WeightedChoice(weights);
+    }
+
+    /**
+     * Samples a vehicle type.
+     *
+     * @param random The random number generator to sample with.
+     * @return VehicleType
+     */
+    public VehicleType sample(SplittableRandom random) {
+
+        return TYPES[this.choice.sample(random)];
+    }
+}
@@ -0,0 +1,75 @@
+package domain.workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples an index from a discrete distribution given by non-negative weights.
+ * <p>
+ * Weights are turned into a cumulative array once, sampling is a binary search.
+ */
+class WeightedChoice {
+
+    /**
+     * Cumulative normalized weights, the last value is always 1.
+     */
+    private final double[] cumulative;
+
+    /**
+     * WeightedChoice constructor.
+     *
+     * @param weights The weight of each index.
+     */
+    WeightedChoice(double[] weights) {
+
+        double total = 0;
+        for (double weight : weights) {
+
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weights must not be negative!");
+            }
+
+            total += weight;
+        }
+
+        if (total <= 0) {
+            throw new IllegalArgumentException("At least one weight must be positive!");
+        }
+
+        // Build cumulative distribution
+        this.cumulative = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+
+            sum += weights[i];
+            this.cumulative[i] = sum / total;
+        }
+        this.cumulative[weights.length - 1] = 1;
+    }
+
+    /**
+     * Samples an index.
+     *
+     * @param random The random number generator to sample with.
+     * @return int The sampled index.
+     */
+    int sample(SplittableRandom random) {
+
+        double u = random.nextDouble();
+
+        // Find first cumulative value above u
+        int low = 0;
+        int high = this.cumulative.length - 1;
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (this.cumulative[mid] > u) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+}
@@ -29,6 +29,11 @@ public class Graph<V> {
      */
     protected Map<Vertex<V>, List<Vertex<V>>> adjacencyMap;
 
+    /**
+     * Reverse adjacency list, each vertex mapped to the vertices with an edge into it.
+     */
+    protected Map<Vertex<V>, List<Vertex<V>>> reverseAdjacencyMap;
+
     /**
      * Graph empty constructor.
      */
@@ -37,6 +42,7 @@ public class Graph<V> {
         this.isDirected = false;
         this.vertices = new HashMap<>();
         this.adjacencyMap = new HashMap<>();
+        this.reverseAdjacencyMap = new HashMap<>();
     }
 
     /**
@@ -49,6 +55,7 @@ public class Graph<V> {
         this.isDirected = isDirected;
         this.vertices = new HashMap<>();
         this.adjacencyMap = new HashMap<>();
+        this.reverseAdjacencyMap = new HashMap<>();
     }
 
     /**
@@ -73,6 +80,17 @@ public class Graph<V> {
         return this.adjacencyMap.get(this.vertices.get(key));
     }
 
+    /**
+     * Returns the vertices with an edge into the given vertex.
+     *
+     * @param key The vertex key.
+     * @return List<Vertex < V>
+     */
+    public List<Vertex<V>> getPredecessors(int key) {
+
+        return this.reverseAdjacencyMap.get(this.vertices.get(key));
+    }
+
     /**
      * Returns the vertex with the given key.
      *
@@ -107,8 +125,9 @@ public class Graph<V> {
         // Place vertex into vertices map
         this.vertices.putIfAbsent(vertex.getKey(), vertex);
 
-        // Place vertex into adjacency map
+        // Place vertex into adjacency maps
         this.adjacencyMap.putIfAbsent(vertex, new ArrayList<>());
+        this.reverseAdjacencyMap.putIfAbsent(vertex, new ArrayList<>());
 
         return vertex;
     }
@@ -122,15 +141,28 @@ public class Graph<V> {
 
         // Remove vertex from vertices map
         Vertex<V> v = this.vertices.remove(key);
+        if (v == null) {
+            return null;
+        }
+
+        // Remove vertex from adjacency maps
+        List<Vertex<V>> successors = this.adjacencyMap.remove(v);
+        List<Vertex<V>> predecessors = this.reverseAdjacencyMap.remove(v);
 
-        // Remove vertex from adjacency map
-        this.adjacencyMap.remove(v);
+        // Only the neighbours reference the vertex
+        for (Vertex<V> successor : successors) {
 
-        // Iterate all graph vertices adjacency map and remove vertex
-        for (List<Vertex<V>> adjList : this.adjacencyMap.values()) {
+            List<Vertex<V>> reverse = this.reverseAdjacencyMap.get(successor);
+            if (reverse != null) {
+                reverse.remove(v);
+            }
+        }
+        for (Vertex<V> predecessor : predecessors) {
 
-            // Remove vertex
-            adjList.remove(v);
+            List<Vertex<V>> adjacent = this.adjacencyMap.get(predecessor);
+            if (adjacent != null) {
+                adjacent.remove(v);
+            }
         }
 
         return v;
@@ -151,9 +183,11 @@ public class Graph<V> {
         // If the graph is not directed then create bidirectional edge
         if (!this.isDirected) {
             this.adjacencyMap.get(v2).add(v1);
+            this.reverseAdjacencyMap.get(v1).add(v2);
         }
 
         // Add edge from vertex 1 to vertex 2
         this.adjacencyMap.get(v1).add(v2);
+        this.reverseAdjacencyMap.get(v2).add(v1);
     }
 }
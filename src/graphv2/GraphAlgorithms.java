@@ -32,7 +32,7 @@ public class GraphAlgorithms {
         }
 
         // Get adjacent vertices from current vertex
-        ArrayList<Vertex> adj = (ArrayList<Vertex>) graph.getAdjacentVertices(source.getKey());
+        List<Vertex> adj = graph.getAdjacentVertices(source.getKey());
 
         // Recursive call for all the vertices adjacent to current vertex
         for (Vertex v : adj) {
@@ -170,4 +170,156 @@ public class GraphAlgorithms {
 
         return outerPath;
     }
+
+    /**
+     * Returns a shortest path in number of vertices using a breadth first search.
+     *
+     * @param graph           The graph instance.
+     * @param source          The source vertex key.
+     * @param destination     The destination vertex key.
+     * @param outerOnly       Whether only to use the outer lane or not.
+     * @param removedVertices Keys of the vertices which may not be used.
+     * @param removedEdges    Edges which may not be used, see {@link #edgeKey(int, int)}.
+     * @return List<Vertex> The path including source and destination, or null if there is none.
+     */
+    private static List<Vertex> breadthFirstPath(Graph graph, int source, int destination, boolean outerOnly,
+                                                 Set<Integer> removedVertices, Set<Long> removedEdges) {
+
+        // Parent of each reached vertex
+        Map<Integer, Vertex> parent = new HashMap<>();
+        Deque<Vertex> frontier = new ArrayDeque<>();
+
+        Vertex sourcev = graph.getVertex(source);
+        parent.put(source, null);
+        frontier.add(sourcev);
+
+        while (!frontier.isEmpty()) {
+
+            Vertex current = frontier.poll();
+
+            // Rebuild path once destination is reached
+            if (current.getKey() == destination) {
+
+                LinkedList<Vertex> path = new LinkedList<>();
+                for (Vertex v = current; v != null; v = parent.get(v.getKey())) {
+                    path.addFirst(v);
+                }
+
+                return path;
+            }
+
+            for (Object o : graph.getAdjacentVertices(current.getKey())) {
+
+                Vertex v = (Vertex) o;
+
+                // Ignore visited, removed and, if required, inner lane vertices
+                if (parent.containsKey(v.getKey()) || removedVertices.contains(v.getKey())
+                        || removedEdges.contains(edgeKey(current.getKey(), v.getKey()))
+                        || (outerOnly && v.getWeight() > 0)) {
+                    continue;
+                }
+
+                parent.put(v.getKey(), current);
+                frontier.add(v);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the key identifying the edge between two vertices.
+     *
+     * @param key1 The source vertex key.
+     * @param key2 The destination vertex key.
+     * @return long
+     */
+    public static long edgeKey(int key1, int key2) {
+
+        return ((long) key1 << 32) | (key2 & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns up to k loopless shortest paths from a vertex to another using Yen's algorithm.
+     * <p>
+     * Paths are ordered from shortest to longest. Unlike {@link #getAllPaths(Graph, int, int, boolean)}
+     * only k paths are ever built, each with a handful of breadth first searches.
+     *
+     * @param graph       The graph instance.
+     * @param source      The source vertex key.
+     * @param destination The destination vertex key.
+     * @param k           The maximum number of paths.
+     * @param outerOnly   Whether only to use the outer lane or not.
+     * @return List<Deque<Vertex>>
+     */
+    public static List<Deque<Vertex>> getKShortestPaths(Graph graph, int source, int destination, int k,
+                                                        boolean outerOnly) {
+
+        List<List<Vertex>> shortest = new ArrayList<>();
+        List<List<Vertex>> candidates = new ArrayList<>();
+
+        // First path is the plain shortest path
+        List<Vertex> first = breadthFirstPath(graph, source, destination, outerOnly,
+                Collections.emptySet(), Collections.emptySet());
+        if (first != null) {
+            shortest.add(first);
+        }
+
+        while (!shortest.isEmpty() && shortest.size() < k) {
+
+            List<Vertex> previous = shortest.get(shortest.size() - 1);
+
+            // Deviate from the previous path at every vertex
+            for (int i = 0; i < previous.size() - 1; i++) {
+
+                int spur = previous.get(i).getKey();
+                List<Vertex> root = previous.subList(0, i + 1);
+
+                // Forbid the edges already taken after the same root
+                Set<Long> removedEdges = new HashSet<>();
+                for (List<Vertex> path : shortest) {
+
+                    if (path.size() > i + 1 && path.subList(0, i + 1).equals(root)) {
+                        removedEdges.add(edgeKey(path.get(i).getKey(), path.get(i + 1).getKey()));
+                    }
+                }
+
+                // Forbid the root vertices so paths stay loopless
+                Set<Integer> removedVertices = new HashSet<>();
+                for (int j = 0; j < i; j++) {
+                    removedVertices.add(root.get(j).getKey());
+                }
+
+                List<Vertex> spurPath = breadthFirstPath(graph, spur, destination, outerOnly, removedVertices, removedEdges);
+                if (spurPath == null) {
+                    continue;
+                }
+
+                // Join root and spur path
+                List<Vertex> candidate = new ArrayList<>(root);
+                candidate.addAll(spurPath.subList(1, spurPath.size()));
+
+                if (!candidates.contains(candidate) && !shortest.contains(candidate)) {
+                    candidates.add(candidate);
+                }
+            }
+
+            if (candidates.isEmpty()) {
+                break;
+            }
+
+            // Promote the shortest candidate
+            List<Vertex> next = Collections.min(candidates, Comparator.comparingInt(List::size));
+            candidates.remove(next);
+            shortest.add(next);
+        }
+
+        // Convert into deques as the other path functions
+        List<Deque<Vertex>> paths = new ArrayList<>(shortest.size());
+        for (List<Vertex> path : shortest) {
+            paths.add(new ArrayDeque<>(path));
+        }
+
+        return paths;
+    }
 }
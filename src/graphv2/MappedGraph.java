@@ -0,0 +1,284 @@
+package graphv2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+/**
+ * A read only graph whose adjacency lives in a buffer, usually a memory-mapped file.
+ * <p>
+ * The adjacency is stored in compressed sparse row form: one offset per vertex into a
+ * single array of successor keys. Adjacent vertex lists are views over that array, so
+ * loading never copies or parses the edges and only the vertex objects are created.
+ * Vertex keys must be 0 to the number of vertices - 1, as {@link Graph#addVertex} assigns them.
+ * <p>
+ * The little endian section layout, starting at any 4 byte aligned position, is:
+ * <pre>
+ * int vertices, int edges, int weight per vertex, int offset per vertex and one more, int successor per edge
+ * </pre>
+ *
+ * @param <V> The vertex value class.
+ */
+public class MappedGraph<V> extends Graph<V> {
+
+    /**
+     * The vertices indexed by key.
+     */
+    private final Vertex<V>[] vertexArray;
+
+    /**
+     * The vertices as an unmodifiable list.
+     */
+    private final List<Vertex<V>> vertexList;
+
+    /**
+     * The index of the first successor of each vertex, and the number of edges at the end.
+     */
+    private final IntBuffer offsets;
+
+    /**
+     * The successor keys of every vertex, one after the other.
+     */
+    private final IntBuffer successors;
+
+    /**
+     * The reverse adjacency in the same form, built on the first predecessor lookup.
+     */
+    private volatile IntBuffer[] reverse;
+
+    /**
+     * The successors or predecessors of one vertex as a view over an adjacency array.
+     */
+    private final class Adjacency extends AbstractList<Vertex<V>> implements RandomAccess {
+
+        /**
+         * The adjacency array.
+         */
+        private final IntBuffer keys;
+
+        /**
+         * The index of the first adjacent vertex.
+         */
+        private final int from;
+
+        /**
+         * The number of adjacent vertices.
+         */
+        private final int size;
+
+        /**
+         * Adjacency constructor.
+         *
+         * @param key     The vertex key.
+         * @param offsets The adjacency offsets.
+         * @param keys    The adjacency array.
+         */
+        Adjacency(int key, IntBuffer offsets, IntBuffer keys) {
+
+            this.keys = keys;
+            this.from = offsets.get(key);
+            this.size = offsets.get(key + 1) - this.from;
+        }
+
+        @Override
+        public Vertex<V> get(int index) {
+
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Adjacent vertex " + index + " of " + this.size);
+            }
+
+            return MappedGraph.this.vertexArray[this.keys.get(this.from + index)];
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+
+    /**
+     * MappedGraph constructor, reads a graph section and leaves the buffer after it.
+     *
+     * @param buffer The buffer positioned at the section.
+     * @param values Creates the value of a vertex from its weight.
+     */
+    @SuppressWarnings("unchecked")
+    public MappedGraph(ByteBuffer buffer, IntFunction<V> values) {
+
+        super(true);
+
+        ByteBuffer section = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int vertices = section.getInt(0);
+        int edges = section.getInt(4);
+
+        // Views over the weights, offsets and successors
+        section.position(8);
+        IntBuffer weights = section.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        section.position(8 + 4 * vertices);
+        this.offsets = section.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        section.position(8 + 4 * vertices + 4 * (vertices + 1));
+        this.successors = section.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+
+        if (this.offsets.get(vertices) != edges) {
+            throw new IllegalArgumentException("Corrupt graph section!");
+        }
+
+        // Only the vertices are materialized
+        this.vertexArray = new Vertex[vertices];
+        for (int key = 0; key < vertices; key++) {
+
+            int weight = weights.get(key);
+            this.vertexArray[key] = new Vertex<>(key, values.apply(weight), weight);
+        }
+        this.vertexList = Collections.unmodifiableList(Arrays.asList(this.vertexArray));
+
+        buffer.position(buffer.position() + sectionBytes(vertices, edges));
+    }
+
+    /**
+     * Returns the size of a graph section.
+     *
+     * @param vertices The number of vertices.
+     * @param edges    The number of edges.
+     * @return int
+     */
+    private static int sectionBytes(int vertices, int edges) {
+        return 8 + 4 * vertices + 4 * (vertices + 1) + 4 * edges;
+    }
+
+    /**
+     * Returns the size of the section a graph is written as.
+     *
+     * @param graph The graph.
+     * @return int
+     */
+    public static int sectionBytes(Graph<?> graph) {
+
+        int edges = 0;
+        for (int key = 0; key < graph.getVertices().size(); key++) {
+            edges += graph.getAdjacentVertices(key).size();
+        }
+
+        return sectionBytes(graph.getVertices().size(), edges);
+    }
+
+    /**
+     * Writes a graph section.
+     *
+     * @param graph  The graph, with keys 0 to the number of vertices - 1.
+     * @param buffer The little endian output buffer.
+     */
+    public static void write(Graph<?> graph, ByteBuffer buffer) {
+
+        int vertices = graph.getVertices().size();
+        int start = buffer.position();
+        buffer.putInt(vertices).putInt(0);
+
+        // Weights
+        for (int key = 0; key < vertices; key++) {
+            buffer.putInt(graph.getVertex(key).getWeight());
+        }
+
+        // Offsets, the successors follow in the same order
+        int edges = 0;
+        for (int key = 0; key < vertices; key++) {
+
+            buffer.putInt(edges);
+            edges += graph.getAdjacentVertices(key).size();
+        }
+        buffer.putInt(edges);
+
+        for (int key = 0; key < vertices; key++) {
+
+            for (Vertex<?> next : graph.getAdjacentVertices(key)) {
+                buffer.putInt(next.getKey());
+            }
+        }
+
+        buffer.putInt(start + 4, edges);
+    }
+
+    @Override
+    public Collection<Vertex<V>> getVertices() {
+        return this.vertexList;
+    }
+
+    @Override
+    public List<Vertex<V>> getAdjacentVertices(int key) {
+        return new Adjacency(key, this.offsets, this.successors);
+    }
+
+    @Override
+    public List<Vertex<V>> getPredecessors(int key) {
+
+        IntBuffer[] reverse = this.reverse;
+        if (reverse == null) {
+            reverse = this.buildReverse();
+        }
+
+        return new Adjacency(key, reverse[0], reverse[1]);
+    }
+
+    /**
+     * Builds the reverse adjacency offsets and predecessor keys with a counting sort of the edges.
+     *
+     * @return IntBuffer[] The offsets and the predecessors.
+     */
+    private synchronized IntBuffer[] buildReverse() {
+
+        if (this.reverse != null) {
+            return this.reverse;
+        }
+
+        int vertices = this.vertexArray.length;
+        int[] offsets = new int[vertices + 1];
+        int[] predecessors = new int[this.offsets.get(vertices)];
+
+        // Count the predecessors of every vertex
+        for (int i = 0; i < predecessors.length; i++) {
+            offsets[this.successors.get(i) + 1]++;
+        }
+        for (int key = 0; key < vertices; key++) {
+            offsets[key + 1] += offsets[key];
+        }
+
+        // Place every edge source after the previous ones of its target
+        int[] next = Arrays.copyOf(offsets, vertices);
+        for (int key = 0; key < vertices; key++) {
+
+            for (int i = this.offsets.get(key); i < this.offsets.get(key + 1); i++) {
+                predecessors[next[this.successors.get(i)]++] = key;
+            }
+        }
+
+        this.reverse = new IntBuffer[]{IntBuffer.wrap(offsets), IntBuffer.wrap(predecessors)};
+        return this.reverse;
+    }
+
+    @Override
+    public Vertex<V> getVertex(int key) {
+        return this.vertexArray[key];
+    }
+
+    @Override
+    public Vertex<V> addVertex(Vertex<V> vertex) {
+        throw new UnsupportedOperationException("Mapped graphs are read only!");
+    }
+
+    @Override
+    public Vertex<V> removeVertex(int key) {
+        throw new UnsupportedOperationException("Mapped graphs are read only!");
+    }
+
+    @Override
+    public void addEdge(int key1, int key2) {
+        throw new UnsupportedOperationException("Mapped graphs are read only!");
+    }
+}
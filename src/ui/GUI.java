@@ -3,6 +3,7 @@ package ui;
 import domain.roundabout.Factory;
 import domain.roundabout.Roundabout;
 import ui.components.BuildPanel;
+import ui.components.ClockPanel;
 import ui.components.RoundaboutVisualizer;
 import ui.components.SpawnPanel;
 
@@ -50,12 +51,18 @@ public class GUI extends JFrame implements Runnable {
         // The vehicle spawn configuration panel
         SpawnPanel spawnPanel = new SpawnPanel();
 
+        // The simulation clock controls
+        ClockPanel clockPanel = new ClockPanel();
+
         // Create JPanel instances
         this.roundaboutVisualizer = new RoundaboutVisualizer();
 
         // Add panels to layout
         add(this.roundaboutVisualizer, BorderLayout.NORTH);
-        add(buildPanel, BorderLayout.CENTER);
+        JPanel controlsPanel = new JPanel(new BorderLayout());
+        controlsPanel.add(buildPanel, BorderLayout.NORTH);
+        controlsPanel.add(clockPanel, BorderLayout.SOUTH);
+        add(controlsPanel, BorderLayout.CENTER);
         add(spawnPanel, BorderLayout.SOUTH);
 
         pack();
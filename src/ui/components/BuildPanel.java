@@ -106,7 +106,9 @@ public class BuildPanel extends JPanel {
         // Set visible
         setVisible(true);
 
-        // Build default roundabout
-        this.buildButton.doClick();
+        // Build default roundabout unless one was set up front, by a scenario
+        if (Factory.getInstance().getRoundabout() == null) {
+            this.buildButton.doClick();
+        }
     }
 }
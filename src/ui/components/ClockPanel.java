@@ -0,0 +1,226 @@
+package ui.components;
+
+import domain.roundabout.Checkpoint;
+import domain.roundabout.Factory;
+import domain.roundabout.Roundabout;
+import domain.scheduling.SimulationClock;
+import domain.vehicles.Vehicle;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class ClockPanel extends JPanel {
+
+    /**
+     * Milliseconds between simulated time label refreshes.
+     */
+    private static final int REFRESH_INTERVAL = 200;
+
+    /**
+     * Selectable time scales.
+     */
+    private static final Double[] SCALES = {0.1, 0.25, 0.5, 1.0, 2.0, 5.0, 10.0, 50.0, 100.0, 500.0, 1000.0};
+
+    /**
+     * Time scale combo box.
+     */
+    private JComboBox<Double> scaleBox;
+    /**
+     * The pause/resume button.
+     */
+    private JButton pauseButton;
+    /**
+     * Simulated milliseconds of a single step.
+     */
+    private JSpinner stepSpinner;
+    /**
+     * The single step button.
+     */
+    private JButton stepButton;
+    /**
+     * The checkpoint button.
+     */
+    private JButton checkpointButton;
+    /**
+     * The restore button.
+     */
+    private JButton restoreButton;
+    /**
+     * Chooses checkpoint files.
+     */
+    private JFileChooser fileChooser;
+    /**
+     * The simulated time label.
+     */
+    private JLabel timeLabel;
+    /**
+     * The clock the controls show, rebuilt and restored roundabouts come with a new one.
+     */
+    private SimulationClock clock;
+    /**
+     * Whether the panel keeps the clock paused.
+     */
+    private boolean paused;
+
+    /**
+     * Clock panel constructor.
+     */
+    public ClockPanel() {
+
+        super(true);
+
+        // Time scale Combo Box
+        this.scaleBox = new JComboBox<>(SCALES);
+        this.scaleBox.setSelectedItem(1.0);
+        this.scaleBox.setRenderer(new DefaultListCellRenderer() {
+
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, value + "x", index, isSelected, cellHasFocus);
+            }
+        });
+        this.scaleBox.addActionListener(actionEvent -> this.currentClock().setScale((double) this.scaleBox.getSelectedItem()));
+
+        // Pause/Resume Button
+        this.pauseButton = new JButton("Pause");
+        this.pauseButton.addActionListener(actionEvent -> {
+
+            this.paused = !this.paused;
+            this.apply(this.currentClock());
+            this.refresh();
+        });
+
+        // Single step Button, only while paused
+        this.stepSpinner = new JSpinner(new SpinnerNumberModel(100, 1, 60_000, 50));
+        this.stepButton = new JButton("Step");
+        this.stepButton.setEnabled(false);
+        this.stepButton.addActionListener(actionEvent -> {
+
+            this.currentClock().step((int) this.stepSpinner.getValue());
+            this.refresh();
+        });
+
+        // Checkpoint and restore Buttons
+        this.fileChooser = new JFileChooser();
+        this.checkpointButton = new JButton("Checkpoint");
+        this.checkpointButton.addActionListener(actionEvent -> this.checkpoint());
+        this.restoreButton = new JButton("Restore");
+        this.restoreButton.addActionListener(actionEvent -> this.restore());
+
+        // Simulated time, refreshed on the EDT
+        this.timeLabel = new JLabel();
+        new Timer(REFRESH_INTERVAL, actionEvent -> this.refresh()).start();
+
+        // Set panel layout
+        setLayout(new FlowLayout());
+
+        // Add all components
+        add(new JLabel("Time scale:"));
+        add(this.scaleBox);
+        add(this.pauseButton);
+        add(new LabeledJSpinner(new JLabel("Step ms:"), this.stepSpinner));
+        add(this.stepButton);
+        add(this.checkpointButton);
+        add(this.restoreButton);
+        add(this.timeLabel);
+
+        // Set visible
+        setVisible(true);
+    }
+
+    /**
+     * Returns the clock of the current roundabout, showing the state of a new one in the controls.
+     *
+     * @return SimulationClock
+     */
+    private SimulationClock currentClock() {
+
+        SimulationClock current = Factory.getInstance().getRoundabout().getClock();
+
+        if (current != this.clock) {
+
+            this.clock = current;
+            this.paused = current.isPaused();
+
+            // Scenarios and checkpoints may use a scale which is not in the list
+            Double scale = current.getScale();
+            if (((DefaultComboBoxModel<Double>) this.scaleBox.getModel()).getIndexOf(scale) < 0) {
+                this.scaleBox.addItem(scale);
+            }
+            this.scaleBox.setSelectedItem(scale);
+        }
+
+        return current;
+    }
+
+    /**
+     * Applies the selected scale and pause state to a clock.
+     *
+     * @param clock The clock.
+     */
+    private void apply(SimulationClock clock) {
+
+        clock.setScale((double) this.scaleBox.getSelectedItem());
+
+        if (this.paused) {
+            clock.pause();
+        } else {
+            clock.resume();
+        }
+    }
+
+    /**
+     * Captures the current roundabout and writes it to a chosen file.
+     */
+    private void checkpoint() {
+
+        Checkpoint checkpoint = Checkpoint.capture(Factory.getInstance().getRoundabout());
+
+        if (this.fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+
+            try {
+                checkpoint.write(this.fileChooser.getSelectedFile().toPath());
+
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Replaces the current roundabout with one restored from a chosen file.
+     */
+    private void restore() {
+
+        if (this.fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        Path file = this.fileChooser.getSelectedFile().toPath();
+        try {
+
+            Roundabout restored = Checkpoint.read(file).restore(Vehicle::start);
+            Factory.getInstance().setRoundabout(restored);
+
+        } catch (IOException | RuntimeException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Updates the simulated time label and the buttons.
+     */
+    private void refresh() {
+
+        long millis = this.currentClock().millis();
+
+        this.timeLabel.setText(String.format("Simulated: %02d:%02d:%02d.%d",
+                millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60, millis / 100 % 10));
+
+        this.pauseButton.setText(this.paused ? "Resume" : "Pause");
+        this.stepButton.setEnabled(this.paused);
+    }
+}
@@ -1,6 +1,8 @@
 package ui.components;
 
+import domain.metrics.OccupancyHeatmap;
 import domain.roundabout.Factory;
+import domain.roundabout.Roundabout;
 import domain.vehicles.Vehicle;
 import graphv2.Vertex;
 
@@ -29,12 +31,46 @@ public class RoundaboutVisualizer extends JPanel {
     private int b = a;
     private int r = 4 * SIZE / 5;
 
+    /**
+     * What the vertices show.
+     */
+    private enum View {
+
+        LIVE("Live"),
+        OCCUPIED("Occupied heatmap"),
+        BLOCKED("Blocked heatmap");
+
+        /**
+         * The view label as shown to the user.
+         */
+        private final String label;
+
+        View(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return this.label;
+        }
+    }
+
+    /**
+     * The view selection combo box.
+     */
+    private final JComboBox<View> viewSelector;
+
     /**
      * Base constructor.
      */
     public RoundaboutVisualizer() {
         super(true);
 
+        // View selector, shown on top of the roundabout
+        this.viewSelector = new JComboBox<>(View.values());
+        this.viewSelector.addActionListener(actionEvent -> this.repaint());
+        this.add(this.viewSelector);
+
         // Get Lane perimeter map and set preferred size based on roundabout
         Map<Integer, Double> lanePerimeterMap = Factory.getInstance().getRoundabout().getLanePerimeterMap();
         int dim = (int) Math.round(lanePerimeterMap.get(0)) * 5;
@@ -56,6 +92,12 @@ public class RoundaboutVisualizer extends JPanel {
 
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
+
+        // Fold the latest occupancy into the heatmap even when it is not shown
+        Roundabout roundabout = Factory.getInstance().getRoundabout();
+        OccupancyHeatmap heatmap = roundabout.getHeatmap();
+        heatmap.sample();
+        View view = (View) this.viewSelector.getSelectedItem();
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
         // For each of the lanes
@@ -102,6 +144,19 @@ public class RoundaboutVisualizer extends JPanel {
                     r += 8 * Factory.LANE_WIDTH;
                     g2d.setColor(Color.ORANGE);
 
+                // Blocked vertices are dark gray
+                } else if (Factory.getInstance().getRoundabout().isBlocked(v.getKey())) {
+
+                    g2d.setColor(Color.DARK_GRAY);
+
+                // Heatmap from green (idle) to red (always busy)
+                } else if (view != View.LIVE) {
+
+                    double heat = view == View.OCCUPIED
+                            ? heatmap.getOccupiedHeat(v.getKey())
+                            : heatmap.getBlockedHeat(v.getKey());
+                    g2d.setColor(Color.getHSBColor((float) (1 - heat) / 3, 1, 1));
+
                 // If instance of vehicle then get vehicle color
                 } else if (ref instanceof Vehicle) {
 
@@ -1,24 +1,32 @@
 package ui.components;
 
+import domain.roundabout.AdmissionController;
 import domain.roundabout.Factory;
-import domain.vehicles.AggressiveBehaviourLight;
-import domain.vehicles.DefaultBehaviourHeavy;
-import domain.vehicles.DefaultBehaviourLight;
+import domain.roundabout.Roundabout;
+import domain.vehicles.Vehicle;
+import domain.vehicles.VehicleType;
+import domain.workload.ODMatrix;
+import domain.workload.PoissonArrivals;
+import domain.workload.TrafficGenerator;
+import domain.workload.VehicleMix;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 
 public class SpawnPanel extends JPanel {
 
     /**
-     * Random number generator.
+     * Milliseconds between counter label refreshes.
      */
-    private final Random generator = new Random();
+    private static final int REFRESH_INTERVAL = 200;
+
     /**
      * Vehicle types combo box.
      */
-    private JComboBox<String> vehicleTypes;
+    private JComboBox<VehicleType> vehicleTypes;
     /**
      * Entry values.
      */
@@ -31,6 +39,42 @@ public class SpawnPanel extends JPanel {
      * The spawn button.
      */
     private JButton spawnButton;
+    /**
+     * Number of vehicles of a bulk spawn.
+     */
+    private JSpinner countSpinner;
+    /**
+     * Total spawn rate in vehicles per second.
+     */
+    private JSpinner rateSpinner;
+    /**
+     * Relative share of each vehicle type, indexed by type ordinal.
+     */
+    private JSpinner[] mixSpinners;
+    /**
+     * The bulk spawn button.
+     */
+    private JButton bulkButton;
+    /**
+     * The continuous generation start/stop button.
+     */
+    private JButton generateButton;
+    /**
+     * The live counters label.
+     */
+    private JLabel countersLabel;
+    /**
+     * Spawns single vehicles off the event dispatch thread.
+     */
+    private final ExecutorService spawner;
+    /**
+     * The number of vehicles spawned from this panel.
+     */
+    private final LongAdder spawned;
+    /**
+     * The running traffic generator, null when none was started.
+     */
+    private volatile TrafficGenerator generator;
 
     /**
      * Spawn panel constructor.
@@ -39,11 +83,17 @@ public class SpawnPanel extends JPanel {
 
         super(true);
 
+        this.spawned = new LongAdder();
+        this.spawner = Executors.newSingleThreadExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, "spawn-panel");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
         // Vehicle Types Combo Box
-        this.vehicleTypes = new JComboBox<>();
-        this.vehicleTypes.addItem("heavy:default");
-        this.vehicleTypes.addItem("light:default");
-        this.vehicleTypes.addItem("light:aggressive");
+        this.vehicleTypes = new JComboBox<>(VehicleType.values());
         this.vehicleTypes.setSelectedIndex(0);
 
         // Entries spinner
@@ -56,56 +106,184 @@ public class SpawnPanel extends JPanel {
         this.spawnButton = new JButton("Spawn Vehicle");
         this.spawnButton.addActionListener(actionEvent -> {
 
-            // Get vehicle type
-            String vehicleType = this.vehicleTypes.getSelectedItem().toString();
-
-            System.out.println(vehicleType);
-
-            // Get entry and exit from spinners
+            // Read the selection on the EDT, spawn in the background
+            VehicleType type = (VehicleType) this.vehicleTypes.getSelectedItem();
             int entryNumber = (int) this.entrySpinner.getValue();
             int exitNumber = (int) this.exitSpinner.getValue();
 
-            // Evaluate vehicle class to spawn
-            // Heavy vehicle with default behaviour
-            if (vehicleType.equals("heavy:default")) {
+            this.spawner.execute(() -> {
 
-                System.out.println("Creating heavy default");
+                // The roundabout may have been replaced since the selection was read
+                Roundabout roundabout = Factory.getInstance().getRoundabout();
+                if (entryNumber > roundabout.getEntriesNumber() || exitNumber > roundabout.getExitsNumber()) {
+                    return;
+                }
 
-                new DefaultBehaviourHeavy(
-                        new Color(this.generator.nextFloat(), this.generator.nextFloat(), this.generator.nextFloat()),
-                        entryNumber, exitNumber, Factory.getInstance().getRoundabout()).start();
-
-                // Light vehicle with default behaviour
-            } else if (vehicleType.equals("light:default")) {
+                this.spawn(roundabout.getAdmission(), type.create(entryNumber, exitNumber, roundabout));
+            });
+        });
 
-                System.out.println("Creating light default");
+        // Bulk spawn parameters
+        this.countSpinner = new JSpinner(new SpinnerNumberModel(100, 1, 1_000_000, 10));
+        this.rateSpinner = new JSpinner(new SpinnerNumberModel(10.0, 0.1, 100_000.0, 1.0));
+        this.mixSpinners = new JSpinner[VehicleType.values().length];
+        for (int i = 0; i < this.mixSpinners.length; i++) {
+            this.mixSpinners[i] = new JSpinner(new SpinnerNumberModel(1.0, 0.0, 100.0, 0.5));
+        }
 
-                new DefaultBehaviourLight(
-                        new Color(this.generator.nextFloat(), this.generator.nextFloat(), this.generator.nextFloat()),
-                        entryNumber, exitNumber, Factory.getInstance().getRoundabout()).start();
+        // Bulk Spawn Button
+        this.bulkButton = new JButton("Spawn N");
+        this.bulkButton.addActionListener(actionEvent -> this.startGenerator((int) this.countSpinner.getValue()));
 
-                // Light vehicle with aggressive behaviour
-            } else if (vehicleType.equals("light:aggressive")) {
+        // Continuous generation Button
+        this.generateButton = new JButton("Start");
+        this.generateButton.addActionListener(actionEvent -> {
 
-                System.out.println("Creating light default");
+            TrafficGenerator current = this.generator;
 
-                new AggressiveBehaviourLight(
-                        new Color(this.generator.nextFloat(), this.generator.nextFloat(), this.generator.nextFloat()),
-                        entryNumber, exitNumber, Factory.getInstance().getRoundabout()).start();
+            if (current != null && current.isRunning()) {
+                current.stop();
+            } else {
+                this.startGenerator(Long.MAX_VALUE);
             }
         });
 
+        // Live counters, refreshed on the EDT
+        this.countersLabel = new JLabel();
+        new Timer(REFRESH_INTERVAL, actionEvent -> this.refreshCounters()).start();
+
         // Set panel layout
-        setLayout(new FlowLayout());
+        setLayout(new GridLayout(3, 1));
+
+        // Single spawn row
+        JPanel singlePanel = new JPanel(new FlowLayout());
+        singlePanel.add(new JLabel("Vehicle/Driver:"));
+        singlePanel.add(this.vehicleTypes);
+        singlePanel.add(new LabeledJSpinner(new JLabel("Entry:"), this.entrySpinner));
+        singlePanel.add(new LabeledJSpinner(new JLabel("Exit:"), this.exitSpinner));
+        singlePanel.add(this.spawnButton);
+
+        // Bulk spawn row
+        JPanel bulkPanel = new JPanel(new FlowLayout());
+        bulkPanel.add(new LabeledJSpinner(new JLabel("N:"), this.countSpinner));
+        bulkPanel.add(new LabeledJSpinner(new JLabel("Vehicles/s:"), this.rateSpinner));
+        for (VehicleType type : VehicleType.values()) {
+
+            // Emergency vehicles are only spawned one at a time
+            if (type == VehicleType.EMERGENCY) {
+                continue;
+            }
+            bulkPanel.add(new LabeledJSpinner(new JLabel(type.getLabel() + ":"), this.mixSpinners[type.ordinal()]));
+        }
+        bulkPanel.add(this.bulkButton);
+        bulkPanel.add(this.generateButton);
+
+        // Counters row
+        JPanel countersPanel = new JPanel(new FlowLayout());
+        countersPanel.add(this.countersLabel);
 
         // Add all components
-        add(new JLabel("Vehicle/Driver:"));
-        add(this.vehicleTypes);
-        add(new LabeledJSpinner(new JLabel("Entry:"), this.entrySpinner));
-        add(new LabeledJSpinner(new JLabel("Exit:"), this.exitSpinner));
-        add(this.spawnButton);
+        add(singlePanel);
+        add(bulkPanel);
+        add(countersPanel);
 
         // Set visible
         setVisible(true);
     }
+
+    /**
+     * Spawns a vehicle through the admission controller and counts it.
+     *
+     * @param admission The roundabout admission controller.
+     * @param vehicle   The vehicle, not started.
+     */
+    private void spawn(AdmissionController admission, Vehicle vehicle) {
+
+        this.spawned.increment();
+        admission.submit(vehicle);
+    }
+
+    /**
+     * Starts a traffic generator with the panel rate and mix, stopping the running one.
+     * The rate is split evenly between the entries and exits are chosen uniformly.
+     *
+     * @param count The number of vehicles to spawn.
+     */
+    private void startGenerator(long count) {
+
+        TrafficGenerator current = this.generator;
+        if (current != null) {
+            current.stop();
+        }
+
+        Roundabout roundabout = Factory.getInstance().getRoundabout();
+        AdmissionController admission = roundabout.getAdmission();
+        double rate = (double) this.rateSpinner.getValue() / roundabout.getEntriesNumber();
+
+        // Build the generator, the mix needs at least one positive share
+        TrafficGenerator next;
+        try {
+
+            VehicleMix mix = new VehicleMix(
+                    (double) this.mixSpinners[VehicleType.HEAVY_DEFAULT.ordinal()].getValue(),
+                    (double) this.mixSpinners[VehicleType.LIGHT_DEFAULT.ordinal()].getValue(),
+                    (double) this.mixSpinners[VehicleType.LIGHT_AGGRESSIVE.ordinal()].getValue());
+
+            next = new TrafficGenerator(roundabout,
+                    TrafficGenerator.sameOnEveryEntry(new PoissonArrivals(rate), roundabout.getEntriesNumber()),
+                    ODMatrix.uniform(roundabout.getEntriesNumber(), roundabout.getExitsNumber()), mix,
+                    vehicle -> this.spawn(admission, vehicle), System.nanoTime());
+
+        } catch (IllegalArgumentException e) {
+
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Invalid traffic", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        next.setMaxSpawns(count);
+        this.generator = next;
+
+        Thread thread = new Thread(next, "traffic-generator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Bounds a spinner to the entries or exits of the current roundabout.
+     *
+     * @param spinner The entry or exit spinner.
+     * @param maximum The number of entries or exits.
+     */
+    private static void bind(JSpinner spinner, int maximum) {
+
+        SpinnerNumberModel model = (SpinnerNumberModel) spinner.getModel();
+        if (model.getMaximum().equals(maximum)) {
+            return;
+        }
+
+        model.setMaximum(maximum);
+        if ((int) model.getValue() > maximum) {
+            model.setValue(maximum);
+        }
+    }
+
+    /**
+     * Updates the counters label, the generation button and the entry and exit bounds,
+     * which follow the roundabout whenever it is rebuilt, restored or set by a scenario.
+     */
+    private void refreshCounters() {
+
+        Roundabout roundabout = Factory.getInstance().getRoundabout();
+        AdmissionController admission = roundabout.getAdmission();
+        TrafficGenerator current = this.generator;
+
+        bind(this.entrySpinner, roundabout.getEntriesNumber());
+        bind(this.exitSpinner, roundabout.getExitsNumber());
+
+        this.countersLabel.setText(String.format("Spawned: %d   Active: %d   Completed: %d   Waiting: %d   Rejected: %d",
+                this.spawned.sum(), admission.getInFlight(), roundabout.getMetrics().getExited(),
+                admission.getWaitingOutside(), admission.getRejected()));
+
+        this.generateButton.setText(current != null && current.isRunning() ? "Stop" : "Start");
+    }
 }